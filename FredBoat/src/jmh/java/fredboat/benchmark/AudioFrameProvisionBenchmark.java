@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import com.sedmelluq.discord.lavaplayer.container.common.OpusPacketRouter;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.DelegatedAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the frame path of local playback. Each invocation pulls one 20ms frame from each of the players, the
+ * way AbstractPlayer#canProvide and AbstractPlayer#provide20MsAudio do for every playing guild. The players play an
+ * endless opus track that is passed through without transcoding, like most youtube tracks are.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=AudioFrameProvisionBenchmark
+ * Add -prof gc to the jmh args to see the allocation rate and the GC time per 1000 players.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class AudioFrameProvisionBenchmark {
+
+    @Param({"1000"})
+    public int players;
+
+    private DefaultAudioPlayerManager playerManager;
+    private AudioPlayer[] audioPlayers;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        playerManager = new DefaultAudioPlayerManager();
+        playerManager.setFrameBufferDuration(1000); //same as AudioPlayerManagerConfiguration
+        audioPlayers = new AudioPlayer[players];
+        for (int i = 0; i < players; i++) {
+            audioPlayers[i] = playerManager.createPlayer();
+            audioPlayers[i].playTrack(new SilenceTrack());
+        }
+        Thread.sleep(2000); //let the frame buffers fill up
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (AudioPlayer player : audioPlayers) {
+            player.destroy();
+        }
+        playerManager.shutdown();
+    }
+
+    @Benchmark
+    public void provideFrames(Blackhole blackhole) {
+        for (AudioPlayer player : audioPlayers) {
+            AudioFrame frame = player.provide();
+            if (frame != null) {
+                blackhole.consume(frame.data);
+            }
+        }
+    }
+
+    /**
+     * Endless opus encoded silence.
+     */
+    private static class SilenceTrack extends DelegatedAudioTrack {
+
+        //a 20ms opus packet of silence
+        private static final byte[] SILENCE = {(byte) 0xF8, (byte) 0xFF, (byte) 0xFE};
+
+        private SilenceTrack() {
+            super(new AudioTrackInfo("silence", "benchmark", Long.MAX_VALUE, "silence", true, null));
+        }
+
+        @Override
+        public void process(LocalAudioTrackExecutor executor) throws Exception {
+            OpusPacketRouter router = new OpusPacketRouter(executor.getProcessingContext(), 48000, 2);
+            ByteBuffer packet = ByteBuffer.wrap(SILENCE);
+            try {
+                executor.executeProcessingLoop(() -> {
+                    while (true) {
+                        packet.clear();
+                        router.process(packet);
+                    }
+                }, null);
+            } finally {
+                router.close();
+            }
+        }
+
+        @Override
+        public AudioTrack makeClone() {
+            return new SilenceTrack();
+        }
+    }
+}
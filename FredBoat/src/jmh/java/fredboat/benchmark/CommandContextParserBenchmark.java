@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import fredboat.commandmeta.CommandContextParser;
+import fredboat.commandmeta.CommandRegistry;
+import fredboat.commandmeta.abs.Command;
+import fredboat.commandmeta.abs.CommandContext;
+import fredboat.config.property.AppConfig;
+import fredboat.definitions.Module;
+import fredboat.messaging.internal.Context;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.SelfUser;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandContextParser#parse(MessageReceivedEvent)} for the kinds of messages it sees. Every message in every
+ * guild we are in goes through it, and most of them are plain chat that is not meant for us.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=CommandContextParserBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandContextParserBenchmark {
+
+    private static final String SELF_ID = "184405311681986560";
+    private static final String PREFIX = ";;";
+
+    @Param({"chat", "prefix", "mention"})
+    public String message;
+
+    private CommandContextParser parser;
+    private MessageReceivedEvent event;
+
+    @Setup
+    public void setup() {
+        CommandRegistry registry = new CommandRegistry(Module.MUSIC);
+        registry.registerCommand(new NoopCommand("play", "p"));
+        registry.registerCommand(new NoopCommand("skip", "sk", "s"));
+        registry.registerCommand(new NoopCommand("queue", "list", "q"));
+
+        AppConfig appConfig = Stub.of(AppConfig.class).returning("getPrefix", PREFIX).build();
+        //the real prefix lookup goes through a cache backed by the database
+        parser = new CommandContextParser(appConfig) {
+            @Override
+            protected String getPrefix(@Nullable Guild guild) {
+                return PREFIX;
+            }
+        };
+
+        String raw;
+        switch (message) {
+            case "chat":
+                raw = "did anyone see the game yesterday? that last minute goal was insane";
+                break;
+            case "prefix":
+                raw = PREFIX + "play never gonna give you up";
+                break;
+            case "mention":
+                raw = "<@" + SELF_ID + "> play never gonna give you up";
+                break;
+            default:
+                throw new IllegalArgumentException(message);
+        }
+
+        SelfUser self = Stub.of(SelfUser.class).returning("getId", SELF_ID).build();
+        JDA jda = Stub.of(JDA.class).returning("getSelfUser", self).build();
+        Guild guild = Stub.of(Guild.class).returning("getIdLong", 174820236481134592L).build();
+        Message msg = Stub.of(Message.class)
+                .returning("getContentRaw", raw)
+                .returning("getGuild", guild)
+                .returning("getJDA", jda)
+                .build();
+        event = new MessageReceivedEvent(jda, 0, msg);
+    }
+
+    @Benchmark
+    public CommandContext parse() {
+        return parser.parse(event);
+    }
+
+    private static class NoopCommand extends Command {
+        private NoopCommand(String name, String... aliases) {
+            super(name, aliases);
+        }
+
+        @Override
+        public void onInvoke(@Nonnull CommandContext context) {
+        }
+
+        @Nonnull
+        @Override
+        public String help(@Nonnull Context context) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import fredboat.feature.metrics.JdaEventsMetricsListener;
+import io.prometheus.client.Counter;
+import net.dv8tion.jda.core.events.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per event overhead of {@link JdaEventsMetricsListener#onGenericEvent(Event)}, compared to the previous
+ * implementation that built the label from the simple class name and looked up the prometheus child on every event.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=JdaEventsMetricsBenchmark
+ * Add -prof gc to the jmh args to see the allocations per event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4) //events are dispatched by several shards in parallel
+public class JdaEventsMetricsBenchmark {
+
+    //the previous implementation of the jda events metric, not registered anywhere
+    private final Counter labelledCounter = Counter.build()
+            .name("benchmark_jda_events_received_total")
+            .help("All events that JDA provides us with by class")
+            .labelNames("class")
+            .create();
+
+    private final JdaEventsMetricsListener listener = new JdaEventsMetricsListener();
+
+    private Event[] events;
+
+    @Setup
+    public void setup() {
+        //a handful of distinct event classes, like a shard would receive them
+        events = new Event[]{
+                new MessageReceived(), new MessageReceived(), new MessageReceived(), new MessageReceived(),
+                new PresenceUpdate(), new PresenceUpdate(), new TypingStart(),
+                new VoiceUpdate(), new MemberJoin(), new GuildUpdate()
+        };
+    }
+
+    @Benchmark
+    public void labelsBySimpleName() {
+        Event event = nextEvent();
+        labelledCounter.labels(event.getClass().getSimpleName()).inc();
+    }
+
+    @Benchmark
+    public void cachedByClass() {
+        listener.onGenericEvent(nextEvent());
+    }
+
+    private Event nextEvent() {
+        return events[ThreadLocalRandom.current().nextInt(events.length)];
+    }
+
+    private static class FakeEvent extends Event {
+        FakeEvent() {
+            super(null, 0);
+        }
+    }
+
+    private static class MessageReceived extends FakeEvent {}
+
+    private static class PresenceUpdate extends FakeEvent {}
+
+    private static class TypingStart extends FakeEvent {}
+
+    private static class VoiceUpdate extends FakeEvent {}
+
+    private static class MemberJoin extends FakeEvent {}
+
+    private static class GuildUpdate extends FakeEvent {}
+}
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import fredboat.db.transfer.GuildPermissions;
+import fredboat.definitions.PermissionLevel;
+import fredboat.perms.PermsUtil;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Role;
+import net.dv8tion.jda.core.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PermsUtil#getPerms(Member, long, List, java.util.function.Supplier)} for members of synthetic guilds, which
+ * is everything {@link PermsUtil#getPerms(Member)} does except looking up the owner, the bot admins and the guild
+ * permissions. Music commands check the perms of the invoker, so this runs for most commands.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=PermsUtilBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermsUtilBenchmark {
+
+    private static final long OWNER_ID = 81011298891993088L;
+    private static final int MEMBER_ROLES = 20;
+
+    @Param({"50", "250"}) //discord allows at most 250 roles per guild
+    public int guildRoles;
+
+    //the level the member ends up with, a member with the base level is checked against all lists
+    @Param({"DJ", "BASE"})
+    public PermissionLevel level;
+
+    private Member member;
+    private List<Long> adminIds;
+    private GuildPermissions guildPermissions;
+
+    @Setup
+    public void setup() {
+        Map<Long, Role> rolesById = new HashMap<>();
+        List<Role> guildRoleList = new ArrayList<>(guildRoles);
+        for (int i = 0; i < guildRoles; i++) {
+            long id = 300000000000000000L + i;
+            Role role = Stub.of(Role.class)
+                    .returning("getIdLong", id)
+                    .returning("getId", Long.toString(id))
+                    .build();
+            rolesById.put(id, role);
+            guildRoleList.add(role);
+        }
+        Guild guild = Stub.of(Guild.class)
+                .returning("getRoles", guildRoleList)
+                .answering("getRoleById", args -> rolesById.get(args[0] instanceof String
+                        ? Long.parseLong((String) args[0]) : (Long) args[0]))
+                .build();
+
+        //the member holds the roles at the end of the list, roles in the perms lists are taken from the front
+        List<Role> memberRoles = new ArrayList<>(guildRoleList.subList(guildRoles - MEMBER_ROLES, guildRoles));
+        User user = Stub.of(User.class)
+                .returning("getIdLong", 166604053629894657L)
+                .returning("getId", "166604053629894657")
+                .build();
+        member = Stub.of(Member.class)
+                .returning("getUser", user)
+                .returning("getGuild", guild)
+                .returning("getRoles", memberRoles)
+                .build();
+
+        adminIds = Arrays.asList(OWNER_ID, 300000000000000000L, 300000000000000001L);
+
+        List<String> djList = new ArrayList<>(Arrays.asList(roleId(2), roleId(3), roleId(4), "81011298891993088"));
+        if (level == PermissionLevel.DJ) {
+            djList.add(memberRoles.get(MEMBER_ROLES - 1).getId());
+        }
+        guildPermissions = new GuildPermissions()
+                .setAdminList(Arrays.asList(roleId(5), roleId(6)))
+                .setDjList(djList)
+                .setUserList(Arrays.asList(roleId(7), roleId(8)));
+    }
+
+    @Benchmark
+    public PermissionLevel getPerms() {
+        return PermsUtil.getPerms(member, OWNER_ID, adminIds, () -> guildPermissions);
+    }
+
+    private static String roleId(int index) {
+        return Long.toString(300000000000000000L + index);
+    }
+}
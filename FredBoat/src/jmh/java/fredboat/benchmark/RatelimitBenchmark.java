@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import fredboat.messaging.internal.Context;
+import fredboat.util.ratelimit.Ratelimit;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Ratelimit#isAllowed(Context, int)} under contention, with the settings of the userAllComms ratelimit that
+ * every command passes. With a single user all threads fight over the same rate, with many users they mostly meet
+ * in the cache of the rates.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=RatelimitBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8) //commands are handled by the event threads of all shards in parallel
+public class RatelimitBenchmark {
+
+    @Param({"1", "100", "100000"})
+    public int users;
+
+    private ExecutorService executor;
+    private Ratelimit ratelimit;
+    private Context[] contexts;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+        ratelimit = new Ratelimit("benchmark", new CacheMetricsCollector(), executor, Collections.emptySet(),
+                Ratelimit.Scope.USER, 5, 10000, null, context -> "");
+
+        contexts = new Context[users];
+        for (int i = 0; i < users; i++) {
+            contexts[i] = new UserContext(Stub.of(User.class).returning("getIdLong", 80000000000000000L + i).build());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public boolean isAllowed() {
+        return ratelimit.isAllowed(contexts[ThreadLocalRandom.current().nextInt(contexts.length)], 1);
+    }
+
+    private static class UserContext extends Context {
+        private final User user;
+
+        private UserContext(User user) {
+            this.user = user;
+        }
+
+        @Override
+        public TextChannel getTextChannel() {
+            return null;
+        }
+
+        @Override
+        public Guild getGuild() {
+            return null;
+        }
+
+        @Override
+        public Member getMember() {
+            return null;
+        }
+
+        @Override
+        public User getUser() {
+            return user;
+        }
+    }
+}
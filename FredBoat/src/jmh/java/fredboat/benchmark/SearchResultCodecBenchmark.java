@@ -0,0 +1,129 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import fredboat.db.transfer.AudioPlaylistCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode throughput of the binary search result format against the java serialization it replaces.
+ * The payload sizes of both formats are printed during the setup.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=SearchResultCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchResultCodecBenchmark {
+
+    //a youtube search returns around 20 results, we show 5 of them
+    @Param({"5", "20"})
+    public int trackCount;
+
+    private AudioPlayerManager playerManager;
+    private AudioPlaylist playlist;
+    private byte[] legacy;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        playerManager = new DefaultAudioPlayerManager();
+        YoutubeAudioSourceManager youtube = new YoutubeAudioSourceManager();
+        playerManager.registerSourceManager(youtube);
+
+        List<AudioTrack> tracks = new ArrayList<>(trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            String id = String.format("dQw4w9WgX%02d", i);
+            tracks.add(new YoutubeAudioTrack(new AudioTrackInfo("Some title of a music video " + i,
+                    "Some channel name", 212000 + i, id, false, "https://www.youtube.com/watch?v=" + id), youtube));
+        }
+        playlist = new BasicAudioPlaylist("Search results for: some query", tracks, null, true);
+
+        legacy = AudioPlaylistCodec.encodeLegacy(playerManager, playlist);
+        binary = AudioPlaylistCodec.encode(playerManager, playlist);
+        System.out.printf("%n%d tracks: legacy payload %d bytes, binary payload %d bytes%n",
+                trackCount, legacy.length, binary.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        playerManager.shutdown();
+    }
+
+    @Benchmark
+    public byte[] encodeLegacy() {
+        return AudioPlaylistCodec.encodeLegacy(playerManager, playlist);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return AudioPlaylistCodec.encode(playerManager, playlist);
+    }
+
+    @Benchmark
+    public AudioPlaylist decodeLegacy() throws IOException {
+        return AudioPlaylistCodec.decode(legacy).decode(playerManager);
+    }
+
+    @Benchmark
+    public AudioPlaylist decodeBinary() throws IOException {
+        return AudioPlaylistCodec.decode(binary).decode(playerManager);
+    }
+
+    //what the TrackSearcher does on a cache hit
+    @Benchmark
+    public AudioPlaylist decodeBinaryFirstFive() throws IOException {
+        return AudioPlaylistCodec.decode(binary).decode(playerManager, 5);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import fredboat.audio.queue.AudioTrackContext;
+import fredboat.audio.queue.SimpleTrackProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue operations of {@link SimpleTrackProvider} on a large queue, with and without shuffle. The shuffled order is
+ * cached until the queue changes, so the benchmarks that change the queue show what a ;;list right after a track
+ * change costs.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=SimpleTrackProviderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleTrackProviderBenchmark {
+
+    @Param({"10000"})
+    public int trackCount;
+
+    @Param({"false", "true"})
+    public boolean shuffle;
+
+    private List<AudioTrackContext> tracks;
+    private SimpleTrackProvider provider;
+
+    @Setup
+    public void setup() {
+        YoutubeAudioSourceManager youtube = new YoutubeAudioSourceManager();
+        tracks = new ArrayList<>(trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            String id = String.format("dQw4w9W%04d", i);
+            AudioTrack track = new YoutubeAudioTrack(new AudioTrackInfo("Some title of a music video " + i,
+                    "Some channel name", 212000 + i, id, false, "https://www.youtube.com/watch?v=" + id), youtube);
+            tracks.add(new BenchmarkTrackContext(track));
+        }
+
+        provider = new SimpleTrackProvider();
+        provider.setShuffle(shuffle);
+        provider.addAll(tracks);
+    }
+
+    //a big playlist being queued
+    @Benchmark
+    public SimpleTrackProvider addAll() {
+        SimpleTrackProvider fresh = new SimpleTrackProvider();
+        fresh.setShuffle(shuffle);
+        fresh.addAll(tracks);
+        return fresh;
+    }
+
+    //the next track being played, and a track being queued, which keeps the size of the queue
+    @Benchmark
+    public AudioTrackContext provideAndAdd() {
+        AudioTrackContext next = provider.provideAudioTrack();
+        provider.add(next);
+        return next;
+    }
+
+    //a page of ;;list
+    @Benchmark
+    public List<AudioTrackContext> listPage() {
+        return provider.getTracksInRange(0, 10);
+    }
+
+    //a page of ;;list after the queue changed
+    @Benchmark
+    public List<AudioTrackContext> addAndListPage() {
+        provider.add(provider.provideAudioTrack());
+        return provider.getTracksInRange(0, 10);
+    }
+
+    @Benchmark
+    public List<AudioTrackContext> getAsListOrdered() {
+        return provider.getAsListOrdered();
+    }
+
+    //shown by ;;list and ;;np
+    @Benchmark
+    public long getDurationMillis() {
+        return provider.getDurationMillis();
+    }
+
+    private static class BenchmarkTrackContext extends AudioTrackContext {
+        //no JDA entities are looked up by the track provider
+        private BenchmarkTrackContext(AudioTrack track) {
+            super(null, track, 174820236481134592L, 81011298891993088L);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.benchmark;
+
+import fredboat.util.TextUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TextUtils#escapeAndDefuse(String)} on the kinds of strings it is used on: track titles, user names and
+ * search results, most of which contain nothing that needs escaping. Compared against the previous implementation,
+ * which escaped with a list of boxed chars and defused with three regex replacements.
+ * <p>
+ * Run with ./gradlew jmh -PjmhInclude=TextUtilsBenchmark
+ * Add -prof gc to the jmh args to see the allocations per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextUtilsBenchmark {
+
+    @Param({"plain", "markdown", "defuse"})
+    public String kind;
+
+    private static final List<Character> LEGACY_MARKDOWN_CHARS = Arrays.asList('*', '`', '~', '_');
+
+    private String input;
+    private final StringBuilder builder = new StringBuilder();
+
+    @Setup
+    public void setup() {
+        switch (kind) {
+            case "plain":
+                input = "Rick Astley - Never Gonna Give You Up (Official Music Video)";
+                break;
+            case "markdown":
+                input = "**DJ_Snake** ~ Turn Down for What `Official` Video *HD*";
+                break;
+            case "defuse":
+                input = "@everyone check out https://www.youtube.com/watch?v=dQw4w9WgXcQ @here";
+                break;
+            default:
+                throw new IllegalArgumentException(kind);
+        }
+    }
+
+    @Benchmark
+    public String escapeAndDefuse() {
+        return TextUtils.escapeAndDefuse(input);
+    }
+
+    //like a ;;list page is built
+    @Benchmark
+    public StringBuilder escapeAndDefuseIntoBuilder() {
+        builder.setLength(0);
+        return TextUtils.escapeAndDefuse(input, builder);
+    }
+
+    @Benchmark
+    public String escapeMarkdown() {
+        return TextUtils.escapeMarkdown(input);
+    }
+
+    @Benchmark
+    public String legacyEscapeAndDefuse() {
+        String escaped = TextUtils.escape(input, LEGACY_MARKDOWN_CHARS);
+        return escaped.replaceAll("@here", "@" + TextUtils.ZERO_WIDTH_CHAR + "here")
+                .replaceAll("@everyone", "@" + TextUtils.ZERO_WIDTH_CHAR + "everyone")
+                .replaceAll("://", ":" + TextUtils.ZERO_WIDTH_CHAR + "//");
+    }
+
+    @Benchmark
+    public String legacyEscapeMarkdown() {
+        return TextUtils.escape(input, LEGACY_MARKDOWN_CHARS);
+    }
+}
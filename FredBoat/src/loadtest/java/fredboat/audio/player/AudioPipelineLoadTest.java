@@ -0,0 +1,392 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.player;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.local.LocalAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.audio.queue.AudioTrackContext;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End to end load test of the local audio pipeline, without Discord or lavalink. Thousands of {@link GuildPlayer}s
+ * get their players from an {@link AudioConnectionFacade} without lavalink nodes: tracks are loaded from local files
+ * by the LocalAudioSourceManager and decoded and encoded by lavaplayer, while simulated users queue, skip, seek,
+ * shuffle and pause. Fake voice connections pull a frame from every player every 20ms, the way the JDA AudioManager
+ * of a guild does, and record how late they are.
+ * <p>
+ * The lavalink side is load tested by {@link LavalinkBalancerLoadTest}.
+ * <p>
+ * Reports operation throughput, frames sent, lost and idle, the lateness of the frame ticks and the heap usage.
+ * <p>
+ * Run with ./gradlew loadTest -PloadTestArgs="--guilds 2000 --duration 300"
+ * <br>
+ * Arguments: --guilds, --duration (seconds), --senders (frame sending threads), --ops (simulated user operations
+ * per second), --report (seconds between reports), --files (directory of audio files to play instead of generated
+ * ones)
+ */
+public class AudioPipelineLoadTest {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    //lateness histogram in steps of 0.1ms, anything later than a whole frame goes into the last bucket
+    private static final int LATENESS_BUCKETS = 201;
+    private static final long LATENESS_BUCKET_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int INITIAL_QUEUE_SIZE = 5;
+
+    private int guilds = 1000;
+    private int durationSeconds = 120;
+    private int senders = 20;
+    private int opsPerSecond = 500;
+    private int reportSeconds = 10;
+    private File files = null;
+
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder operationErrors = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesLost = new LongAdder();
+    private final LongAdder framesIdle = new LongAdder();
+    private final AtomicLongArray lateness = new AtomicLongArray(LATENESS_BUCKETS);
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        AudioPipelineLoadTest loadTest = new AudioPipelineLoadTest();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--guilds":
+                    loadTest.guilds = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    loadTest.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "--senders":
+                    loadTest.senders = Integer.parseInt(value);
+                    break;
+                case "--ops":
+                    loadTest.opsPerSecond = Integer.parseInt(value);
+                    break;
+                case "--report":
+                    loadTest.reportSeconds = Integer.parseInt(value);
+                    break;
+                case "--files":
+                    loadTest.files = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        loadTest.run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        DefaultAudioPlayerManager playerManager = new DefaultAudioPlayerManager();
+        playerManager.setFrameBufferDuration(1000); //same as AudioPlayerManagerConfiguration
+        playerManager.registerSourceManager(new LocalAudioSourceManager());
+        List<AudioTrack> tracks = loadTracks(playerManager, files != null ? files : generateFiles());
+        System.out.printf("Loaded %d tracks, starting %d players%n", tracks.size(), guilds);
+
+        //no lavalink nodes configured, so the facade hands out local players
+        AudioConnectionFacade facade = new AudioConnectionFacade(Collections::emptyList, null, null,
+                playerManager, null, new VoiceConnectionIndex());
+        ExecutorService lookaheadExecutor = Executors.newFixedThreadPool(4, r -> new Thread(r, "load-test-lookahead"));
+
+        List<LoadTestPlayer> players = new ArrayList<>(guilds);
+        for (int i = 0; i < guilds; i++) {
+            LoadTestPlayer player = new LoadTestPlayer(i, facade, lookaheadExecutor);
+            for (int j = 0; j < INITIAL_QUEUE_SIZE; j++) {
+                player.queue(randomTrack(tracks));
+            }
+            players.add(player);
+        }
+
+        //every fake voice connection thread serves a slice of the guilds
+        List<Thread> senderThreads = new ArrayList<>(senders);
+        for (int i = 0; i < senders; i++) {
+            List<LoadTestPlayer> slice = new ArrayList<>();
+            for (int j = i; j < players.size(); j += senders) {
+                slice.add(players.get(j));
+            }
+            Thread thread = new Thread(() -> sendFrames(slice), "load-test-sender-" + i);
+            thread.setPriority(Thread.MAX_PRIORITY); //same as the JDA audio threads
+            thread.start();
+            senderThreads.add(thread);
+        }
+
+        ScheduledExecutorService driver = Executors.newScheduledThreadPool(4, r -> new Thread(r, "load-test-driver"));
+        int opsPerTick = Math.max(1, opsPerSecond / 10);
+        for (int i = 0; i < 4; i++) {
+            driver.scheduleAtFixedRate(() -> {
+                for (int j = 0; j < opsPerTick / 4 + 1; j++) {
+                    simulateUser(players.get(ThreadLocalRandom.current().nextInt(players.size())), tracks);
+                }
+            }, 100, 100, TimeUnit.MILLISECONDS);
+        }
+
+        long start = System.nanoTime();
+        long heapMax = 0;
+        Snapshot last = snapshot();
+        for (int elapsed = reportSeconds; elapsed <= durationSeconds; elapsed += reportSeconds) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(reportSeconds));
+            heapMax = Math.max(heapMax, memory.getHeapMemoryUsage().getUsed());
+            Snapshot current = snapshot();
+            report(elapsed, current.minus(last), reportSeconds);
+            last = current;
+        }
+
+        running = false;
+        driver.shutdownNow();
+        for (Thread thread : senderThreads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("========== Total ==========");
+        report((int) seconds, snapshot(), seconds);
+        System.gc();
+        long heapAfterGc = memory.getHeapMemoryUsage().getUsed();
+        System.out.printf("Heap: max %dMB, after gc %dMB, %.1fKB per guild%n", heapMax >> 20, heapAfterGc >> 20,
+                heapAfterGc / 1024d / guilds);
+        System.out.printf("Frame tick lateness: %s%n", latenessSummary());
+
+        players.forEach(GuildPlayer::destroy);
+        lookaheadExecutor.shutdownNow();
+        playerManager.shutdown();
+    }
+
+    //the send loop of a JDA audio connection, for many guilds at once
+    private void sendFrames(List<LoadTestPlayer> players) {
+        long nextTick = System.nanoTime();
+        while (running) {
+            long late = System.nanoTime() - nextTick;
+            lateness.incrementAndGet((int) Math.min(LATENESS_BUCKETS - 1, Math.max(0, late) / LATENESS_BUCKET_NANOS));
+
+            for (LoadTestPlayer player : players) {
+                if (player.canProvide()) {
+                    player.provide20MsAudio();
+                    framesSent.increment();
+                } else if (player.isPlaying()) {
+                    framesLost.increment();
+                } else {
+                    framesIdle.increment();
+                }
+            }
+
+            nextTick += FRAME_NANOS;
+            long sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else if (sleep < -FRAME_NANOS) {
+                nextTick = System.nanoTime(); //fell behind by more than a frame, frames are dropped in that case
+            }
+        }
+    }
+
+    private void simulateUser(LoadTestPlayer player, List<AudioTrack> tracks) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            int roll = random.nextInt(100);
+            if (roll < 40) {
+                player.queue(randomTrack(tracks));
+            } else if (roll < 60) {
+                player.skipPlaying();
+                player.play();
+            } else if (roll < 80) {
+                AudioTrackContext playing = player.getPlayingTrack();
+                if (playing != null && player.isPlaying()) {
+                    player.seekTo(random.nextLong(Math.max(1, playing.getEffectiveDuration())));
+                }
+            } else if (roll < 90) {
+                player.toggleShuffle();
+            } else {
+                player.setPause(!player.isPaused());
+            }
+            operations.increment();
+        } catch (Exception e) {
+            operationErrors.increment();
+        }
+    }
+
+    private void report(int elapsedSeconds, Snapshot delta, double seconds) {
+        long frames = delta.sent + delta.lost;
+        System.out.printf("[%4ds] ops %.0f/s (%d errors) | frames sent %.0f/s, lost %.2f%%, idle %d | heap %dMB%n",
+                elapsedSeconds, delta.operations / seconds, delta.errors, delta.sent / seconds,
+                frames == 0 ? 0 : 100d * delta.lost / frames, delta.idle, memory.getHeapMemoryUsage().getUsed() >> 20);
+    }
+
+    private String latenessSummary() {
+        long total = 0;
+        for (int i = 0; i < LATENESS_BUCKETS; i++) {
+            total += lateness.get(i);
+        }
+        StringBuilder summary = new StringBuilder();
+        double[] quantiles = {0.5, 0.9, 0.99, 0.999};
+        int q = 0;
+        long seen = 0;
+        for (int i = 0; i < LATENESS_BUCKETS && q < quantiles.length; i++) {
+            seen += lateness.get(i);
+            while (q < quantiles.length && seen >= quantiles[q] * total && total > 0) {
+                String value = i == LATENESS_BUCKETS - 1 ? ">20ms" : String.format("<%.1fms", (i + 1) / 10d);
+                summary.append("p").append(quantiles[q] * 100).append(" ").append(value).append("  ");
+                q++;
+            }
+        }
+        return summary.toString();
+    }
+
+    private static AudioTrack randomTrack(List<AudioTrack> tracks) {
+        return tracks.get(ThreadLocalRandom.current().nextInt(tracks.size())).makeClone();
+    }
+
+    private static List<AudioTrack> loadTracks(DefaultAudioPlayerManager playerManager, File directory)
+            throws Exception {
+        File[] audioFiles = directory.listFiles(File::isFile);
+        if (audioFiles == null || audioFiles.length == 0) {
+            throw new IllegalArgumentException("No audio files found in " + directory);
+        }
+        List<AudioTrack> tracks = Collections.synchronizedList(new ArrayList<>());
+        for (File file : audioFiles) {
+            playerManager.loadItem(file.getAbsolutePath(), new AudioLoadResultHandler() {
+                @Override
+                public void trackLoaded(AudioTrack track) {
+                    tracks.add(track);
+                }
+
+                @Override
+                public void playlistLoaded(AudioPlaylist playlist) {
+                    tracks.addAll(playlist.getTracks());
+                }
+
+                @Override
+                public void noMatches() {
+                    System.out.println("Not an audio file: " + file);
+                }
+
+                @Override
+                public void loadFailed(FriendlyException exception) {
+                    System.out.println("Failed to load " + file + ": " + exception.getMessage());
+                }
+            }).get();
+        }
+        if (tracks.isEmpty()) {
+            throw new IllegalArgumentException("None of the files in " + directory + " could be loaded");
+        }
+        return tracks;
+    }
+
+    //a few tones of different lengths, so the players go through track ends, lookaheads and seeks
+    private static File generateFiles() throws IOException {
+        File directory = Files.createTempDirectory("fredboat-load-test").toFile();
+        directory.deleteOnExit();
+        int[] seconds = {20, 45, 90};
+        for (int i = 0; i < seconds.length; i++) {
+            File file = new File(directory, "tone-" + seconds[i] + "s.wav");
+            file.deleteOnExit();
+            writeTone(file, seconds[i], 220 * (i + 1));
+        }
+        return directory;
+    }
+
+    //16 bit stereo pcm at 48kHz, so lavaplayer has to encode it to opus like it does for most non-youtube sources
+    private static void writeTone(File file, int seconds, int frequency) throws IOException {
+        int sampleRate = 48000;
+        int channels = 2;
+        int dataSize = sampleRate * seconds * channels * 2;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeBytes("RIFF");
+            out.writeInt(Integer.reverseBytes(36 + dataSize));
+            out.writeBytes("WAVEfmt ");
+            out.writeInt(Integer.reverseBytes(16));
+            out.writeShort(Short.reverseBytes((short) 1)); //pcm
+            out.writeShort(Short.reverseBytes((short) channels));
+            out.writeInt(Integer.reverseBytes(sampleRate));
+            out.writeInt(Integer.reverseBytes(sampleRate * channels * 2));
+            out.writeShort(Short.reverseBytes((short) (channels * 2)));
+            out.writeShort(Short.reverseBytes((short) 16));
+            out.writeBytes("data");
+            out.writeInt(Integer.reverseBytes(dataSize));
+            for (int i = 0; i < sampleRate * seconds; i++) {
+                short sample = (short) (Math.sin(2 * Math.PI * frequency * i / sampleRate) * 8000);
+                for (int c = 0; c < channels; c++) {
+                    out.writeShort(Short.reverseBytes(sample));
+                }
+            }
+        }
+    }
+
+    private Snapshot snapshot() {
+        return new Snapshot(operations.sum(), operationErrors.sum(), framesSent.sum(), framesLost.sum(),
+                framesIdle.sum());
+    }
+
+    private static class Snapshot {
+        private final long operations;
+        private final long errors;
+        private final long sent;
+        private final long lost;
+        private final long idle;
+
+        private Snapshot(long operations, long errors, long sent, long lost, long idle) {
+            this.operations = operations;
+            this.errors = errors;
+            this.sent = sent;
+            this.lost = lost;
+            this.idle = idle;
+        }
+
+        private Snapshot minus(Snapshot other) {
+            return new Snapshot(operations - other.operations, errors - other.errors, sent - other.sent,
+                    lost - other.lost, idle - other.idle);
+        }
+    }
+}
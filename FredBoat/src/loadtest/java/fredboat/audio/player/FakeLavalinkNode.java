@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.audio.player;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process stand-in for a lavalink node, see {@link LavalinkBalancerLoadTest}. It speaks enough of the lavalink
+ * websocket protocol for the lavalink client: it keeps track of the players the client starts and stops on it, and
+ * sends the stats and playerUpdate frames a real node sends.
+ * <p>
+ * The load it reports follows from the players playing on it: the cpu load grows with the share of its capacity that
+ * is in use, and frames go missing once it is over capacity. A guild plays on one node at a time, the sessions of all
+ * nodes are shared so that a player that is started on another node leaves this one, even if the client does not tell
+ * it to stop.
+ */
+class FakeLavalinkNode extends WebSocketServer {
+
+    private static final int FRAMES_PER_MINUTE = 3000;
+
+    private final String name;
+    private final int capacity;
+    private final Map<String, Session> sessions;
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * @param capacity the amount of playing players at which the node is fully loaded
+     * @param sessions guild id to the session playing it, shared by all fake nodes
+     */
+    FakeLavalinkNode(String name, int port, int capacity, Map<String, Session> sessions) {
+        super(new InetSocketAddress("localhost", port));
+        this.name = name;
+        this.capacity = capacity;
+        this.sessions = sessions;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getPlayingPlayers() {
+        int playing = 0;
+        for (Session session : sessions.values()) {
+            if (session.node == this) {
+                playing++;
+            }
+        }
+        return playing;
+    }
+
+    void sendStats() {
+        int playing = getPlayingPlayers();
+        double load = Math.min(1d, (double) playing / capacity);
+        int deficit = playing > capacity ? FRAMES_PER_MINUTE * (playing - capacity) / playing : 0;
+        JSONObject stats = new JSONObject()
+                .put("op", "stats")
+                .put("players", playing)
+                .put("playingPlayers", playing)
+                .put("uptime", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt))
+                .put("memory", new JSONObject()
+                        .put("free", 0)
+                        .put("used", 0)
+                        .put("allocated", 0)
+                        .put("reservable", 0))
+                .put("cpu", new JSONObject()
+                        .put("cores", 4)
+                        .put("systemLoad", load)
+                        .put("lavalinkLoad", load))
+                .put("frameStats", new JSONObject()
+                        .put("sent", FRAMES_PER_MINUTE - deficit)
+                        .put("nulled", 0)
+                        .put("deficit", deficit));
+        send(stats.toString());
+    }
+
+    void sendPlayerUpdates() {
+        long now = System.currentTimeMillis();
+        sessions.forEach((guildId, session) -> {
+            if (session.node == this) {
+                JSONObject update = new JSONObject()
+                        .put("op", "playerUpdate")
+                        .put("guildId", guildId)
+                        .put("state", new JSONObject()
+                                .put("time", now)
+                                .put("position", now - session.startedAt));
+                send(update.toString());
+            }
+        });
+    }
+
+    private void send(String message) {
+        for (WebSocket connection : getConnections()) {
+            connection.send(message);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket connection, String message) {
+        JSONObject json = new JSONObject(message);
+        String guildId = json.optString("guildId", null);
+        if (guildId == null) {
+            return;
+        }
+        switch (json.getString("op")) {
+            case "play":
+                sessions.put(guildId, new Session(this, System.currentTimeMillis()));
+                break;
+            case "stop":
+            case "destroy":
+                sessions.computeIfPresent(guildId, (id, session) -> session.node == this ? null : session);
+                break;
+            default:
+                //voice updates, volume, pause and seek do not change the load of the node
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket connection, ClientHandshake handshake) {
+        sendStats(); //a real node reports its stats right away too
+    }
+
+    @Override
+    public void onClose(WebSocket connection, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onError(WebSocket connection, Exception e) {
+        System.out.println("Fake node " + name + " error: " + e);
+    }
+
+    //not abstract in every version of the websocket library
+    public void onStart() {
+    }
+
+    static class Session {
+        private final FakeLavalinkNode node;
+        private final long startedAt;
+
+        Session(FakeLavalinkNode node, long startedAt) {
+            this.node = node;
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.audio.player;
+
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import fredboat.feature.metrics.Metrics;
+import lavalink.client.io.Lavalink;
+import lavalink.client.io.LavalinkSocket;
+import lavalink.client.io.Link;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of the {@link LavalinkNodeBalancer}, without Discord. The lavalink client is connected to a few
+ * {@link FakeLavalinkNode}s of different capacities running in the same process, which report their load the way
+ * real nodes do. Half of the guilds start playing at once, after that simulated guilds keep starting and stopping
+ * their players. Halfway through, the busiest node is drained, and it is undrained again later on.
+ * <p>
+ * The guilds never connect to a voice channel, the players are assigned to and started on the nodes directly, the
+ * same way the {@link AudioConnectionFacade} does it before connecting. Reports how fast players are assigned and
+ * rebalanced, how many were moved, and how the players are spread over the nodes.
+ * <p>
+ * Run with ./gradlew lavalinkLoadTest -PloadTestArgs="--nodes 4 --guilds 5000"
+ * <br>
+ * Arguments: --nodes, --guilds, --duration (seconds), --capacity (playing players that fully load the largest node,
+ * the others are smaller), --churn (players started or stopped per second), --stats (seconds between the stats
+ * reports of the nodes and the rebalances, real nodes report once a minute), --report (seconds between reports)
+ */
+public class LavalinkBalancerLoadTest {
+
+    private int nodeCount = 4;
+    private int guilds = 5000;
+    private int durationSeconds = 120;
+    private int capacity = 2000;
+    private int churnPerSecond = 200;
+    private int statsSeconds = 5;
+    private int reportSeconds = 10;
+
+    private final Map<String, FakeLavalinkNode.Session> sessions = new ConcurrentHashMap<>();
+    private final List<FakeLavalinkNode> nodes = new ArrayList<>();
+    //only touched by the driver thread
+    private final Set<String> playing = new HashSet<>();
+    private final LongAdder assigns = new LongAdder();
+    private final LongAdder assignNanos = new LongAdder();
+    private final LongAccumulator assignMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder rebalances = new LongAdder();
+    private final LongAdder rebalanceNanos = new LongAdder();
+    private final LongAccumulator rebalanceMaxNanos = new LongAccumulator(Math::max, 0);
+
+    private Lavalink lavalink;
+    private LavalinkNodeBalancer balancer;
+    private List<AudioTrack> tracks;
+
+    public static void main(String[] args) throws Exception {
+        LavalinkBalancerLoadTest loadTest = new LavalinkBalancerLoadTest();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--nodes":
+                    loadTest.nodeCount = value;
+                    break;
+                case "--guilds":
+                    loadTest.guilds = value;
+                    break;
+                case "--duration":
+                    loadTest.durationSeconds = value;
+                    break;
+                case "--capacity":
+                    loadTest.capacity = value;
+                    break;
+                case "--churn":
+                    loadTest.churnPerSecond = value;
+                    break;
+                case "--stats":
+                    loadTest.statsSeconds = value;
+                    break;
+                case "--report":
+                    loadTest.reportSeconds = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+        loadTest.run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        tracks = createTracks();
+        //nobody ever connects to a voice channel, so the client never needs a JDA instance
+        lavalink = new Lavalink("1", 1, shardId -> null);
+        for (int i = 0; i < nodeCount; i++) {
+            int port = freePort();
+            //node 0 is the smallest one, and the first to become overloaded
+            FakeLavalinkNode node = new FakeLavalinkNode("fake-" + i, port, capacity * (i + 1) / nodeCount, sessions);
+            node.start();
+            nodes.add(node);
+            lavalink.addNode(node.getName(), new URI("ws://localhost:" + port), "");
+        }
+        awaitNodes();
+        balancer = new LavalinkNodeBalancer(lavalink);
+        System.out.printf("%d nodes available, starting %d of %d guilds%n", nodeCount, guilds / 2, guilds);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < guilds / 2; i++) {
+            startPlayer(Integer.toString(i));
+        }
+        System.out.printf("Burst of %d players assigned in %dms%n", guilds / 2,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        report(0);
+
+        //stats arrive and rebalances run on their own threads, like the lavalink sockets and the rebalance agent
+        ScheduledExecutorService statsReporter = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "load-test-stats"));
+        statsReporter.scheduleAtFixedRate(() -> nodes.forEach(node -> {
+            node.sendStats();
+            node.sendPlayerUpdates();
+        }), statsSeconds, statsSeconds, TimeUnit.SECONDS);
+        ScheduledExecutorService rebalancer = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "load-test-rebalance"));
+        //a little after the stats, so they are up to date
+        rebalancer.scheduleAtFixedRate(this::rebalance, statsSeconds * 1000 + 500, statsSeconds * 1000,
+                TimeUnit.MILLISECONDS);
+        ScheduledExecutorService driver = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "load-test-driver"));
+        int churnPerTick = Math.max(1, churnPerSecond / 10);
+        driver.scheduleAtFixedRate(() -> {
+            for (int i = 0; i < churnPerTick; i++) {
+                churn();
+            }
+        }, 100, 100, TimeUnit.MILLISECONDS);
+
+        String drained = null;
+        Snapshot last = snapshot();
+        for (int elapsed = reportSeconds; elapsed <= durationSeconds; elapsed += reportSeconds) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(reportSeconds));
+            if (drained == null && elapsed >= durationSeconds / 2) {
+                LavalinkSocket busiest = busiestNode();
+                drained = busiest.getName();
+                long drainStart = System.nanoTime();
+                int moved = balancer.drain(busiest);
+                System.out.printf("Drained node %s, moved %d players in %dms%n", drained, moved,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart));
+            } else if (drained != null && elapsed >= durationSeconds * 3 / 4 && balancer.undrain(drained)) {
+                System.out.printf("Undrained node %s%n", drained);
+            }
+            Snapshot current = snapshot();
+            Snapshot delta = current.minus(last);
+            System.out.printf("[%4ds] assigns %.0f/s, avg %.1fus | rebalances %d, avg %.1fms | moved %d drained, "
+                            + "%d overloaded%n", elapsed, delta.assigns / (double) reportSeconds,
+                    delta.assigns == 0 ? 0 : delta.assignNanos / 1000d / delta.assigns, delta.rebalances,
+                    delta.rebalances == 0 ? 0 : delta.rebalanceNanos / 1e6 / delta.rebalances,
+                    delta.drainMigrations, delta.overloadMigrations);
+            report(elapsed);
+            last = current;
+        }
+
+        driver.shutdownNow();
+        rebalancer.shutdownNow();
+        statsReporter.shutdownNow();
+        driver.awaitTermination(10, TimeUnit.SECONDS);
+
+        Snapshot total = snapshot();
+        System.out.println("========== Total ==========");
+        System.out.printf("Assigns: %d, avg %.1fus, max %.1fms%n", total.assigns,
+                total.assigns == 0 ? 0 : total.assignNanos / 1000d / total.assigns, assignMaxNanos.get() / 1e6);
+        System.out.printf("Rebalances: %d, avg %.1fms, max %.1fms%n", total.rebalances,
+                total.rebalances == 0 ? 0 : total.rebalanceNanos / 1e6 / total.rebalances,
+                rebalanceMaxNanos.get() / 1e6);
+        System.out.printf("Moved: %d drained, %d overloaded%n", total.drainMigrations, total.overloadMigrations);
+
+        lavalink.shutdown();
+        for (FakeLavalinkNode node : nodes) {
+            node.stop();
+        }
+    }
+
+    private void churn() {
+        String guildId = Integer.toString(ThreadLocalRandom.current().nextInt(guilds));
+        if (playing.remove(guildId)) {
+            //leaving the voice channel, the player is destroyed along with the link
+            lavalink.getLink(guildId).destroy();
+        } else {
+            startPlayer(guildId);
+        }
+    }
+
+    private void startPlayer(String guildId) {
+        Link link = lavalink.getLink(guildId);
+        long start = System.nanoTime();
+        balancer.assign(link);
+        long nanos = System.nanoTime() - start;
+        assigns.increment();
+        assignNanos.add(nanos);
+        assignMaxNanos.accumulate(nanos);
+
+        link.getPlayer().playTrack(tracks.get(ThreadLocalRandom.current().nextInt(tracks.size())).makeClone());
+        playing.add(guildId);
+    }
+
+    private void rebalance() {
+        long start = System.nanoTime();
+        try {
+            balancer.rebalance();
+        } catch (Exception e) {
+            System.out.println("Rebalance failed: " + e);
+        }
+        long nanos = System.nanoTime() - start;
+        rebalances.increment();
+        rebalanceNanos.add(nanos);
+        rebalanceMaxNanos.accumulate(nanos);
+    }
+
+    //the players on each node, as seen by the nodes and by the client, and the penalty the balancer gives it
+    private void report(int elapsedSeconds) {
+        for (FakeLavalinkNode node : nodes) {
+            LavalinkSocket socket = getSocket(node.getName());
+            int links = 0;
+            for (Link link : lavalink.getLinks()) {
+                if (link.getNode() == socket) {
+                    links++;
+                }
+            }
+            System.out.printf("[%4ds]   %s: %d of %d playing, %d links, penalty %d%s%n", elapsedSeconds,
+                    node.getName(), node.getPlayingPlayers(), node.getCapacity(), links,
+                    socket == null ? -1 : balancer.getPenalty(socket),
+                    balancer.isDraining(node.getName()) ? " (draining)" : "");
+        }
+    }
+
+    private LavalinkSocket busiestNode() {
+        LavalinkSocket busiest = null;
+        int most = -1;
+        for (FakeLavalinkNode node : nodes) {
+            if (node.getPlayingPlayers() > most) {
+                most = node.getPlayingPlayers();
+                busiest = getSocket(node.getName());
+            }
+        }
+        return busiest;
+    }
+
+    private LavalinkSocket getSocket(String name) {
+        for (LavalinkSocket socket : lavalink.getNodes()) {
+            if (socket.getName().equals(name)) {
+                return socket;
+            }
+        }
+        return null;
+    }
+
+    private void awaitNodes() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            boolean available = lavalink.getNodes().size() == nodeCount;
+            for (LavalinkSocket socket : lavalink.getNodes()) {
+                available &= socket.isAvailable() && socket.getStats() != null;
+            }
+            if (available) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("The lavalink client did not connect to all fake nodes");
+    }
+
+    //the nodes never load the tracks, they only need to be encodable by the lavalink client
+    private static List<AudioTrack> createTracks() {
+        YoutubeAudioSourceManager youtube = new YoutubeAudioSourceManager();
+        List<AudioTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String id = String.format("dQw4w9WgX%02d", i);
+            tracks.add(new YoutubeAudioTrack(new AudioTrackInfo("Load test track " + i, "Load test",
+                    TimeUnit.MINUTES.toMillis(3 + i), id, false, "https://www.youtube.com/watch?v=" + id), youtube));
+        }
+        return tracks;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private Snapshot snapshot() {
+        return new Snapshot(assigns.sum(), assignNanos.sum(), rebalances.sum(), rebalanceNanos.sum(),
+                (long) Metrics.lavalinkMigrations.labels("drain").get(),
+                (long) Metrics.lavalinkMigrations.labels("overload").get());
+    }
+
+    private static class Snapshot {
+        private final long assigns;
+        private final long assignNanos;
+        private final long rebalances;
+        private final long rebalanceNanos;
+        private final long drainMigrations;
+        private final long overloadMigrations;
+
+        private Snapshot(long assigns, long assignNanos, long rebalances, long rebalanceNanos, long drainMigrations,
+                         long overloadMigrations) {
+            this.assigns = assigns;
+            this.assignNanos = assignNanos;
+            this.rebalances = rebalances;
+            this.rebalanceNanos = rebalanceNanos;
+            this.drainMigrations = drainMigrations;
+            this.overloadMigrations = overloadMigrations;
+        }
+
+        private Snapshot minus(Snapshot other) {
+            return new Snapshot(assigns - other.assigns, assignNanos - other.assignNanos,
+                    rebalances - other.rebalances, rebalanceNanos - other.rebalanceNanos,
+                    drainMigrations - other.drainMigrations, overloadMigrations - other.overloadMigrations);
+        }
+    }
+}
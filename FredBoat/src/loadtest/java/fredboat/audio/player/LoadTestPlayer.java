@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.player;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.audio.queue.AudioTrackContext;
+import fredboat.jda.JdaEntityProvider;
+import net.dv8tion.jda.core.entities.Guild;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
+/**
+ * The {@link GuildPlayer} of a simulated guild, see {@link AudioPipelineLoadTest}. The guild does not exist as far as
+ * the player can tell, so everything that needs Discord is skipped the way it is for a guild the bot left:
+ * announcements, joining voice channels, permissions. Only local tracks are played, so neither the youtube api nor
+ * the item loaders are ever reached.
+ */
+class LoadTestPlayer extends GuildPlayer {
+
+    private static final long LOAD_TEST_USER_ID = 1;
+
+    //none of the simulated guilds can be looked up
+    private static final JdaEntityProvider NO_GUILDS = new JdaEntityProvider(null) {
+        @Override
+        public Guild getGuildById(long guildId) {
+            return null;
+        }
+    };
+
+    private final Executor lookaheadExecutor;
+
+    LoadTestPlayer(long guildId, AudioConnectionFacade audioConnectionFacade, Executor lookaheadExecutor) {
+        super(guild(guildId), null, NO_GUILDS, audioConnectionFacade, null, null, null, null, null);
+        this.lookaheadExecutor = lookaheadExecutor;
+    }
+
+    void queue(AudioTrack track) {
+        queue(new LoadTestTrackContext(track, getGuildId()));
+    }
+
+    void toggleShuffle() {
+        setShuffle(!isShuffle());
+    }
+
+    //the way ;;skip does it
+    void skipPlaying() {
+        AudioTrackContext playing = getPlayingTrack();
+        if (playing != null) {
+            skipTracks(Collections.singletonList(playing.getTrackId()));
+        }
+    }
+
+    @Override
+    Executor getLookaheadExecutor() {
+        return lookaheadExecutor;
+    }
+
+    //the GuildPlayer only needs the id of its guild
+    private static Guild guild(long guildId) {
+        return (Guild) Proxy.newProxyInstance(Guild.class.getClassLoader(), new Class[]{Guild.class},
+                (self, method, args) -> {
+                    switch (method.getName()) {
+                        case "getIdLong":
+                            return guildId;
+                        case "getId":
+                            return Long.toString(guildId);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static class LoadTestTrackContext extends AudioTrackContext {
+        //there are no JDA entities in the load test, nothing that looks them up is called
+        private LoadTestTrackContext(AudioTrack track, long guildId) {
+            super(null, track, guildId, LOAD_TEST_USER_ID);
+        }
+    }
+}
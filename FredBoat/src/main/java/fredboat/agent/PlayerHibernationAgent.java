@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.agent;
+
+import fredboat.audio.player.PlayerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns music players that have been idle for a while into dormant players, see
+ * {@link PlayerRegistry#hibernateIdlePlayers(long)}
+ */
+public class PlayerHibernationAgent extends FredBoatAgent {
+
+    private static final Logger log = LoggerFactory.getLogger(PlayerHibernationAgent.class);
+
+    private final PlayerRegistry playerRegistry;
+    private final long idleMillis;
+
+    public PlayerHibernationAgent(PlayerRegistry playerRegistry, int idleMinutes) {
+        super("player-hibernation", 1, TimeUnit.MINUTES);
+        this.playerRegistry = playerRegistry;
+        this.idleMillis = TimeUnit.MINUTES.toMillis(idleMinutes);
+    }
+
+    @Override
+    protected void doRun() {
+        int hibernated = playerRegistry.hibernateIdlePlayers(idleMillis);
+        if (hibernated > 0) {
+            log.info("Turned {} idle players dormant. Live: {} Dormant: {}",
+                    hibernated, playerRegistry.totalCount(), playerRegistry.dormantCount());
+        }
+    }
+}
@@ -28,34 +28,35 @@ package fredboat.agent;
 import fredboat.audio.player.AudioConnectionFacade;
 import fredboat.audio.player.GuildPlayer;
 import fredboat.audio.player.PlayerRegistry;
+import fredboat.audio.player.VoiceConnectionIndex;
 import fredboat.command.music.control.VoteSkipCommand;
 import fredboat.feature.metrics.Metrics;
-import fredboat.jda.GuildProvider;
-import net.dv8tion.jda.core.entities.Member;
+import fredboat.main.Launcher;
+import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.VoiceChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Closes voice connections that nobody is listening to anymore or that have not been used for a while.
+ * <p>
+ * Instead of scanning all guilds, this drains the expired deadlines of the {@link VoiceConnectionIndex}, which are
+ * scheduled when we connect somewhere and when the last human leaves one of our channels.
+ */
 public class VoiceChannelCleanupAgent extends FredBoatAgent {
 
     private static final Logger log = LoggerFactory.getLogger(VoiceChannelCleanupAgent.class);
-    private static final HashMap<String, Long> VC_LAST_USED = new HashMap<>();
-    private static final int UNUSED_CLEANUP_THRESHOLD = 60000 * 60; // Effective when users are in the VC, but the player is not playing
     private final PlayerRegistry playerRegistry;
-    private final GuildProvider guildProvider;
+    private final VoiceConnectionIndex voiceConnectionIndex;
     private final AudioConnectionFacade audioConnectionFacade;
 
-    public VoiceChannelCleanupAgent(PlayerRegistry playerRegistry, GuildProvider guildProvider,
+    public VoiceChannelCleanupAgent(PlayerRegistry playerRegistry, VoiceConnectionIndex voiceConnectionIndex,
                                     AudioConnectionFacade audioConnectionFacade) {
-        super("voice-cleanup", 10, TimeUnit.MINUTES);
+        super("voice-cleanup", 1, TimeUnit.MINUTES);
         this.playerRegistry = playerRegistry;
-        this.guildProvider = guildProvider;
+        this.voiceConnectionIndex = voiceConnectionIndex;
         this.audioConnectionFacade = audioConnectionFacade;
     }
 
@@ -68,73 +69,72 @@ public class VoiceChannelCleanupAgent extends FredBoatAgent {
         }
     }
 
-    private void cleanup(){
-        log.info("Checking guilds for stale voice connections.");
-
-        final AtomicInteger totalGuilds = new AtomicInteger(0);
-        final AtomicInteger totalVcs = new AtomicInteger(0);
-        final AtomicInteger closedVcs = new AtomicInteger(0);
+    private void cleanup() {
+        int checked = 0;
+        int closed = 0;
 
-        guildProvider.streamGuilds().forEach(guild -> {
+        VoiceConnectionIndex.Deadline deadline;
+        while ((deadline = voiceConnectionIndex.pollExpired()) != null) {
+            checked++;
             try {
-                totalGuilds.incrementAndGet();
-                if (guild != null
-                        && guild.getSelfMember() != null
-                        && guild.getSelfMember().getVoiceState() != null
-                        && guild.getSelfMember().getVoiceState().getChannel() != null) {
-
-                    totalVcs.incrementAndGet();
-                    VoiceChannel vc = guild.getSelfMember().getVoiceState().getChannel();
-
-                    if (getHumanMembersInVC(vc).size() == 0) {
-                        closedVcs.incrementAndGet();
-                        VoteSkipCommand.guildSkipVotes.remove(guild.getIdLong());
-                        audioConnectionFacade.closeConnection(guild);
-                        VC_LAST_USED.remove(vc.getId());
-                    } else if (isBeingUsed(vc)) {
-                        VC_LAST_USED.put(vc.getId(), System.currentTimeMillis());
-                    } else {
-                        // Not being used! But there are users in te VC. Check if we've been here for a while.
-
-                        if (!VC_LAST_USED.containsKey(vc.getId())) {
-                            VC_LAST_USED.put(vc.getId(), System.currentTimeMillis());
-                        }
-
-                        long lastUsed = VC_LAST_USED.get(vc.getId());
-
-                        if (System.currentTimeMillis() - lastUsed > UNUSED_CLEANUP_THRESHOLD) {
-                            closedVcs.incrementAndGet();
-                            audioConnectionFacade.closeConnection(guild);
-                            VC_LAST_USED.remove(vc.getId());
-                        }
-                    }
+                if (check(deadline)) {
+                    closed++;
                 }
             } catch (Exception e) {
-                log.error("Failed to check guild {} for stale voice connections", guild.getIdLong(), e);
+                log.error("Failed to check guild {} for a stale voice connection", deadline.getGuildId(), e);
             }
-        });
+        }
 
-        log.info("Checked {} guilds for stale voice connections.", totalGuilds.get());
-        log.info("Closed {} of {} voice connections.", closedVcs.get(), totalVcs.get());
-        Metrics.voiceChannelsCleanedUp.inc(closedVcs.get());
+        if (checked > 0) {
+            log.debug("Checked {} voice connections, closed {}. Tracked connections left: {}",
+                    checked, closed, voiceConnectionIndex.size());
+        }
+        Metrics.voiceChannelsCleanedUp.inc(closed);
     }
 
-    private List<Member> getHumanMembersInVC(VoiceChannel vc){
-        ArrayList<Member> l = new ArrayList<>();
+    /**
+     * @return true if the connection was closed
+     */
+    private boolean check(VoiceConnectionIndex.Deadline deadline) {
+        Guild guild = Launcher.getBotController().getJdaEntityProvider().getGuildById(deadline.getGuildId());
+        VoiceChannel vc = null;
+        if (guild != null && guild.getSelfMember().getVoiceState() != null) {
+            vc = guild.getSelfMember().getVoiceState().getChannel();
+        }
+        if (vc == null) {
+            //we are not connected anymore, or don't have the guild at hand
+            voiceConnectionIndex.untrack(deadline.getGuildId());
+            return false;
+        }
 
-        for(Member m : vc.getMembers()){
-            if(!m.getUser().isBot()){
-                l.add(m);
-            }
+        if (VoiceConnectionIndex.countHumans(vc) == 0) {
+            VoteSkipCommand.guildSkipVotes.remove(guild.getIdLong());
+            audioConnectionFacade.closeConnection(guild);
+            return true;
         }
 
-        return l;
-    }
+        if (deadline.getKind() == VoiceConnectionIndex.Kind.EMPTY) {
+            return false; //somebody came back, the unused deadline of this connection is still in place
+        }
 
-    private boolean isBeingUsed(VoiceChannel vc) {
-        GuildPlayer guildPlayer = playerRegistry.getExisting(vc.getGuild());
+        // There are users in the VC. Check if we have been sitting around unused for a while.
+        long now = System.currentTimeMillis();
+        GuildPlayer guildPlayer = playerRegistry.getLive(guild);
+        if (guildPlayer != null && guildPlayer.isPlaying()) {
+            voiceConnectionIndex.reschedule(deadline, now + VoiceConnectionIndex.UNUSED_CLEANUP_THRESHOLD);
+            return false;
+        }
 
-        return guildPlayer != null && guildPlayer.isPlaying();
+        long idleSince = deadline.getConnectedAt();
+        if (guildPlayer != null) {
+            idleSince = Math.max(idleSince, guildPlayer.getLastActivityMillis());
+        }
+        if (now - idleSince > VoiceConnectionIndex.UNUSED_CLEANUP_THRESHOLD) {
+            audioConnectionFacade.closeConnection(guild);
+            return true;
+        }
+        voiceConnectionIndex.reschedule(deadline, idleSince + VoiceConnectionIndex.UNUSED_CLEANUP_THRESHOLD);
+        return false;
     }
 
 }
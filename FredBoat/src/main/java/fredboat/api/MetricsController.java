@@ -24,26 +24,41 @@
 
 package fredboat.api;
 
+import fredboat.feature.metrics.OpenMetricsTextFormat;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.exporter.common.TextFormat;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by napster on 18.10.17.
  * <p>
  * Used to expose the prometheus metrics with a reactive web server. Some code copied from prometheus own MetricsServlet
+ * <p>
+ * The metrics are rendered straight into the response buffer, gzipped if the scraper accepts it, and in the
+ * OpenMetrics format if the scraper asks for it.
  */
 @RestController
 @RequestMapping("/metrics")
@@ -55,12 +70,26 @@ public class MetricsController {
         registry = CollectorRegistry.defaultRegistry;
     }
 
-    @GetMapping(produces = TextFormat.CONTENT_TYPE_004)
-    public Mono<String> getMetrics(@RequestParam(name = "name[]", required = false) String[] includedParam) {
-        return Mono.fromCallable(() -> buildAnswer(includedParam));
+    @GetMapping
+    public Mono<Void> getMetrics(@RequestParam(name = "name[]", required = false) String[] includedParam,
+                                 ServerHttpRequest request, ServerHttpResponse response) {
+        HttpHeaders requestHeaders = request.getHeaders();
+        boolean openMetrics = accepts(requestHeaders.get(HttpHeaders.ACCEPT), OpenMetricsTextFormat.MEDIA_TYPE);
+        boolean gzip = accepts(requestHeaders.get(HttpHeaders.ACCEPT_ENCODING), "gzip");
+
+        HttpHeaders headers = response.getHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, openMetrics ? OpenMetricsTextFormat.CONTENT_TYPE : TextFormat.CONTENT_TYPE_004);
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return response.writeWith(Mono.fromCallable(
+                () -> buildAnswer(includedParam, openMetrics, gzip, response.bufferFactory())));
     }
 
-    private String buildAnswer(String[] includedParam) throws IOException {
+    private DataBuffer buildAnswer(String[] includedParam, boolean openMetrics, boolean gzip,
+                                   DataBufferFactory bufferFactory) throws IOException {
         Set<String> params;
         if (includedParam == null) {
             params = Collections.emptySet();
@@ -68,14 +97,38 @@ public class MetricsController {
             params = new HashSet<>(Arrays.asList(includedParam));
         }
 
-        Writer writer = new StringWriter();
+        DataBuffer buffer = bufferFactory.allocateBuffer();
+        boolean release = true;
         try {
-            TextFormat.write004(writer, registry.filteredMetricFamilySamples(params));
-            writer.flush();
+            OutputStream out = buffer.asOutputStream();
+            if (gzip) {
+                out = new GZIPOutputStream(out);
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                if (openMetrics) {
+                    OpenMetricsTextFormat.write(writer, registry.filteredMetricFamilySamples(params));
+                } else {
+                    TextFormat.write004(writer, registry.filteredMetricFamilySamples(params));
+                }
+            }
+            release = false;
+            return buffer;
         } finally {
-            writer.close();
+            if (release) {
+                DataBufferUtils.release(buffer);
+            }
         }
+    }
 
-        return writer.toString();
+    private static boolean accepts(List<String> headerValues, String value) {
+        if (headerValues == null) {
+            return false;
+        }
+        for (String headerValue : headerValues) {
+            if (headerValue.toLowerCase().contains(value)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
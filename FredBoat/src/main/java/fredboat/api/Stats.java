@@ -25,6 +25,8 @@
 
 package fredboat.api;
 
+import fredboat.audio.player.AudioLossCounter;
+import fredboat.audio.player.GuildPlayer;
 import fredboat.audio.player.PlayerRegistry;
 import fredboat.feature.metrics.BotMetrics;
 import fredboat.feature.metrics.JdaEntityStats;
@@ -36,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
@@ -61,6 +64,35 @@ public class Stats {
         return Mono.fromCallable(this::buildStats);
     }
 
+    /**
+     * Per second frame stats of the local player of a guild for the last ten minutes, to correlate stutter with other
+     * events like GC pauses or load spikes.
+     */
+    @GetMapping(value = "/audio/{guildId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<String> getAudioStats(@PathVariable long guildId) {
+        return Mono.fromCallable(() -> buildAudioStats(guildId));
+    }
+
+    private String buildAudioStats(long guildId) {
+        JSONObject root = new JSONObject();
+        GuildPlayer player = playerRegistry.getLive(guildId);
+        if (player == null) {
+            return root.toString();
+        }
+
+        JSONArray seconds = new JSONArray();
+        for (AudioLossCounter.Second second : player.getAudioLossCounter().getHistory(AudioLossCounter.HISTORY_SECONDS)) {
+            seconds.put(new JSONObject()
+                    .put("epochSecond", second.epochSecond)
+                    .put("sent", second.sent)
+                    .put("null", second.lost)
+                    .put("idle", second.idle));
+        }
+        root.put("source", player.getPlayingSourceName())
+                .put("seconds", seconds);
+        return root.toString();
+    }
+
     private String buildStats() {
         JSONObject root = new JSONObject();
         JSONArray a = new JSONArray();
@@ -79,12 +111,30 @@ public class Stats {
         JdaEntityStats entityStats = botMetrics.getJdaEntityStatsTotal();
         g.put("playingPlayers", playerRegistry.playingCount())
                 .put("totalPlayers", playerRegistry.totalCount())
+                .put("dormantPlayers", playerRegistry.dormantCount())
                 .put("distribution", Launcher.getBotController().getAppConfig().getDistribution())
                 .put("guilds", entityStats.getGuildsCount())
                 .put("users", entityStats.getUniqueUsersCount());
 
+        //local players that had null packets while playing during the last minute
+        int[] audio = new int[3]; //players with loss, sent, null
+        playerRegistry.forEach((guildId, player) -> {
+            AudioLossCounter counter = player.getAudioLossCounter();
+            int lost = counter.getLastMinuteLoss();
+            if (lost > 0) {
+                audio[0]++;
+            }
+            audio[1] += counter.getLastMinuteSuccess();
+            audio[2] += lost;
+        });
+        JSONObject audioStats = new JSONObject()
+                .put("playersWithNullPackets", audio[0])
+                .put("lastMinuteSent", audio[1])
+                .put("lastMinuteNull", audio[2]);
+
         root.put("shards", a);
         root.put("global", g);
+        root.put("audio", audioStats);
 
         return root.toString();
     }
@@ -37,6 +37,7 @@ import fredboat.audio.queue.ITrackProvider;
 import fredboat.audio.queue.SplitAudioTrackContext;
 import fredboat.audio.queue.TrackEndMarkerHandler;
 import fredboat.commandmeta.MessagingException;
+import fredboat.main.Launcher;
 import fredboat.util.TextUtils;
 import lavalink.client.player.IPlayer;
 import lavalink.client.player.LavalinkPlayer;
@@ -45,20 +46,25 @@ import lavalink.client.player.event.AudioEventAdapterWrapped;
 import net.dv8tion.jda.core.audio.AudioSendHandler;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements AudioSendHandler {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(AbstractPlayer.class);
 
-    protected final IPlayer player;
+    //replaced by the standby player of a lookahead when handing over to the next track, see Lookahead
+    protected volatile IPlayer player;
     ITrackProvider audioTrackProvider;
     private AudioFrame lastFrame = null;
-    protected AudioTrackContext context;
-    private final AudioLossCounter audioLossCounter = new AudioLossCounter();
+    //written under the lock of this, so a lookahead can tell whether the track it was prepared for is still current
+    protected volatile AudioTrackContext context;
+    private final AudioLossCounter audioLossCounter = new AudioLossCounter(this::getPlayingSourceName);
 
     Consumer<AudioTrackContext> onPlayHook;
     Consumer<Throwable> onErrorHook;
@@ -67,8 +73,25 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
     private AudioTrackContext queuedTrackInHistory = null;
     private ConcurrentLinkedQueue<AudioTrackContext> historyQueue = new ConcurrentLinkedQueue<>();
 
+    //last time this player was told to do something or changed tracks, used to find idle players
+    private volatile long lastActivityMillis = System.currentTimeMillis();
+
+    //how long before the end of the current track the next one is prepared
+    private static final long LOOKAHEAD_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final int LOOKAHEAD_CHECK_INTERVAL_FRAMES = 50; //one second
+    private final String guildId;
+    private final AudioConnectionFacade audioConnectionFacade;
+    //guarded by this
+    @Nullable
+    private Lookahead lookahead;
+    @Nullable
+    private AudioTrackContext lookaheadAttemptedFor;
+    private int framesUntilLookaheadCheck = LOOKAHEAD_CHECK_INTERVAL_FRAMES; //only touched by the audio send thread
+
     @SuppressWarnings("LeakingThisInConstructor")
     AbstractPlayer(String guildId, AudioConnectionFacade audioConnectionFacade) {
+        this.guildId = guildId;
+        this.audioConnectionFacade = audioConnectionFacade;
         player = audioConnectionFacade.createPlayer(guildId);
 
         player.addListener(this);
@@ -76,6 +99,7 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
 
     public void play() {
         log.trace("play()");
+        touch();
 
         if (player.isPaused()) {
             player.setPaused(false);
@@ -88,6 +112,7 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
 
     public void setPause(boolean pause) {
         log.trace("setPause({})", pause);
+        touch();
 
         if (pause) {
             player.setPaused(true);
@@ -131,8 +156,11 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
      */
     public void stopTrack() {
         log.trace("stopTrack()");
+        touch();
 
-        context = null;
+        synchronized (this) {
+            context = null;
+        }
         player.stopTrack();
     }
 
@@ -162,6 +190,31 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         return historyQueue.isEmpty();
     }
 
+    /**
+     * Put previously played tracks back into the history, for example when waking up a dormant player.
+     *
+     * @param tracks oldest track first
+     */
+    void restoreHistory(List<AudioTrackContext> tracks) {
+        for (AudioTrackContext atc : tracks) {
+            if (historyQueue.size() == MAX_HISTORY_SIZE) {
+                historyQueue.poll();
+            }
+            historyQueue.add(atc);
+        }
+    }
+
+    /**
+     * @return epoch millis of the last time this player was in use
+     */
+    public long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    void touch() {
+        lastActivityMillis = System.currentTimeMillis();
+    }
+
     public AudioTrackContext getPlayingTrack() {
         log.trace("getPlayingTrack()");
 
@@ -199,6 +252,7 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
     @Override
     public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
         log.trace("onTrackEnd({} {} {}) called", track.getInfo().title, endReason.name(), endReason.mayStartNext);
+        touch();
 
         if (endReason == AudioTrackEndReason.FINISHED || endReason == AudioTrackEndReason.STOPPED) {
             updateHistoryQueue();
@@ -226,10 +280,135 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
             log.warn("TrackProvider doesn't exist");
         }
 
+        Lookahead prepared = takeLookahead();
         if (atc != null) {
             queuedTrackInHistory = atc;
+            if (prepared != null && prepared.atc == atc && prepared.standby.getPlayingTrack() == prepared.track) {
+                handOver(prepared);
+                return;
+            }
             playTrack(atc);
         }
+        if (prepared != null) {
+            prepared.discard(); //the queue changed since it was prepared
+        }
+    }
+
+    /**
+     * Lookahead for local playback: shortly before the current track ends, the next one is started on a standby
+     * lavaplayer player that nobody pulls frames from, so that its stream is opened and its frame buffer filled in the
+     * background. When the current track ends, the standby player replaces the current one, and audio continues
+     * without waiting for the next track to load.
+     * <p>
+     * A clone of the queued track is started on the standby player, so that the queued one can still be played
+     * normally if the lookahead is discarded because the queue changed.
+     */
+    private class Lookahead {
+        private final AudioTrackContext atc;
+        private final AudioTrack track;
+        private final IPlayer standby;
+
+        private Lookahead(AudioTrackContext atc, AudioTrack track, IPlayer standby) {
+            this.atc = atc;
+            this.track = track;
+            this.standby = standby;
+        }
+
+        //the standby player has no listeners, this does not fire any events for us
+        private void discard() {
+            standby.stopTrack();
+        }
+    }
+
+    //called by the audio send thread
+    private void checkLookahead() {
+        if (--framesUntilLookaheadCheck > 0) {
+            return;
+        }
+        framesUntilLookaheadCheck = LOOKAHEAD_CHECK_INTERVAL_FRAMES;
+
+        AudioTrackContext current = context;
+        IPlayer currentPlayer = player;
+        if (current == null || currentPlayer.getPlayingTrack() == null || current.getTrack().getInfo().isStream) {
+            return;
+        }
+        long remaining = current.getStartPosition() + current.getEffectiveDuration() - currentPlayer.getTrackPosition();
+        if (remaining > LOOKAHEAD_MILLIS) {
+            return;
+        }
+        synchronized (this) {
+            if (lookaheadAttemptedFor == current) {
+                return;
+            }
+            lookaheadAttemptedFor = current;
+        }
+        //looking at the queue may be expensive, keep it off the audio send thread
+        getLookaheadExecutor().execute(() -> startLookahead(current));
+    }
+
+    Executor getLookaheadExecutor() {
+        return Launcher.getBotController().getExecutor();
+    }
+
+    private void startLookahead(AudioTrackContext current) {
+        if (!(player instanceof LavaplayerPlayerWrapper)) {
+            return; //standby players only make sense for local playback, lavalink nodes load ahead on their own
+        }
+        AudioTrackContext next = audioTrackProvider.lookahead();
+        if (next == null || next.getTrack().getInfo().isStream) {
+            return;
+        }
+
+        AudioTrack track = next.getTrack().makeClone();
+        IPlayer standby = audioConnectionFacade.createPlayer(guildId);
+        standby.setVolume(player.getVolume());
+        standby.playTrack(track);
+        track.setPosition(next.getStartPosition());
+        if (next instanceof SplitAudioTrackContext) {
+            track.setMarker(new TrackMarker(next.getStartPosition() + next.getEffectiveDuration(),
+                    new TrackEndMarkerHandler(this, next)));
+        }
+
+        Lookahead prepared = new Lookahead(next, track, standby);
+        Lookahead replaced;
+        synchronized (this) {
+            if (context != current) {
+                prepared.discard(); //the track it was prepared for ended meanwhile
+                return;
+            }
+            replaced = lookahead;
+            lookahead = prepared;
+        }
+        if (replaced != null) {
+            replaced.discard();
+        }
+        log.debug("Prepared {} to play after {}", next.getEffectiveTitle(), current.getEffectiveTitle());
+    }
+
+    @Nullable
+    private synchronized Lookahead takeLookahead() {
+        Lookahead taken = lookahead;
+        lookahead = null;
+        return taken;
+    }
+
+    //swap in the standby player of the lookahead. the previous player has no track anymore and is simply dropped
+    private void handOver(Lookahead prepared) {
+        log.trace("handOver({})", prepared.atc.getEffectiveTitle());
+
+        IPlayer replaced = player;
+        IPlayer standby = prepared.standby;
+        standby.setVolume(replaced.getVolume());
+        standby.setPaused(replaced.isPaused());
+        standby.addListener(this);
+        synchronized (this) {
+            context = prepared.atc;
+            player = standby;
+        }
+        replaced.removeListener(this);
+
+        onTrackStart(null, prepared.track); //the standby player started the track before we were listening to it
+        if (onPlayHook != null) onPlayHook.accept(prepared.atc);
     }
 
     private void updateHistoryQueue() {
@@ -247,7 +426,9 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
     private void playTrack(AudioTrackContext trackContext, boolean... silent) {
         log.trace("playTrack({})", trackContext.getEffectiveTitle());
 
-        context = trackContext;
+        synchronized (this) {
+            context = trackContext;
+        }
         player.playTrack(trackContext.getTrack());
         trackContext.getTrack().setPosition(trackContext.getStartPosition());
 
@@ -268,6 +449,10 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
     void destroy() {
         log.trace("destroy()");
         stop();
+        Lookahead prepared = takeLookahead();
+        if (prepared != null) {
+            prepared.discard();
+        }
         player.removeListener(this);
         if (player instanceof LavalinkPlayer) {
             ((LavalinkPlayer) player).getLink().destroy();
@@ -285,10 +470,15 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         lastFrame = lavaplayerPlayer.provide();
 
         if(lastFrame == null) {
-            audioLossCounter.onLoss();
+            if (lavaplayerPlayer.getPlayingTrack() == null || lavaplayerPlayer.isPaused()) {
+                audioLossCounter.onIdle();
+            } else {
+                audioLossCounter.onLoss();
+            }
             return false;
         } else {
             audioLossCounter.onSuccess();
+            checkLookahead();
             return true;
         }
     }
@@ -297,6 +487,17 @@ public abstract class AbstractPlayer extends AudioEventAdapterWrapped implements
         return audioLossCounter;
     }
 
+    /**
+     * @return name of the lavaplayer source manager of the playing track, or none
+     */
+    public String getPlayingSourceName() {
+        AudioTrack track = player.getPlayingTrack();
+        if (track == null) {
+            return "none";
+        }
+        return track.getSourceManager() != null ? track.getSourceManager().getSourceName() : "unknown";
+    }
+
     @Override
     public boolean isOpus() {
         return true;
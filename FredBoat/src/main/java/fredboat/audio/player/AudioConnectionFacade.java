@@ -31,6 +31,7 @@ import fredboat.config.property.LavalinkConfig;
 import fredboat.jda.ShardProvider;
 import fredboat.util.DiscordUtil;
 import lavalink.client.io.Lavalink;
+import lavalink.client.io.Link;
 import lavalink.client.io.metrics.LavalinkCollector;
 import lavalink.client.player.IPlayer;
 import lavalink.client.player.LavaplayerPlayerWrapper;
@@ -54,17 +55,22 @@ public class AudioConnectionFacade implements EventListener {
 
     @Nullable
     private final Lavalink lavalink;
+    @Nullable
+    private final LavalinkNodeBalancer nodeBalancer;
     private final DebugConnectionListenerProvider debugConnectionListenerProvider;
     private final AudioPlayerManager audioPlayerManager;
+    private final VoiceConnectionIndex voiceConnectionIndex;
 
     public AudioConnectionFacade(LavalinkConfig lavalinkConfig, Credentials credentials,
                                  DebugConnectionListenerProvider debugConnectionListenerProvider,
                                  @Qualifier("loadAudioPlayerManager") AudioPlayerManager audioPlayerManager,
-                                 ShardProvider shardProvider) {
+                                 ShardProvider shardProvider, VoiceConnectionIndex voiceConnectionIndex) {
         this.debugConnectionListenerProvider = debugConnectionListenerProvider;
         this.audioPlayerManager = audioPlayerManager;
+        this.voiceConnectionIndex = voiceConnectionIndex;
         if (lavalinkConfig.getNodes().isEmpty()) {
             lavalink = null; //local playback
+            nodeBalancer = null;
             audioPlayerManager.enableGcMonitoring();
             return;
         }
@@ -80,6 +86,7 @@ public class AudioConnectionFacade implements EventListener {
         nodes.forEach(lavalinkNode -> lavalink.addNode(lavalinkNode.getName(), lavalinkNode.getUri(),
                 lavalinkNode.getPassword()));
 
+        nodeBalancer = new LavalinkNodeBalancer(lavalink);
         new LavalinkCollector(lavalink).register();
     }
 
@@ -103,8 +110,11 @@ public class AudioConnectionFacade implements EventListener {
             audioManager.setSendingHandler(audioSendHandler);
             audioManager.setConnectionListener(debugConnectionListenerProvider.get(channel.getGuild()));
         } else {
-            lavalink.getLink(channel.getGuild()).connect(channel);
+            Link link = lavalink.getLink(channel.getGuild());
+            nodeBalancer.assign(link);
+            link.connect(channel);
         }
+        voiceConnectionIndex.onConnectionOpened(channel);
     }
 
     public void closeConnection(Guild guild) {
@@ -113,6 +123,7 @@ public class AudioConnectionFacade implements EventListener {
         } else {
             lavalink.getLink(guild).disconnect();
         }
+        voiceConnectionIndex.onConnectionClosed(guild);
     }
 
     @Nullable
@@ -120,6 +131,14 @@ public class AudioConnectionFacade implements EventListener {
         return lavalink;
     }
 
+    /**
+     * @return the balancer of the lavalink nodes, or null if playing locally
+     */
+    @Nullable
+    public LavalinkNodeBalancer getNodeBalancer() {
+        return nodeBalancer;
+    }
+
     @Override
     public void onEvent(Event event) {
         if (lavalink != null) {
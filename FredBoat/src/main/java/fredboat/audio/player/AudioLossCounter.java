@@ -25,56 +25,176 @@
 
 package fredboat.audio.player;
 
+import fredboat.feature.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Outcomes of the frames requested from a local player, kept per second for the last ten minutes, so that stutter can
+ * be pinned to a point in time and correlated with other events like GC pauses or load spikes.
+ * <p>
+ * Only the audio send thread of the player writes to this. Readers may see the second that is currently being written
+ * slightly out of date, which is fine for telemetry.
+ */
 public class AudioLossCounter {
 
     public static final int EXPECTED_PACKET_COUNT_PER_MIN = (60 * 1000) / 20; // 20ms packets
+    public static final int HISTORY_SECONDS = 10 * 60;
+
+    private final Supplier<String> sourceName; //of the playing track, used to label the loss metrics
 
-    private long curMinute = 0;
-    private int curLoss = 0;
-    private int curSucc = 0;
+    //ring buffers, indexed by epoch second modulo HISTORY_SECONDS
+    private final long[] seconds = new long[HISTORY_SECONDS];
+    private final int[] sent = new int[HISTORY_SECONDS];
+    private final int[] lost = new int[HISTORY_SECONDS]; //a track was playing, but no frame was ready
+    private final int[] idle = new int[HISTORY_SECONDS]; //nothing playing or paused
 
-    private int lastLoss = 0;
-    private int lastSucc = 0;
+    private int slot = 0;
+    //source of the track playing when the current second requested its first frame, the metrics of the second get it
+    private String slotSource = null;
+    //written after a slot has been reset for a new second, so readers see the reset
+    private volatile long currentSecond = -1;
 
-    AudioLossCounter() {
+    AudioLossCounter(Supplier<String> sourceName) {
+        this.sourceName = sourceName;
     }
 
     void onLoss() {
         checkTime();
-        curLoss++;
+        recordSource();
+        lost[slot]++;
     }
 
     void onSuccess() {
         checkTime();
-        curSucc++;
+        recordSource();
+        sent[slot]++;
+    }
+
+    void onIdle() {
+        checkTime();
+        idle[slot]++;
     }
 
+    /**
+     * @return frames that were missing while a track was playing during the last full minute
+     */
     public int getLastMinuteLoss() {
-        return lastLoss;
+        int loss = 0;
+        for (Second second : getHistory(60)) {
+            loss += second.lost;
+        }
+        return loss;
     }
 
+    /**
+     * @return frames that were sent during the last full minute
+     */
     public int getLastMinuteSuccess() {
-        return lastSucc;
+        int success = 0;
+        for (Second second : getHistory(60)) {
+            success += second.sent;
+        }
+        return success;
+    }
+
+    /**
+     * @return frames that were requested while nothing was playing during the last full minute
+     */
+    public int getLastMinuteIdle() {
+        int idled = 0;
+        for (Second second : getHistory(60)) {
+            idled += second.idle;
+        }
+        return idled;
+    }
+
+    /**
+     * @return the last amount of full seconds, oldest first. Seconds in which no frames were requested at all, for
+     * example because the player was not connected, are left out.
+     */
+    public List<Second> getHistory(int amount) {
+        long current = currentSecond;
+        List<Second> history = new ArrayList<>(Math.min(amount, HISTORY_SECONDS));
+        for (long s = current - Math.min(amount, HISTORY_SECONDS - 1); s < current; s++) {
+            if (s < 0) {
+                continue;
+            }
+            int i = (int) (s % HISTORY_SECONDS);
+            if (seconds[i] == s) {
+                history.add(new Second(s, sent[i], lost[i], idle[i]));
+            }
+        }
+        return history;
     }
 
     private void checkTime() {
-        long actualMinute = System.currentTimeMillis() / 60000;
-
-        if(curMinute != actualMinute) {
-            lastLoss = curLoss;
-            lastSucc = curSucc;
-            curLoss = 0;
-            curSucc = 0;
-            curMinute = actualMinute;
+        long actualSecond = System.currentTimeMillis() / 1000;
+
+        if (currentSecond != actualSecond) {
+            if (currentSecond >= 0) {
+                report();
+            }
+            slot = (int) (actualSecond % HISTORY_SECONDS);
+            sent[slot] = 0;
+            lost[slot] = 0;
+            idle[slot] = 0;
+            seconds[slot] = actualSecond;
+            slotSource = null;
+            currentSecond = actualSecond;
+        }
+    }
+
+    //by the time a second ends the next track may be playing already, and track changes are where frames go missing
+    private void recordSource() {
+        if (slotSource == null) {
+            slotSource = sourceName.get();
+        }
+    }
+
+    //the second that just ended goes into the loss ratio metrics, if a track was playing
+    private void report() {
+        int frames = sent[slot] + lost[slot];
+        if (frames > 0) {
+            Metrics.audioFrameLossRatio.labels(slotSource).observe((double) lost[slot] / frames);
         }
     }
 
     @Override
     public String toString() {
+        int lastLoss = getLastMinuteLoss();
+        int lastSucc = getLastMinuteSuccess();
         return "AudioLossCounter{" +
                 "lastLoss=" + lastLoss +
                 ", lastSucc=" + lastSucc +
                 ", total=" + (lastSucc + lastLoss) +
                 '}';
     }
+
+    /**
+     * Outcomes of the frames requested during a single second.
+     */
+    public static class Second {
+        public final long epochSecond;
+        public final int sent;
+        public final int lost;
+        public final int idle;
+
+        private Second(long epochSecond, int sent, int lost, int idle) {
+            this.epochSecond = epochSecond;
+            this.sent = sent;
+            this.lost = lost;
+            this.idle = idle;
+        }
+
+        /**
+         * @return share of the frames that were missing while a track was playing, 0 if nothing was playing
+         */
+        public double getLossRatio() {
+            int frames = sent + lost;
+            return frames == 0 ? 0 : (double) lost / frames;
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.audio.player;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.audio.queue.AudioTrackContext;
+import fredboat.audio.queue.SplitAudioTrackContext;
+import fredboat.definitions.RepeatMode;
+import fredboat.jda.JdaEntityProvider;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact snapshot of an idle {@link GuildPlayer}. Holds only the settings and the lavaplayer encoded history tracks,
+ * so that the heavy parts of a player (the lavaplayer AudioPlayer or lavalink Link, the AudioLoader, the track
+ * provider) can be released while nobody is using it. See {@link PlayerRegistry} for the lifecycle.
+ */
+public class DormantPlayer {
+
+    private static final Logger log = LoggerFactory.getLogger(DormantPlayer.class);
+
+    //rough estimates, only used for the metrics
+    private static final long ESTIMATED_PLAYER_BYTES = 8 * 1024;
+    private static final long ESTIMATED_DECODED_TRACK_BYTES = 1024;
+
+    private final long guildId;
+    private final long dormantSince;
+    private final float volume;
+    private final RepeatMode repeatMode;
+    private final boolean shuffle;
+    private final boolean paused;
+    private final List<Entry> history;
+
+    private DormantPlayer(GuildPlayer player, List<Entry> history) {
+        this.guildId = player.getGuildId();
+        this.dormantSince = System.currentTimeMillis();
+        this.volume = player.getVolume();
+        this.repeatMode = player.getRepeatMode();
+        this.shuffle = player.isShuffle();
+        this.paused = player.isPaused();
+        this.history = history;
+    }
+
+    /**
+     * @return a snapshot of the provided player. The player itself is not changed by this.
+     */
+    static DormantPlayer of(GuildPlayer player, AudioPlayerManager audioPlayerManager) throws IOException {
+        //oldest first, so restoring them keeps the order of the history queue
+        List<AudioTrackContext> tracks = player.getTracksInHistory(0, player.getTrackCountInHistory());
+        List<Entry> history = new ArrayList<>(tracks.size());
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            AudioTrackContext atc = tracks.get(i);
+            if (atc == null) {
+                continue;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            audioPlayerManager.encodeTrack(new MessageOutput(baos), atc.getTrack());
+            history.add(new Entry(baos.toByteArray(), atc));
+        }
+
+        return new DormantPlayer(player, history);
+    }
+
+    /**
+     * Apply the saved state of this snapshot to a freshly created player.
+     */
+    void restore(GuildPlayer player, Guild guild, AudioPlayerManager audioPlayerManager,
+                 JdaEntityProvider jdaEntityProvider) {
+        player.setVolume(volume);
+        player.setRepeatMode(repeatMode);
+        player.setShuffle(shuffle);
+        if (paused) {
+            player.pause();
+        }
+
+        List<AudioTrackContext> restored = new ArrayList<>(history.size());
+        for (Entry entry : history) {
+            AudioTrackContext atc = entry.decode(guild, audioPlayerManager, jdaEntityProvider);
+            if (atc != null) {
+                restored.add(atc);
+            }
+        }
+        player.restoreHistory(restored);
+    }
+
+    public long getGuildId() {
+        return guildId;
+    }
+
+    public long getDormantSince() {
+        return dormantSince;
+    }
+
+    /**
+     * @return approximate size of this snapshot in bytes
+     */
+    public long getSizeBytes() {
+        long size = 64;
+        for (Entry entry : history) {
+            size += entry.track.length + 32;
+        }
+        return size;
+    }
+
+    /**
+     * @return an estimation of the heap that was released by turning the player into this snapshot
+     */
+    long estimateReclaimedBytes() {
+        long live = ESTIMATED_PLAYER_BYTES + history.size() * ESTIMATED_DECODED_TRACK_BYTES;
+        return Math.max(0, live - getSizeBytes());
+    }
+
+    private static class Entry {
+        private final byte[] track;
+        private final long userId;
+        @Nullable
+        private final String splitTitle;
+        private final long splitStart;
+        private final long splitEnd;
+
+        private Entry(byte[] track, AudioTrackContext atc) {
+            this.track = track;
+            this.userId = atc.getUserId();
+            if (atc instanceof SplitAudioTrackContext) {
+                this.splitTitle = atc.getEffectiveTitle();
+                this.splitStart = atc.getStartPosition();
+                this.splitEnd = atc.getStartPosition() + atc.getEffectiveDuration();
+            } else {
+                this.splitTitle = null;
+                this.splitStart = 0;
+                this.splitEnd = 0;
+            }
+        }
+
+        @Nullable
+        private AudioTrackContext decode(Guild guild, AudioPlayerManager audioPlayerManager,
+                                         JdaEntityProvider jdaEntityProvider) {
+            AudioTrack at;
+            try {
+                at = audioPlayerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(track))).decodedTrack;
+            } catch (IOException e) {
+                log.warn("Failed to decode a history track of a dormant player in guild {}", guild.getIdLong(), e);
+                return null;
+            }
+            if (at == null) {
+                return null;
+            }
+
+            Member member = guild.getMemberById(userId);
+            if (member == null) {
+                member = guild.getSelfMember(); //member left the guild meanwhile, set ourselves as the one who added the song
+            }
+
+            if (splitTitle != null) {
+                return new SplitAudioTrackContext(jdaEntityProvider, at, member, splitStart, splitEnd, splitTitle);
+            } else {
+                return new AudioTrackContext(jdaEntityProvider, at, member);
+            }
+        }
+    }
+}
@@ -26,7 +26,7 @@
 package fredboat.audio.player;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import fredboat.audio.queue.*;
 import fredboat.command.music.control.VoteSkipCommand;
@@ -72,11 +72,13 @@ public class GuildPlayer extends AbstractPlayer {
     private final JdaEntityProvider jdaEntityProvider;
     private final AudioConnectionFacade audioConnectionFacade;
     private final GuildConfigService guildConfigService;
+    private final YoutubeAPI youtubeAPI;
 
     @SuppressWarnings("LeakingThisInConstructor")
     public GuildPlayer(Guild guild, MusicTextChannelProvider musicTextChannelProvider, JdaEntityProvider jdaEntityProvider,
-                       AudioConnectionFacade audioConnectionFacade, AudioPlayerManager audioPlayerManager,
-                       GuildConfigService guildConfigService, Ratelimiter ratelimiter, YoutubeAPI youtubeAPI) {
+                       AudioConnectionFacade audioConnectionFacade, ItemLoadCoalescer itemLoader,
+                       PlaylistPreflight preflight, GuildConfigService guildConfigService, Ratelimiter ratelimiter,
+                       YoutubeAPI youtubeAPI) {
         super(guild.getId(), audioConnectionFacade);
         log.debug("Constructing GuildPlayer({})", guild.getIdLong());
 
@@ -84,13 +86,14 @@ public class GuildPlayer extends AbstractPlayer {
         this.musicTextChannelProvider = musicTextChannelProvider;
         this.audioConnectionFacade = audioConnectionFacade;
         this.guildConfigService = guildConfigService;
+        this.youtubeAPI = youtubeAPI;
         onPlayHook = this::announceTrack;
         onErrorHook = this::handleError;
 
         this.guildId = guild.getIdLong();
 
         audioTrackProvider = new SimpleTrackProvider();
-        audioLoader = new AudioLoader(jdaEntityProvider, ratelimiter, audioTrackProvider, audioPlayerManager,
+        audioLoader = new AudioLoader(jdaEntityProvider, ratelimiter, audioTrackProvider, itemLoader, preflight,
                 this, youtubeAPI);
     }
 
@@ -179,12 +182,14 @@ public class GuildPlayer extends AbstractPlayer {
     public void queue(String identifier, CommandContext context) {
         IdentifierContext ic = new IdentifierContext(jdaEntityProvider, identifier, context.channel, context.invoker);
 
+        touch();
         joinChannel(context.invoker);
 
         audioLoader.loadAsync(ic);
     }
 
     public void queue(IdentifierContext ic) {
+        touch();
         if (ic.getMember() != null) {
             joinChannel(ic.getMember());
         }
@@ -193,6 +198,7 @@ public class GuildPlayer extends AbstractPlayer {
     }
 
     public void queue(AudioTrackContext atc){
+        touch();
         Guild guild = getGuild();
         if (guild != null) {
             Member member = guild.getMemberById(atc.getUserId());
@@ -419,9 +425,23 @@ public class GuildPlayer extends AbstractPlayer {
     @Override
     public void onTrackStart(AudioPlayer player, AudioTrack track) {
         voteSkipCleanup();
+        if (track instanceof YoutubeAudioTrack) {
+            youtubeAPI.prefetch(track.getIdentifier()); //for ;;np
+        }
         super.onTrackStart(player, track);
     }
 
+    /**
+     * @return true if this player has nothing queued, is not loading anything, is not connected to a voice channel
+     * and has not been used for at least the given time, which makes it safe to turn it into a {@link DormantPlayer}.
+     */
+    boolean isDormancyCandidate(long idleMillis) {
+        return System.currentTimeMillis() - getLastActivityMillis() > idleMillis
+                && isQueueEmpty()
+                && !audioLoader.isLoading()
+                && getCurrentVoiceChannel() == null;
+    }
+
     private boolean isTrackAnnounceEnabled() {
         boolean enabled = false;
         try {
@@ -0,0 +1,282 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.player;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.feature.metrics.Metrics;
+import lavalink.client.io.Lavalink;
+import lavalink.client.io.LavalinkSocket;
+import lavalink.client.io.Link;
+import lavalink.client.io.RemoteStats;
+import lavalink.client.player.IPlayer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which lavalink node the player of a guild lands on, and moves live players between nodes when a node is
+ * overloaded or being drained.
+ * <p>
+ * Nodes are scored by the stats they report: playing players, CPU load and frame deficit. Since nodes report their
+ * stats only once a minute, players assigned to a node since its last report are counted on top, so that a burst of
+ * new players does not all end up on the same node.
+ */
+public class LavalinkNodeBalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(LavalinkNodeBalancer.class);
+
+    //a node above this penalty is considered overloaded, roughly 95% cpu or 200 missing frames a minute
+    static final int OVERLOAD_PENALTY = 1000;
+    //moving players only pays off if the target is clearly better than the source
+    private static final int MIGRATION_MARGIN = 300;
+    //the penalties grow exponentially, keep them, and the margin added to them, clear of overflowing
+    static final long MAX_PENALTY = Long.MAX_VALUE / 2;
+    //limit how many players are moved off an overloaded node per rebalance, they are going to report new stats
+    private static final int MAX_OVERLOAD_MIGRATIONS = 20;
+
+    private final Lavalink lavalink;
+    private final Set<String> draining = ConcurrentHashMap.newKeySet();
+    private final Map<String, Assignments> assignments = new ConcurrentHashMap<>();
+
+    LavalinkNodeBalancer(Lavalink lavalink) {
+        this.lavalink = lavalink;
+    }
+
+    /**
+     * Assign the best available node to a link that does not have one yet.
+     */
+    void assign(Link link) {
+        if (link.getNode() != null) {
+            return;
+        }
+        LavalinkSocket node = selectNode(null);
+        if (node != null) {
+            link.changeNode(node);
+            countAssignment(node);
+        }
+        //no node available, leave it to the lavalink client to pick one once there is
+    }
+
+    /**
+     * @param exclude node that must not be selected, may be null
+     * @return the available, not draining node with the lowest penalty, or null if there is none
+     */
+    @Nullable
+    public LavalinkSocket selectNode(@Nullable LavalinkSocket exclude) {
+        LavalinkSocket best = null;
+        long bestPenalty = Long.MAX_VALUE;
+        for (LavalinkSocket node : lavalink.getNodes()) {
+            if (node == exclude || !node.isAvailable() || draining.contains(node.getName())) {
+                continue;
+            }
+            long penalty = getPenalty(node);
+            if (penalty < bestPenalty) {
+                best = node;
+                bestPenalty = penalty;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the penalty of a node, higher is worse. Nodes that have not reported any stats yet get the highest one,
+     * the penalties of all others are capped at {@link #MAX_PENALTY}.
+     */
+    public long getPenalty(LavalinkSocket node) {
+        RemoteStats stats = node.getStats();
+        if (stats == null) {
+            return Long.MAX_VALUE;
+        }
+        long players = (long) stats.getPlayingPlayers() + getAssignments(node, stats).count.get();
+
+        //grows exponentially, a node at 100% cpu is worth more than a thousand players
+        double cpuPenalty = Math.pow(1.05d, 100 * stats.getSystemLoad()) * 10 - 10;
+
+        //same as the lavalink client, regardless of the amount of players: 3000 missing frames a minute are worth
+        //about 1.6 billion
+        double deficitPenalty = 0;
+        int deficit = stats.getAvgFramesDeficitPerMinute();
+        if (deficit > 0) {
+            deficitPenalty = Math.pow(1.03d, 500 * (deficit / 3000d)) * 600 - 600;
+        }
+
+        double penalty = players + cpuPenalty + deficitPenalty;
+        return penalty >= MAX_PENALTY ? MAX_PENALTY : (long) penalty;
+    }
+
+    public boolean isDraining(String nodeName) {
+        return draining.contains(nodeName);
+    }
+
+    /**
+     * Stop assigning new players to a node and move all of its players to other nodes.
+     *
+     * @return the amount of players that were moved
+     */
+    public int drain(LavalinkSocket node) {
+        draining.add(node.getName());
+        int moved = 0;
+        for (Link link : getLinks(node)) {
+            LavalinkSocket target = selectNode(node);
+            if (target == null) {
+                log.warn("No node available to drain node {} to, {} players are left on it",
+                        node.getName(), getLinks(node).size());
+                break;
+            }
+            if (migrate(link, target, "drain")) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Allow new players to be assigned to a previously drained node again.
+     *
+     * @return false if the node was not draining
+     */
+    public boolean undrain(String nodeName) {
+        return draining.remove(nodeName);
+    }
+
+    /**
+     * Finish draining nodes, and move some players off overloaded nodes onto nodes that are clearly less loaded.
+     */
+    public void rebalance() {
+        for (LavalinkSocket node : lavalink.getNodes()) {
+            if (draining.contains(node.getName())) {
+                int moved = drain(node);
+                if (moved > 0) {
+                    log.info("Moved {} players off draining node {}", moved, node.getName());
+                }
+                continue;
+            }
+
+            if (!node.isAvailable() || getPenalty(node) < OVERLOAD_PENALTY) {
+                continue;
+            }
+            int moved = 0;
+            for (Link link : getLinks(node)) {
+                if (moved >= MAX_OVERLOAD_MIGRATIONS) {
+                    break;
+                }
+                if (link.getPlayer().getPlayingTrack() == null) {
+                    continue; //idle players do not add to the load of the node
+                }
+                LavalinkSocket target = selectNode(node);
+                if (target == null || getPenalty(target) + MIGRATION_MARGIN > getPenalty(node)) {
+                    break;
+                }
+                if (migrate(link, target, "overload")) {
+                    moved++;
+                }
+            }
+            if (moved > 0) {
+                log.info("Moved {} players off overloaded node {}", moved, node.getName());
+            }
+        }
+    }
+
+    /**
+     * Move a link, including its playing track, position, volume and paused state, to another node.
+     *
+     * @return true if the link was moved
+     */
+    public boolean migrate(Link link, LavalinkSocket target, String reason) {
+        LavalinkSocket source = link.getNode();
+        if (source == target) {
+            return false;
+        }
+
+        //grab the state as late as possible, the position keeps moving while we are doing this
+        IPlayer player = link.getPlayer();
+        AudioTrack track = player.getPlayingTrack();
+        int volume = player.getVolume();
+        boolean paused = player.isPaused();
+
+        try {
+            //the client restarts the playing track at its current position on the new node
+            link.changeNode(target);
+        } catch (Exception e) {
+            log.error("Failed to move guild {} from node {} to node {}", link.getGuildId(),
+                    source == null ? null : source.getName(), target.getName(), e);
+            return false;
+        }
+        countAssignment(target);
+
+        //the new node starts out with default settings
+        player.setVolume(volume);
+        if (paused && track != null) {
+            //the client skips sending an unchanged paused state, toggle it so the new node hears about it
+            player.setPaused(false);
+            player.setPaused(true);
+        }
+
+        Metrics.lavalinkMigrations.labels(reason).inc();
+        log.debug("Moved guild {} from node {} to node {} ({})", link.getGuildId(),
+                source == null ? null : source.getName(), target.getName(), reason);
+        return true;
+    }
+
+    private List<Link> getLinks(LavalinkSocket node) {
+        List<Link> links = new ArrayList<>();
+        for (Link link : lavalink.getLinks()) {
+            if (link.getNode() == node) {
+                links.add(link);
+            }
+        }
+        return links;
+    }
+
+    private void countAssignment(LavalinkSocket node) {
+        RemoteStats stats = node.getStats();
+        if (stats != null) {
+            getAssignments(node, stats).count.incrementAndGet();
+        }
+    }
+
+    //assignments counted since the given stats were reported
+    private Assignments getAssignments(LavalinkSocket node, RemoteStats stats) {
+        return assignments.compute(node.getName(),
+                (name, existing) -> existing != null && existing.since == stats ? existing : new Assignments(stats));
+    }
+
+    private static class Assignments {
+        private final RemoteStats since;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Assignments(RemoteStats since) {
+            this.since = since;
+        }
+    }
+}
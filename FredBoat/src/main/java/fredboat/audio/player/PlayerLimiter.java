@@ -17,7 +17,7 @@ public class PlayerLimiter {
     }
 
     public boolean checkLimit(Guild guild, PlayerRegistry playerRegistry) {
-        GuildPlayer guildPlayer = playerRegistry.getExisting(guild);
+        GuildPlayer guildPlayer = playerRegistry.getLive(guild);
         //noinspection SimplifiableIfStatement
         if (guildPlayer != null && guildPlayer.getTrackCount() > 0)
             return true;
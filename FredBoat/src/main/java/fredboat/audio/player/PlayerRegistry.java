@@ -26,16 +26,22 @@
 package fredboat.audio.player;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import fredboat.audio.queue.ItemLoadCoalescer;
+import fredboat.audio.queue.PlaylistPreflight;
 import fredboat.db.api.GuildConfigService;
+import fredboat.feature.metrics.Metrics;
 import fredboat.jda.JdaEntityProvider;
 import fredboat.util.ratelimit.Ratelimiter;
 import fredboat.util.rest.YoutubeAPI;
 import net.dv8tion.jda.core.entities.Guild;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -45,14 +51,20 @@ import java.util.stream.Collectors;
 @Component
 public class PlayerRegistry {
 
+    private static final Logger log = LoggerFactory.getLogger(PlayerRegistry.class);
+
     public static final float DEFAULT_VOLUME = 1f;
 
     private final Map<Long, GuildPlayer> registry = new ConcurrentHashMap<>();
+    //idle players that had their heavy resources released, they are woken up transparently when requested again
+    private final Map<Long, DormantPlayer> dormantRegistry = new ConcurrentHashMap<>();
     private final Object iteratorLock = new Object(); //iterators, which are also used by stream(), need to be synced, despite it being a concurrent map
     private final JdaEntityProvider jdaEntityProvider;
     private final AudioConnectionFacade audioConnectionFacade;
     private final GuildConfigService guildConfigService;
     private final AudioPlayerManager audioPlayerManager;
+    private final ItemLoadCoalescer itemLoader;
+    private final PlaylistPreflight preflight;
     private final Ratelimiter ratelimiter;
     private final YoutubeAPI youtubeAPI;
     private final MusicTextChannelProvider musicTextChannelProvider;
@@ -60,12 +72,15 @@ public class PlayerRegistry {
     public PlayerRegistry(MusicTextChannelProvider musicTextChannelProvider, JdaEntityProvider jdaEntityProvider,
                           AudioConnectionFacade audioConnectionFacade, GuildConfigService guildConfigService,
                           @Qualifier("loadAudioPlayerManager") AudioPlayerManager audioPlayerManager,
-                          Ratelimiter ratelimiter, YoutubeAPI youtubeAPI) {
+                          ItemLoadCoalescer itemLoader, PlaylistPreflight preflight, Ratelimiter ratelimiter,
+                          YoutubeAPI youtubeAPI) {
         this.musicTextChannelProvider = musicTextChannelProvider;
         this.jdaEntityProvider = jdaEntityProvider;
         this.audioConnectionFacade = audioConnectionFacade;
         this.guildConfigService = guildConfigService;
         this.audioPlayerManager = audioPlayerManager;
+        this.itemLoader = itemLoader;
+        this.preflight = preflight;
         this.ratelimiter = ratelimiter;
         this.youtubeAPI = youtubeAPI;
     }
@@ -75,19 +90,60 @@ public class PlayerRegistry {
         return registry.computeIfAbsent(
                 guild.getIdLong(), guildId -> {
                     GuildPlayer p = new GuildPlayer(guild, musicTextChannelProvider, jdaEntityProvider,
-                            audioConnectionFacade, audioPlayerManager, guildConfigService, ratelimiter, youtubeAPI);
+                            audioConnectionFacade, itemLoader, preflight, guildConfigService, ratelimiter, youtubeAPI);
                     p.setVolume(DEFAULT_VOLUME);
+
+                    DormantPlayer dormant = dormantRegistry.remove(guildId);
+                    if (dormant != null) {
+                        dormant.restore(p, guild, audioPlayerManager, jdaEntityProvider);
+                        Metrics.playersRevived.inc();
+                        log.debug("Woke up dormant player for guild {}", guildId);
+                    }
                     return p;
                 });
     }
 
+    /**
+     * @return the player of the guild, waking it up if it is dormant, or null if there is none
+     */
     @Nullable
     public GuildPlayer getExisting(@Nonnull Guild guild) {
-        return getExisting(guild.getIdLong());
+        GuildPlayer player = registry.get(guild.getIdLong());
+        if (player == null && dormantRegistry.containsKey(guild.getIdLong())) {
+            return getOrCreate(guild);
+        }
+        return player;
     }
 
+    /**
+     * @return the player of the guild, waking it up if it is dormant, or null if there is none
+     */
     @Nullable
     public GuildPlayer getExisting(long guildId) {
+        GuildPlayer player = registry.get(guildId);
+        if (player == null && dormantRegistry.containsKey(guildId)) {
+            Guild guild = jdaEntityProvider.getGuildById(guildId);
+            if (guild != null) {
+                return getOrCreate(guild);
+            }
+        }
+        return player;
+    }
+
+    /**
+     * Like {@link PlayerRegistry#getExisting(Guild)}, but does not wake up dormant players. Use this in places that
+     * are only interested in players that are currently doing something, like event handlers and agents.
+     */
+    @Nullable
+    public GuildPlayer getLive(@Nonnull Guild guild) {
+        return registry.get(guild.getIdLong());
+    }
+
+    /**
+     * Like {@link PlayerRegistry#getLive(Guild)}.
+     */
+    @Nullable
+    public GuildPlayer getLive(long guildId) {
         return registry.get(guildId);
     }
 
@@ -113,17 +169,65 @@ public class PlayerRegistry {
     }
 
     public void destroyPlayer(long guildId) {
-        GuildPlayer player = getExisting(guildId);
+        dormantRegistry.remove(guildId);
+        GuildPlayer player = registry.get(guildId);
         if (player != null) {
             player.destroy();
             registry.remove(guildId);
         }
     }
 
+    /**
+     * Turn players that have been idle for at least the given time into {@link DormantPlayer}s and release their
+     * resources.
+     *
+     * @return amount of players that were turned dormant
+     */
+    public int hibernateIdlePlayers(long idleMillis) {
+        List<Long> guildIds;
+        synchronized (iteratorLock) {
+            guildIds = new ArrayList<>(registry.keySet());
+        }
+
+        int hibernated = 0;
+        for (long guildId : guildIds) {
+            boolean[] done = {false};
+            registry.computeIfPresent(guildId, (id, player) -> {
+                if (!player.isDormancyCandidate(idleMillis)) {
+                    return player;
+                }
+                DormantPlayer dormant;
+                try {
+                    dormant = DormantPlayer.of(player, audioPlayerManager);
+                } catch (Exception e) {
+                    log.warn("Failed to create a snapshot of the player in guild {}, keeping it alive", id, e);
+                    return player;
+                }
+                player.destroy();
+                dormantRegistry.put(id, dormant);
+                Metrics.playersHibernated.inc();
+                Metrics.playerHibernationReclaimedBytes.inc(dormant.estimateReclaimedBytes());
+                done[0] = true;
+                return null;
+            });
+            if (done[0]) {
+                hibernated++;
+            }
+        }
+        return hibernated;
+    }
+
+    /**
+     * @return amount of live players, dormant players excluded
+     */
     public long totalCount() {
         return registry.size();
     }
 
+    public long dormantCount() {
+        return dormantRegistry.size();
+    }
+
     public long playingCount() {
         synchronized (iteratorLock) {
             return registry.values().stream()
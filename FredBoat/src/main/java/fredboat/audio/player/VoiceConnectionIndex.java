@@ -0,0 +1,234 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.audio.player;
+
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.VoiceChannel;
+import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.core.events.guild.voice.GuildVoiceJoinEvent;
+import net.dv8tion.jda.core.events.guild.voice.GuildVoiceLeaveEvent;
+import net.dv8tion.jda.core.events.guild.voice.GuildVoiceMoveEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of the voice channels we are connected to, kept up to date by voice events and by the
+ * {@link AudioConnectionFacade}, so that the voice cleanup does not need to look at every single guild.
+ * <p>
+ * Deadlines for checking connections are kept in a delay queue. They may be stale by the time they expire, the
+ * consumer (see {@link fredboat.agent.VoiceChannelCleanupAgent}) is expected to check the actual state again.
+ */
+@Component
+public class VoiceConnectionIndex extends ListenerAdapter {
+
+    public static final long EMPTY_CLEANUP_THRESHOLD = TimeUnit.MINUTES.toMillis(5); // no humans left in the VC
+    public static final long UNUSED_CLEANUP_THRESHOLD = TimeUnit.HOURS.toMillis(1); // humans in the VC, but the player is not playing
+
+    private final Map<Long, Connection> connections = new ConcurrentHashMap<>();
+    private final DelayQueue<Deadline> deadlines = new DelayQueue<>();
+
+    /**
+     * Called by the {@link AudioConnectionFacade} when opening a connection.
+     */
+    void onConnectionOpened(VoiceChannel channel) {
+        track(channel.getGuild().getIdLong(), channel.getIdLong());
+    }
+
+    /**
+     * Called by the {@link AudioConnectionFacade} when closing a connection.
+     */
+    void onConnectionClosed(Guild guild) {
+        connections.remove(guild.getIdLong());
+    }
+
+    @Override
+    public void onGuildVoiceJoin(GuildVoiceJoinEvent event) {
+        if (isSelf(event.getMember())) {
+            track(event.getGuild().getIdLong(), event.getChannelJoined().getIdLong());
+        }
+    }
+
+    @Override
+    public void onGuildVoiceLeave(GuildVoiceLeaveEvent event) {
+        if (isSelf(event.getMember())) {
+            connections.remove(event.getGuild().getIdLong());
+        } else {
+            checkForEmpty(event.getChannelLeft());
+        }
+    }
+
+    @Override
+    public void onGuildVoiceMove(GuildVoiceMoveEvent event) {
+        if (isSelf(event.getMember())) {
+            track(event.getGuild().getIdLong(), event.getChannelJoined().getIdLong());
+            checkForEmpty(event.getChannelJoined());
+        } else {
+            checkForEmpty(event.getChannelLeft());
+        }
+    }
+
+    @Override
+    public void onGuildLeave(GuildLeaveEvent event) {
+        connections.remove(event.getGuild().getIdLong());
+    }
+
+    /**
+     * @return the next expired deadline of a connection that is still being tracked, or null if there is none
+     */
+    @Nullable
+    public Deadline pollExpired() {
+        Deadline deadline;
+        while ((deadline = deadlines.poll()) != null) {
+            if (connections.get(deadline.guildId) == deadline.connection) {
+                return deadline;
+            }
+            //stale, the connection it was scheduled for has been closed meanwhile
+        }
+        return null;
+    }
+
+    /**
+     * Schedule another check of the connection the given deadline belongs to.
+     */
+    public void reschedule(Deadline deadline, long dueAtMillis) {
+        deadlines.offer(new Deadline(deadline.guildId, deadline.connection, deadline.kind, dueAtMillis));
+    }
+
+    /**
+     * Stop tracking a guild after its connection was cleaned up.
+     */
+    public void untrack(long guildId) {
+        connections.remove(guildId);
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    private void track(long guildId, long channelId) {
+        Connection existing = connections.get(guildId);
+        if (existing != null) {
+            existing.channelId = channelId;
+            return;
+        }
+        Connection connection = new Connection(channelId);
+        if (connections.putIfAbsent(guildId, connection) == null) {
+            deadlines.offer(new Deadline(guildId, connection, Kind.UNUSED,
+                    connection.connectedAt + UNUSED_CLEANUP_THRESHOLD));
+        }
+    }
+
+    //schedule an empty check if the channel is one of ours and there are no humans left in it
+    private void checkForEmpty(VoiceChannel channel) {
+        long guildId = channel.getGuild().getIdLong();
+        Connection connection = connections.get(guildId);
+        if (connection == null || connection.channelId != channel.getIdLong()) {
+            return;
+        }
+        if (countHumans(channel) == 0) {
+            deadlines.offer(new Deadline(guildId, connection, Kind.EMPTY,
+                    System.currentTimeMillis() + EMPTY_CLEANUP_THRESHOLD));
+        }
+    }
+
+    public static int countHumans(VoiceChannel channel) {
+        int humans = 0;
+        for (Member member : channel.getMembers()) {
+            if (!member.getUser().isBot()) {
+                humans++;
+            }
+        }
+        return humans;
+    }
+
+    private static boolean isSelf(Member member) {
+        return member.getUser().getIdLong() == member.getJDA().getSelfUser().getIdLong();
+    }
+
+    public enum Kind {
+        EMPTY,
+        UNUSED
+    }
+
+    private static class Connection {
+        private volatile long channelId;
+        private final long connectedAt = System.currentTimeMillis();
+
+        private Connection(long channelId) {
+            this.channelId = channelId;
+        }
+    }
+
+    public static class Deadline implements Delayed {
+        private final long guildId;
+        private final Connection connection;
+        private final Kind kind;
+        private final long dueAtMillis;
+
+        private Deadline(long guildId, Connection connection, Kind kind, long dueAtMillis) {
+            this.guildId = guildId;
+            this.connection = connection;
+            this.kind = kind;
+            this.dueAtMillis = dueAtMillis;
+        }
+
+        public long getGuildId() {
+            return guildId;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return epoch millis of when the connection was opened
+         */
+        public long getConnectedAt() {
+            return connection.connectedAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            //two getDelay calls read the clock twice, which can order the heap of the DelayQueue inconsistently
+            if (other instanceof Deadline) {
+                return Long.compare(dueAtMillis, ((Deadline) other).dueAtMillis);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -26,15 +26,11 @@
 package fredboat.audio.queue;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import fredboat.audio.player.GuildPlayer;
-import fredboat.audio.source.PlaylistImportSourceManager;
-import fredboat.audio.source.PlaylistImporter;
-import fredboat.audio.source.SpotifyPlaylistSourceManager;
 import fredboat.feature.metrics.Metrics;
 import fredboat.jda.JdaEntityProvider;
 import fredboat.messaging.CentralMessaging;
@@ -43,201 +39,392 @@ import fredboat.util.ratelimit.Ratelimiter;
 import fredboat.util.rest.YoutubeAPI;
 import fredboat.util.rest.YoutubeVideo;
 import net.dv8tion.jda.core.MessageBuilder;
+import net.dv8tion.jda.core.entities.Message;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class AudioLoader implements AudioLoadResultHandler {
+/**
+ * Loads the identifiers requested in a guild. Up to {@link #MAX_PARALLEL_LOADS} identifiers are resolved at the same
+ * time, while their results are committed to the queue strictly in the order they were requested: results that
+ * arrive early wait in a reorder buffer until all loads requested before them have been committed.
+ */
+public class AudioLoader {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(AudioLoader.class);
 
     //Matches a timestamp and the description
     private static final Pattern SPLIT_DESCRIPTION_PATTERN = Pattern.compile("(.*?)[( \\[]*((?:\\d?\\d:)?\\d?\\d:\\d\\d)[) \\]]*(.*)");
     private static final int QUEUE_TRACK_LIMIT = 10000;
+    private static final long PROGRESS_EDIT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    //loads of a single guild that may be in flight or waiting to be committed at the same time
+    private static final int MAX_PARALLEL_LOADS = 4;
+    private static final CompletableFuture<Void> COMMITTED = CompletableFuture.completedFuture(null);
 
     private final JdaEntityProvider jdaEntityProvider;
     private final Ratelimiter ratelimiter;
     private final ITrackProvider trackProvider;
-    private final AudioPlayerManager playerManager;
+    private final ItemLoadCoalescer itemLoader;
+    private final PlaylistPreflight preflight;
     private final GuildPlayer gplayer;
     private final YoutubeAPI youtubeAPI;
-    private final ConcurrentLinkedQueue<IdentifierContext> identifierQueue = new ConcurrentLinkedQueue<>();
-    private IdentifierContext context = null;
-    private volatile boolean isLoading = false;
+
+    //all of the below guarded by this
+    //completes once all identifiers requested so far have passed their preflight
+    private CompletableFuture<Void> admitted = CompletableFuture.completedFuture(null);
+    private final Deque<Load> uncommitted = new ArrayDeque<>(); //in request order
+    private final Deque<Load> waiting = new ArrayDeque<>(); //not started yet
+    private int started = 0; //started and not committed yet
+    private boolean committing = false; //a load has left the reorder buffer, but its commit has not finished yet
 
     public AudioLoader(JdaEntityProvider jdaEntityProvider, Ratelimiter ratelimiter, ITrackProvider trackProvider,
-                       AudioPlayerManager playerManager, GuildPlayer gplayer, YoutubeAPI youtubeAPI) {
+                       ItemLoadCoalescer itemLoader, PlaylistPreflight preflight, GuildPlayer gplayer,
+                       YoutubeAPI youtubeAPI) {
         this.jdaEntityProvider = jdaEntityProvider;
         this.ratelimiter = ratelimiter;
         this.trackProvider = trackProvider;
-        this.playerManager = playerManager;
+        this.itemLoader = itemLoader;
+        this.preflight = preflight;
         this.gplayer = gplayer;
         this.youtubeAPI = youtubeAPI;
     }
 
+    /**
+     * Queue an identifier for loading. Does not block: slow loading playlists are looked up in the background for
+     * rate limiting, while the order in which identifiers were requested is kept.
+     */
     public void loadAsync(IdentifierContext ic) {
-
-        if (ratelimitIfSlowLoadingPlaylistAndAnnounce(ic)) {
-            identifierQueue.add(ic);
-            if (!isLoading) {
-                loadNextAsync();
-            }
+        CompletableFuture<Optional<PlaylistInfo>> preflightLookup = preflight.getPlaylistInfo(ic.identifier);
+        synchronized (this) {
+            admitted = admitted
+                    .thenCompose(ignored -> preflightLookup)
+                    .handle((playlistInfo, t) -> {
+                        admit(ic, playlistInfo, t);
+                        return null;
+                    });
         }
     }
 
-    private void loadNextAsync() {
+    /**
+     * @return true if there are identifiers being loaded, waiting to be loaded, or being committed. The latter includes
+     * streaming playlists that are still adding their tracks to the queue.
+     */
+    public synchronized boolean isLoading() {
+        return !admitted.isDone() || !uncommitted.isEmpty() || committing;
+    }
+
+    private void admit(IdentifierContext ic, @Nullable Optional<PlaylistInfo> playlistInfo, @Nullable Throwable t) {
         try {
-            IdentifierContext ic = identifierQueue.poll();
-            if (ic != null) {
-                isLoading = true;
-                context = ic;
+            if (t != null) {
+                handleThrowable(ic, t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                return;
+            }
+            if (playlistInfo != null && playlistInfo.isPresent() && !ratelimitAndAnnounce(ic, playlistInfo.get())) {
+                return;
+            }
+        } catch (Throwable th) {
+            handleThrowable(ic, th);
+            return;
+        }
+
+        Load load = new Load(ic);
+        synchronized (this) {
+            uncommitted.add(load);
+            waiting.add(load);
+        }
+        startLoads();
+    }
 
+    private void startLoads() {
+        List<Load> toStart = new ArrayList<>();
+        synchronized (this) {
+            while (started < MAX_PARALLEL_LOADS && !waiting.isEmpty()) {
+                started++;
+                toStart.add(waiting.poll());
+            }
+        }
+        for (Load load : toStart) {
+            try {
                 if (gplayer.getTrackCount() >= QUEUE_TRACK_LIMIT) {
-                    context.replyWithName(context.i18nFormat("loadQueueTrackLimit", QUEUE_TRACK_LIMIT));
-                    isLoading = false;
-                    return;
+                    load.commitWith(() -> {
+                        load.ic.replyWithName(load.ic.i18nFormat("loadQueueTrackLimit", QUEUE_TRACK_LIMIT));
+                        return COMMITTED;
+                    });
+                } else {
+                    itemLoader.loadItem(load.ic.identifier, load);
                 }
-
-                playerManager.loadItem(ic.identifier, this);
-            } else {
-                isLoading = false;
+            } catch (Throwable th) {
+                load.commitWith(() -> {
+                    handleThrowable(load.ic, th);
+                    return COMMITTED;
+                });
             }
-        } catch (Throwable th) {
-            handleThrowable(context, th);
-            isLoading = false;
         }
     }
 
     /**
-     * If the requested item is a slow loading playlist that we know of, check for rate limits and announce to the user
-     * that it might take a while to gather it.
-     *
-     * @return false if the user is not allowed to load the playlist, true if he is
+     * Commit the results at the head of the reorder buffer, in request order. Only one thread commits at a time; a
+     * commit that finishes later (streaming playlists) holds back the ones behind it until it is done.
      */
-    private boolean ratelimitIfSlowLoadingPlaylistAndAnnounce(IdentifierContext ic) {
-        PlaylistInfo playlistInfo = getSlowLoadingPlaylistData(ic.identifier);
+    private void commitReady() {
+        synchronized (this) {
+            if (committing) {
+                return;
+            }
+            committing = true;
+        }
+        while (true) {
+            Load head;
+            synchronized (this) {
+                head = uncommitted.peek();
+                if (head == null || head.commit == null) {
+                    committing = false;
+                    return;
+                }
+                uncommitted.poll();
+            }
 
-        if (playlistInfo == null) //not a slow loading playlist
-            return true;
-        else {
-            if (ratelimiter.isRatelimited(ic, playlistInfo, playlistInfo.getTotalTracks())) {
-                return false;
+            CompletableFuture<Void> committed;
+            try {
+                committed = head.commit.get();
+            } catch (Throwable th) {
+                handleThrowable(head.ic, th);
+                committed = COMMITTED;
             }
 
-            //inform user we are possibly about to do nasty time consuming work
-            if (playlistInfo.getTotalTracks() > 50) {
-                ic.replyWithName(ic.i18nFormat("loadAnnouncePlaylist",
-                        playlistInfo.getName(), playlistInfo.getTotalTracks()));
+            if (!committed.isDone()) {
+                committed.whenComplete((ignored, t) -> {
+                    synchronized (this) {
+                        committing = false;
+                    }
+                    onCommitted();
+                });
+                return; //still committing
             }
-            return true;
+            onCommitted();
         }
     }
 
+    private void onCommitted() {
+        synchronized (this) {
+            started--;
+        }
+        startLoads();
+        commitReady();
+    }
+
     /**
-     * this function needs to be updated if we add more manual playlist loaders
-     * currently it only covers the Hastebin and Spotify playlists
+     * Check the rate limits for a slow loading playlist and announce to the user that it might take a while to
+     * gather it.
      *
-     * @param identifier the very same identifier that the playlist loaders will be presented with if we asked them to
-     *                   load a playlist
-     * @return null if it's not a playlist that we manually parse, some data about it if it is
+     * @return false if the user is not allowed to load the playlist, true if he is
      */
-    private PlaylistInfo getSlowLoadingPlaylistData(String identifier) {
+    private boolean ratelimitAndAnnounce(IdentifierContext ic, PlaylistInfo playlistInfo) {
+        if (ratelimiter.isRatelimited(ic, playlistInfo, playlistInfo.getTotalTracks())) {
+            return false;
+        }
 
-        PlaylistInfo playlistInfo = null;
-        PlaylistImporter pi = playerManager.source(SpotifyPlaylistSourceManager.class);
-        if (pi != null) {
-            playlistInfo = pi.getPlaylistDataBlocking(identifier);
+        //inform user we are possibly about to do nasty time consuming work
+        if (playlistInfo.getTotalTracks() > 50) {
+            ic.replyWithName(ic.i18nFormat("loadAnnouncePlaylist",
+                    playlistInfo.getName(), playlistInfo.getTotalTracks()));
+        }
+        return true;
+    }
+
+    /**
+     * A single requested identifier. Its lavaplayer result is turned into a commit action that waits in the reorder
+     * buffer until it is its turn.
+     */
+    private class Load implements AudioLoadResultHandler {
+        private final IdentifierContext ic;
+        //set once the load is resolved, guarded by the AudioLoader. the returned future completes once committed
+        @Nullable
+        private Supplier<CompletableFuture<Void>> commit;
+
+        private Load(IdentifierContext ic) {
+            this.ic = ic;
         }
 
-        if (playlistInfo == null) {
-            pi = playerManager.source(PlaylistImportSourceManager.class);
-            if (pi != null) {
-                playlistInfo = pi.getPlaylistDataBlocking(identifier);
+        private void commitWith(Supplier<CompletableFuture<Void>> action) {
+            synchronized (AudioLoader.this) {
+                commit = action;
             }
+            commitReady();
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack at) {
+            commitWith(() -> {
+                commitTrack(ic, at);
+                return COMMITTED;
+            });
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist ap) {
+            commitWith(() -> {
+                if (ap instanceof StreamingAudioPlaylist && !ic.isSplit()) {
+                    return commitStreaming((StreamingAudioPlaylist) ap, ic);
+                }
+                commitPlaylist(ic, ap);
+                return COMMITTED;
+            });
         }
 
-        //can be null
-        return playlistInfo;
+        @Override
+        public void noMatches() {
+            commitWith(() -> {
+                ic.reply(ic.i18nFormat("loadNoMatches", ic.identifier));
+                return COMMITTED;
+            });
+        }
+
+        @Override
+        public void loadFailed(FriendlyException fe) {
+            Metrics.trackLoadsFailed.inc();
+            commitWith(() -> {
+                handleThrowable(ic, fe);
+                return COMMITTED;
+            });
+        }
     }
 
-    @Override
-    public void trackLoaded(AudioTrack at) {
+    private void commitTrack(IdentifierContext ic, AudioTrack at) {
         Metrics.tracksLoaded.inc();
-        try {
-            if(context.isSplit()){
-                loadSplit(at, context);
-            } else {
+        if (ic.isSplit()) {
+            loadSplit(at, ic);
+            return;
+        }
 
-                if (!context.isQuiet()) {
-                    context.reply(gplayer.isPlaying() ?
-                            context.i18nFormat("loadSingleTrack", TextUtils.escapeAndDefuse(at.getInfo().title))
-                            :
-                            context.i18nFormat("loadSingleTrackAndPlay", TextUtils.escapeAndDefuse(at.getInfo().title))
-                    );
-                } else {
-                    log.info("Quietly loaded " + at.getIdentifier());
-                }
+        if (!ic.isQuiet()) {
+            ic.reply(gplayer.isPlaying() ?
+                    ic.i18nFormat("loadSingleTrack", TextUtils.escapeAndDefuse(at.getInfo().title))
+                    :
+                    ic.i18nFormat("loadSingleTrackAndPlay", TextUtils.escapeAndDefuse(at.getInfo().title))
+            );
+        } else {
+            log.info("Quietly loaded " + at.getIdentifier());
+        }
 
-                at.setPosition(context.getPosition());
+        at.setPosition(ic.getPosition());
+        if (at instanceof YoutubeAudioTrack) {
+            youtubeAPI.prefetch(at.getIdentifier());
+        }
 
-                trackProvider.add(new AudioTrackContext(jdaEntityProvider, at, context.getMember()));
-                if (!gplayer.isPaused()) {
-                    gplayer.play();
-                }
-            }
-        } catch (Throwable th) {
-            handleThrowable(context, th);
+        trackProvider.add(new AudioTrackContext(jdaEntityProvider, at, ic.getMember()));
+        if (!gplayer.isPaused()) {
+            gplayer.play();
         }
-        loadNextAsync();
     }
 
-    @Override
-    public void playlistLoaded(AudioPlaylist ap) {
+    private void commitPlaylist(IdentifierContext ic, AudioPlaylist ap) {
         Metrics.tracksLoaded.inc(ap.getTracks() == null ? 0 : ap.getTracks().size());
-        try {
-            if(context.isSplit()){
-                context.reply(context.i18n("loadPlaySplitListFail"));
-                loadNextAsync();
-                return;
+        if (ic.isSplit()) {
+            if (ap instanceof StreamingAudioPlaylist) {
+                ((StreamingAudioPlaylist) ap).cancel(); //don't keep resolving tracks nobody is going to queue
             }
+            ic.reply(ic.i18n("loadPlaySplitListFail"));
+            return;
+        }
+
+        List<AudioTrackContext> toAdd = new ArrayList<>();
+        for (AudioTrack at : ap.getTracks()) {
+            toAdd.add(new AudioTrackContext(jdaEntityProvider, at, ic.getMember()));
+        }
+        trackProvider.addAll(toAdd);
+        ic.reply(ic.i18nFormat("loadListSuccess", ap.getTracks().size(), ap.getName()));
+        if (!gplayer.isPaused()) {
+            gplayer.play();
+        }
+    }
 
-            List<AudioTrackContext> toAdd = new ArrayList<>();
-            for (AudioTrack at : ap.getTracks()) {
-                toAdd.add(new AudioTrackContext(jdaEntityProvider, at, context.getMember()));
+    /**
+     * Add the tracks of a playlist that is still being resolved to the queue as they arrive, starting playback with
+     * the first one. Progress is reported by editing a single message.
+     *
+     * @return completes once the playlist is complete, so that the tracks of later loads end up behind the ones of the
+     * playlist
+     */
+    private CompletableFuture<Void> commitStreaming(StreamingAudioPlaylist ap, IdentifierContext ic) {
+        StreamingListener listener = new StreamingListener(ap, ic);
+        ic.reply(listener.progressText(), listener::onProgressMessage, ignored -> {});
+        ap.subscribe(listener);
+        return listener.completion;
+    }
+
+    private class StreamingListener implements StreamingAudioPlaylist.Listener {
+        private final StreamingAudioPlaylist ap;
+        private final IdentifierContext ic;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        //all of the below guarded by this
+        private int added = 0;
+        private long lastProgressEdit = System.currentTimeMillis();
+        @Nullable
+        private Message progressMessage;
+        private boolean complete = false;
+
+        private StreamingListener(StreamingAudioPlaylist ap, IdentifierContext ic) {
+            this.ap = ap;
+            this.ic = ic;
+        }
+
+        @Override
+        public synchronized boolean onTrack(AudioTrack at) {
+            if (gplayer.getTrackCount() >= QUEUE_TRACK_LIMIT) {
+                return false;
             }
-            trackProvider.addAll(toAdd);
-            context.reply(context.i18nFormat("loadListSuccess", ap.getTracks().size(), ap.getName()));
-            if (!gplayer.isPaused()) {
-                gplayer.play();
+            try {
+                Metrics.tracksLoaded.inc();
+                trackProvider.add(new AudioTrackContext(jdaEntityProvider, at, ic.getMember()));
+                if (added++ == 0 && !gplayer.isPaused()) {
+                    gplayer.play();
+                }
+                long now = System.currentTimeMillis();
+                if (progressMessage != null && now - lastProgressEdit >= PROGRESS_EDIT_INTERVAL) {
+                    lastProgressEdit = now;
+                    CentralMessaging.editMessage(progressMessage, progressText());
+                }
+            } catch (Throwable th) {
+                handleThrowable(ic, th);
             }
-        } catch (Throwable th) {
-            handleThrowable(context, th);
+            return true;
         }
-        loadNextAsync();
-    }
 
-    @Override
-    public void noMatches() {
-        try {
-            context.reply(context.i18nFormat("loadNoMatches", context.identifier));
-        } catch (Throwable th) {
-            handleThrowable(context, th);
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                complete = true;
+                if (progressMessage != null) {
+                    CentralMessaging.editMessage(progressMessage, ic.i18nFormat("loadListSuccess", added, ap.getName()));
+                } //otherwise it is edited once it arrives
+            }
+            completion.complete(null);
         }
-        loadNextAsync();
-    }
 
-    @Override
-    public void loadFailed(FriendlyException fe) {
-        Metrics.trackLoadsFailed.inc();
-        handleThrowable(context, fe);
+        private synchronized void onProgressMessage(Message message) {
+            progressMessage = message;
+            if (complete) {
+                CentralMessaging.editMessage(message, ic.i18nFormat("loadListSuccess", added, ap.getName()));
+            }
+        }
 
-        loadNextAsync();
+        private synchronized String progressText() {
+            return ic.i18nFormat("loadListProgress", ap.getName(), added, Math.max(added, ap.getExpectedItemCount()));
+        }
     }
 
     private void loadSplit(AudioTrack at, IdentifierContext ic){
@@ -247,7 +434,11 @@ public class AudioLoader implements AudioLoadResultHandler {
         }
         YoutubeAudioTrack yat = (YoutubeAudioTrack) at;
 
-        YoutubeVideo yv = youtubeAPI.getVideoFromID(yat.getIdentifier(), true);
+        YoutubeVideo yv = youtubeAPI.getVideo(yat.getIdentifier());
+        if (yv == null) {
+            ic.reply(ic.i18n("loadSplitNotResolves"));
+            return;
+        }
         String desc = yv.getDescription();
         Matcher m = SPLIT_DESCRIPTION_PATTERN.matcher(desc);
 
@@ -322,7 +513,7 @@ public class AudioLoader implements AudioLoadResultHandler {
                     .append(ic.i18nFormat("loadPlaylistTooMany", list.size()));
         }
 
-        context.reply(mb.build());
+        ic.reply(mb.build());
     }
 
     private void handleThrowable(IdentifierContext ic, Throwable th) {
@@ -331,20 +522,20 @@ public class AudioLoader implements AudioLoadResultHandler {
                 FriendlyException fe = (FriendlyException) th;
                 if (fe.severity == FriendlyException.Severity.COMMON) {
                     if (ic.getTextChannel() != null) {
-                        context.reply(ic.i18nFormat("loadErrorCommon", context.identifier, fe.getMessage()));
+                        ic.reply(ic.i18nFormat("loadErrorCommon", ic.identifier, fe.getMessage()));
                     } else {
                         log.error("Error while loading track ", th);
                     }
                 } else if (ic.getTextChannel() != null) {
-                    context.reply(ic.i18nFormat("loadErrorSusp", context.identifier));
+                    ic.reply(ic.i18nFormat("loadErrorSusp", ic.identifier));
                     Throwable exposed = fe.getCause() == null ? fe : fe.getCause();
-                    TextUtils.handleException("Failed to load a track", exposed, context);
+                    TextUtils.handleException("Failed to load a track", exposed, ic);
                 } else {
                     log.error("Error while loading track ", th);
                 }
             } else if (ic.getTextChannel() != null) {
-                context.reply(ic.i18n("loadErrorSusp"));
-                TextUtils.handleException("Failed to load a track", th, context);
+                ic.reply(ic.i18n("loadErrorSusp"));
+                TextUtils.handleException("Failed to load a track", th, ic);
             } else {
                 log.error("Error while loading track ", th);
             }
@@ -25,6 +25,7 @@
 
 package fredboat.audio.queue;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
 
@@ -40,6 +41,13 @@ public interface ITrackProvider {
      */
     AudioTrackContext provideAudioTrack();
 
+    /**
+     * @return the track that the next call to provideAudioTrack() will return if the queue is not changed meanwhile,
+     * or null if that is not known in advance. Used to prepare the next track before the current one ends.
+     */
+    @Nullable
+    AudioTrackContext lookahead();
+
     /**
      * Call this when the current track is skipped by the user to let the provider know about it
      */
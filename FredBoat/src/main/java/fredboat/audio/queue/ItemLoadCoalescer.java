@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.queue;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.audio.source.AudioSource;
+import fredboat.audio.source.CircuitBreaker;
+import fredboat.audio.source.SourceCircuitBreakers;
+import fredboat.feature.metrics.Metrics;
+import fredboat.util.AudioUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Front for {@link AudioPlayerManager#loadItem(String, AudioLoadResultHandler)} that coalesces concurrent loads of
+ * the same identifier, for example when a popular link is posted in many guilds at once. Only the first load hits the
+ * source, the handlers of later loads wait for it and receive their own clones of the loaded tracks.
+ * <p>
+ * Loads from a source whose {@link CircuitBreaker} is open fail right away instead of tying up a loader thread.
+ */
+@Component
+public class ItemLoadCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemLoadCoalescer.class);
+
+    private final AudioPlayerManager playerManager;
+    private final SourceCircuitBreakers circuitBreakers;
+    //guarded by itself
+    private final Map<String, Flight> inFlight = new HashMap<>();
+
+    public ItemLoadCoalescer(@Qualifier("loadAudioPlayerManager") AudioPlayerManager playerManager,
+                             SourceCircuitBreakers circuitBreakers) {
+        this.playerManager = playerManager;
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    public void loadItem(String identifier, AudioLoadResultHandler handler) {
+        Flight flight;
+        boolean leader = false;
+        synchronized (inFlight) {
+            flight = inFlight.get(identifier);
+            if (flight == null) {
+                flight = new Flight(identifier);
+                inFlight.put(identifier, flight);
+                leader = true;
+            }
+            flight.handlers.add(handler);
+        }
+
+        if (!leader) {
+            Metrics.requestsCoalesced.labels("load").inc();
+            return;
+        }
+        AudioSource source = AudioSource.ofIdentifier(identifier);
+        CircuitBreaker breaker = source == null ? null : circuitBreakers.get(source);
+        if (breaker != null) {
+            if (!breaker.tryAcquire()) {
+                flight.loadFailed(new FriendlyException("Loading from " + source.label()
+                        + " is disabled for a bit because it keeps failing, please try again later.",
+                        FriendlyException.Severity.COMMON, null));
+                return;
+            }
+            flight.breaker = breaker;
+        }
+        flight.startedAt = System.currentTimeMillis();
+        try {
+            playerManager.loadItem(identifier, flight);
+        } catch (Exception e) {
+            flight.loadFailed(new FriendlyException("Failed to start loading the item", FriendlyException.Severity.FAULT, e));
+        }
+    }
+
+    /**
+     * A load in flight, fanning out its result to all handlers that asked for it.
+     */
+    private class Flight implements AudioLoadResultHandler {
+        private final String identifier;
+        private final List<AudioLoadResultHandler> handlers = new ArrayList<>(1);
+        //set before the load is started
+        @Nullable
+        private CircuitBreaker breaker;
+        private long startedAt;
+
+        private Flight(String identifier) {
+            this.identifier = identifier;
+        }
+
+        //no handlers can be added anymore after this
+        private List<AudioLoadResultHandler> land() {
+            synchronized (inFlight) {
+                inFlight.remove(identifier, this);
+                return new ArrayList<>(handlers);
+            }
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack track) {
+            reportSuccess(true);
+            List<AudioLoadResultHandler> waiting = land();
+            for (int i = 0; i < waiting.size(); i++) {
+                AudioTrack own = i == 0 ? track : track.makeClone();
+                deliver(waiting.get(i), handler -> handler.trackLoaded(own));
+            }
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist) {
+            reportSuccess(false); //large playlists are expected to take a while
+            List<AudioLoadResultHandler> waiting = land();
+            for (int i = 0; i < waiting.size(); i++) {
+                AudioPlaylist own = i == 0 ? playlist : AudioUtil.copyOf(playlist);
+                deliver(waiting.get(i), handler -> handler.playlistLoaded(own));
+            }
+        }
+
+        @Override
+        public void noMatches() {
+            reportSuccess(true);
+            for (AudioLoadResultHandler waiting : land()) {
+                deliver(waiting, AudioLoadResultHandler::noMatches);
+            }
+        }
+
+        @Override
+        public void loadFailed(FriendlyException exception) {
+            if (breaker != null) {
+                if (exception.severity == FriendlyException.Severity.COMMON) {
+                    breaker.onSuccess(-1); //unavailable videos and the like, the source itself is fine
+                } else {
+                    breaker.onFailure();
+                }
+            }
+            for (AudioLoadResultHandler waiting : land()) {
+                deliver(waiting, handler -> handler.loadFailed(exception));
+            }
+        }
+
+        private void reportSuccess(boolean timed) {
+            if (breaker != null) {
+                breaker.onSuccess(timed ? System.currentTimeMillis() - startedAt : -1);
+            }
+        }
+
+        //one misbehaving handler must not keep the others from receiving the result
+        private void deliver(AudioLoadResultHandler handler, Consumer<AudioLoadResultHandler> action) {
+            try {
+                action.accept(handler);
+            } catch (Exception e) {
+                log.error("Handler {} threw while receiving the result for {}", handler, identifier, e);
+            }
+        }
+    }
+}
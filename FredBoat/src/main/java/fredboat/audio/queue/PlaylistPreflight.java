@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.queue;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import fredboat.audio.source.PlaylistImportSourceManager;
+import fredboat.audio.source.PlaylistImporter;
+import fredboat.audio.source.SpotifyPlaylistSourceManager;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up the metadata of slow loading playlists (Spotify, paste services) before they are loaded, so that they can
+ * be rate limited and announced. The lookups are http requests, so they run on the executor instead of the thread of
+ * the caller, and the results are cached by identifier for a short while. Concurrent lookups of the same identifier
+ * share a single request.
+ */
+@Component
+public class PlaylistPreflight {
+
+    private static final CompletableFuture<Optional<PlaylistInfo>> NOT_A_PLAYLIST
+            = CompletableFuture.completedFuture(Optional.empty());
+
+    private final List<PlaylistImporter> importers = new ArrayList<>();
+    private final ExecutorService executor;
+    private final Cache<String, CompletableFuture<Optional<PlaylistInfo>>> cache = CacheBuilder.newBuilder()
+            .recordStats()
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .maximumSize(10000)
+            .build();
+
+    public PlaylistPreflight(@Qualifier("loadAudioPlayerManager") AudioPlayerManager playerManager,
+                             ExecutorService executor, CacheMetricsCollector cacheMetrics) {
+        this.executor = executor;
+        //this needs to be updated if we add more manual playlist loaders
+        PlaylistImporter spotify = playerManager.source(SpotifyPlaylistSourceManager.class);
+        if (spotify != null) {
+            importers.add(spotify);
+        }
+        PlaylistImporter paste = playerManager.source(PlaylistImportSourceManager.class);
+        if (paste != null) {
+            importers.add(paste);
+        }
+        cacheMetrics.addCache("playlistPreflight", cache);
+    }
+
+    /**
+     * Never blocks. Completes right away for identifiers that are not slow loading playlists, which are most of them.
+     *
+     * @return some data about the playlist, or empty if it's not a playlist that we manually parse. Completes
+     * exceptionally if the playlist could not be looked up.
+     */
+    public CompletableFuture<Optional<PlaylistInfo>> getPlaylistInfo(String identifier) {
+        PlaylistImporter importer = null;
+        for (PlaylistImporter candidate : importers) {
+            if (candidate.isPlaylistIdentifier(identifier)) {
+                importer = candidate;
+                break;
+            }
+        }
+        if (importer == null) {
+            return NOT_A_PLAYLIST;
+        }
+
+        PlaylistImporter finalImporter = importer;
+        CompletableFuture<Optional<PlaylistInfo>> lookup;
+        try {
+            lookup = cache.get(identifier, () -> CompletableFuture.supplyAsync(
+                    () -> Optional.ofNullable(finalImporter.getPlaylistDataBlocking(identifier)), executor));
+        } catch (ExecutionException e) {
+            //creating the future does not throw
+            throw new IllegalStateException(e);
+        }
+        //don't cache failures, the next try may succeed
+        lookup.whenComplete((info, t) -> {
+            if (t != null) {
+                cache.asMap().remove(identifier, lookup);
+            }
+        });
+        return lookup;
+    }
+}
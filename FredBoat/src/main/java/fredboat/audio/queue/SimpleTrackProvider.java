@@ -81,6 +81,14 @@ public class SimpleTrackProvider extends AbstractTrackProvider {
         }
     }
 
+    @Override
+    public AudioTrackContext lookahead() {
+        if (getRepeatMode() == RepeatMode.SINGLE && lastTrack != null) {
+            return null; //a fresh clone of the last track is made once it is provided
+        }
+        return peek();
+    }
+
     @Override
     public boolean remove(AudioTrackContext atc) {
         if (queue.remove(atc)) {
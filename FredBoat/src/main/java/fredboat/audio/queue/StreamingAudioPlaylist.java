@@ -0,0 +1,302 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.queue;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A playlist that is handed out while its tracks are still being resolved, so that playback can start with the first
+ * resolved track instead of after the whole playlist.
+ * <p>
+ * The producer {@link #reserve()}s a slot for each item it starts resolving, in playlist order, and
+ * {@link #resolve(int, List)}s it once done, in any order. Tracks are delivered to subscribers in slot order, with a
+ * slot that is not resolved yet holding back the ones behind it. The first subscriber receives the resolved tracks,
+ * later ones receive clones.
+ * <p>
+ * The import is cancelled once all subscribers have stopped receiving tracks, when the consumer {@link #cancel()}s
+ * it, or when nobody subscribed to it within {@link #IDLE_TIMEOUT_MILLIS}.
+ */
+public class StreamingAudioPlaylist implements AudioPlaylist {
+
+    //generous, a consumer may have to wait for earlier imports of the same guild to be committed before subscribing
+    public static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private final String name;
+    private final boolean searchResult;
+    private final int expectedItemCount;
+    private final long createdAt = System.currentTimeMillis();
+
+    //all of the below guarded by this
+    private final List<List<AudioTrack>> slots = new ArrayList<>(); //null while unresolved
+    private int delivered = 0; //slots that have been delivered to the subscribers
+    private final List<AudioTrack> tracks = new ArrayList<>(); //delivered tracks
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private boolean subscribed = false;
+    private boolean cancelled = false;
+    private boolean closed = false;
+    private boolean finished = false;
+    private boolean delivering = false; //only one thread calls the listeners at a time, to keep the tracks in order
+
+    /**
+     * @param expectedItemCount how many items the playlist is expected to have, for progress reports
+     */
+    public StreamingAudioPlaylist(String name, boolean searchResult, int expectedItemCount) {
+        this.name = name;
+        this.searchResult = searchResult;
+        this.expectedItemCount = expectedItemCount;
+    }
+
+    public interface Listener {
+        /**
+         * Called in playlist order for each resolved track, by one thread at a time. Not called while holding the lock
+         * of the playlist, but it does hold up the delivery of tracks to other subscribers.
+         *
+         * @return false to stop receiving tracks, {@link #onComplete()} will be called right away
+         */
+        boolean onTrack(AudioTrack track);
+
+        /**
+         * Called once after the last track, or after the listener stopped receiving tracks.
+         */
+        void onComplete();
+    }
+
+    // producer side
+
+    /**
+     * @return the slot for the next item of the playlist
+     */
+    public synchronized int reserve() {
+        if (closed) {
+            throw new IllegalStateException("Playlist " + name + " is closed");
+        }
+        slots.add(null);
+        return slots.size() - 1;
+    }
+
+    /**
+     * @param tracks resolved tracks of the slot, empty if the item could not be resolved
+     */
+    public void resolve(int slot, List<AudioTrack> tracks) {
+        synchronized (this) {
+            slots.set(slot, tracks);
+        }
+        deliver();
+    }
+
+    public void resolve(int slot, @Nullable AudioTrack track) {
+        resolve(slot, track == null ? Collections.emptyList() : Collections.singletonList(track));
+    }
+
+    /**
+     * No more slots will be reserved. The playlist finishes once all reserved slots have been resolved.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        deliver();
+    }
+
+    /**
+     * @return true if resolving any more items is wasted effort: nobody is receiving tracks, and either the consumer
+     * gave up on this playlist, all subscribers have stopped receiving tracks, or nobody subscribed in time
+     */
+    public synchronized boolean isCancelled() {
+        if (finished || !subscriptions.isEmpty()) {
+            return false;
+        }
+        return cancelled || subscribed || System.currentTimeMillis() - createdAt > IDLE_TIMEOUT_MILLIS;
+    }
+
+    // consumer side
+
+    /**
+     * The consumer is not going to subscribe to this playlist. Stops the import, unless someone else subscribed to it.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Receive all tracks of this playlist, starting with the ones that have been resolved already.
+     */
+    public void subscribe(Listener listener) {
+        synchronized (this) {
+            subscriptions.add(new Subscription(listener, !subscribed));
+            subscribed = true;
+        }
+        deliver();
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public int getExpectedItemCount() {
+        return expectedItemCount;
+    }
+
+    /**
+     * @return amount of items that have been reserved so far, resolved or not
+     */
+    public synchronized int getItemCount() {
+        return slots.size();
+    }
+
+    /**
+     * @return amount of items that have been resolved and delivered
+     */
+    public synchronized int getDeliveredItemCount() {
+        return delivered;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the tracks resolved so far
+     */
+    @Override
+    public synchronized List<AudioTrack> getTracks() {
+        return new ArrayList<>(tracks);
+    }
+
+    @Override
+    public AudioTrack getSelectedTrack() {
+        return null;
+    }
+
+    @Override
+    public boolean isSearchResult() {
+        return searchResult;
+    }
+
+    /**
+     * Hand the tracks of the resolved slots at the head, and the completion, to the subscribers. The listeners are
+     * called outside of the lock, by a single thread at a time: a thread that finds another one delivering leaves its
+     * work to that one.
+     */
+    private void deliver() {
+        synchronized (this) {
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        boolean done = false;
+        try {
+            while (true) {
+                Subscription next = null;
+                List<AudioTrack> batch = Collections.emptyList();
+                synchronized (this) {
+                    collectResolved();
+                    for (Subscription subscription : subscriptions) {
+                        if (subscription.position < tracks.size()) {
+                            next = subscription;
+                            batch = new ArrayList<>(tracks.subList(subscription.position, tracks.size()));
+                            subscription.position = tracks.size();
+                            break;
+                        }
+                        if (finished) {
+                            next = subscription;
+                            break;
+                        }
+                    }
+                    if (next == null) {
+                        delivering = false;
+                        done = true;
+                        return;
+                    }
+                    if (batch.isEmpty()) {
+                        subscriptions.remove(next);
+                    }
+                }
+
+                if (batch.isEmpty()) {
+                    next.listener.onComplete();
+                    continue;
+                }
+                for (AudioTrack track : batch) {
+                    if (!next.offer(track)) {
+                        synchronized (this) {
+                            subscriptions.remove(next);
+                        }
+                        break;
+                    }
+                }
+            }
+        } finally {
+            if (!done) { //a listener threw, let the next call deliver
+                synchronized (this) {
+                    delivering = false;
+                }
+            }
+        }
+    }
+
+    //guarded by this
+    private void collectResolved() {
+        while (delivered < slots.size() && slots.get(delivered) != null) {
+            tracks.addAll(slots.get(delivered));
+            slots.set(delivered, Collections.emptyList()); //they are held by the tracks list
+            delivered++;
+        }
+        if (closed && delivered == slots.size()) {
+            finished = true;
+        }
+    }
+
+    private static class Subscription {
+        private final Listener listener;
+        private final boolean original;
+        //index of the next track of the tracks list this subscriber receives, guarded by the playlist
+        private int position = 0;
+
+        private Subscription(Listener listener, boolean original) {
+            this.listener = listener;
+            this.original = original;
+        }
+
+        //false if the listener does not want any more tracks
+        private boolean offer(AudioTrack track) {
+            if (listener.onTrack(original ? track : track.makeClone())) {
+                return true;
+            }
+            listener.onComplete();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.source;
+
+import fredboat.definitions.SearchProvider;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+
+/**
+ * The upstream audio sources. Each gets its own share of the item loader threads, and each with a single shared
+ * upstream gets its own {@link CircuitBreaker}.
+ */
+public enum AudioSource {
+    YOUTUBE,
+    SOUNDCLOUD,
+    BANDCAMP,
+    TWITCH,
+    VIMEO,
+    SPOTIFY,
+    HTTP; //any other http(s) url
+
+    public static AudioSource of(SearchProvider provider) {
+        switch (provider) {
+            case SOUNDCLOUD:
+                return SOUNDCLOUD;
+            case YOUTUBE:
+            default:
+                return YOUTUBE;
+        }
+    }
+
+    /**
+     * @return the source that an identifier passed to lavaplayer will be loaded from, or null if it is not one we
+     * track, for example local files or paste services
+     */
+    @Nullable
+    public static AudioSource ofIdentifier(String identifier) {
+        String id = identifier.toLowerCase(Locale.ROOT);
+        if (id.startsWith(SearchProvider.YOUTUBE.getPrefix())) {
+            return YOUTUBE;
+        } else if (id.startsWith(SearchProvider.SOUNDCLOUD.getPrefix())) {
+            return SOUNDCLOUD;
+        } else if (id.startsWith("spotify:")) {
+            return SPOTIFY;
+        } else if (!id.startsWith("http://") && !id.startsWith("https://")) {
+            return null;
+        }
+
+        String host = id.substring(id.indexOf("//") + 2);
+        int end = host.indexOf('/');
+        if (end >= 0) {
+            host = host.substring(0, end);
+        }
+        int port = host.indexOf(':');
+        if (port >= 0) {
+            host = host.substring(0, port);
+        }
+        if (isDomain(host, "youtube.com") || isDomain(host, "youtu.be")) {
+            return YOUTUBE;
+        } else if (isDomain(host, "soundcloud.com")) {
+            return SOUNDCLOUD;
+        } else if (isDomain(host, "bandcamp.com")) {
+            return BANDCAMP;
+        } else if (isDomain(host, "twitch.tv")) {
+            return TWITCH;
+        } else if (isDomain(host, "vimeo.com")) {
+            return VIMEO;
+        } else if (isDomain(host, "spotify.com")) {
+            return SPOTIFY;
+        }
+        for (String pasteService : PasteServiceConstants.PASTE_SERVICE_URLS.keySet()) {
+            if (host.contains(pasteService + ".")) {
+                return null; //playlist imports, the tracks inside are loaded separately
+            }
+        }
+        return HTTP;
+    }
+
+    //the domain itself or any of its subdomains
+    private static boolean isDomain(String host, String domain) {
+        return host.equals(domain) || host.endsWith("." + domain);
+    }
+
+    /**
+     * @return false for arbitrary http urls: they come from any number of unrelated hosts, so one dead host failing
+     * over and over must not stop loads from all the others
+     */
+    public boolean hasCircuitBreaker() {
+        return this != HTTP;
+    }
+
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
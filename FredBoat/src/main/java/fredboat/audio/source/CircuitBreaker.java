@@ -0,0 +1,236 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.source;
+
+import fredboat.feature.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps us from hammering an audio source that is failing or overloaded.
+ * <p>
+ * The outcomes of the most recent calls are kept in a sliding window. Once enough of them failed, or were slow, the
+ * breaker opens and calls are rejected right away. After a backoff, which doubles with each consecutive trip, a
+ * single probe call is let through (half open): if it succeeds the breaker closes again, otherwise it reopens.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final int WINDOW_SIZE = 50;
+    private static final int MIN_CALLS = 10; //don't judge a source by a handful of calls
+    private static final double FAILURE_RATE_THRESHOLD = 0.5;
+    private static final double SLOW_RATE_THRESHOLD = 0.8;
+    private static final long BASE_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_OPEN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    //allow another probe if the previous one never reported back
+    private static final long PROBE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final AudioSource source;
+    private final long slowCallMillis;
+    private final LongSupplier clock;
+
+    //all of the below guarded by this
+    private final boolean[] failed = new boolean[WINDOW_SIZE];
+    private final boolean[] slow = new boolean[WINDOW_SIZE];
+    private int next = 0;
+    private int size = 0;
+    private int failures = 0;
+    private int slows = 0;
+    private State state = State.CLOSED;
+    private long openUntil = 0;
+    private int consecutiveTrips = 0;
+    private long probeStartedAt = -1;
+
+    CircuitBreaker(AudioSource source, long slowCallMillis) {
+        this(source, slowCallMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in milliseconds, tests pass their own to step through the open and half open states
+     */
+    public CircuitBreaker(AudioSource source, long slowCallMillis, LongSupplier clock) {
+        this.source = source;
+        this.slowCallMillis = slowCallMillis;
+        this.clock = clock;
+        publishState();
+    }
+
+    /**
+     * @return true if the call may go ahead. The caller has to report its outcome with {@link #onSuccess(long)},
+     * {@link #onFailure()} or {@link #onCancelled()}, false if it shall fail fast.
+     */
+    public synchronized boolean tryAcquire() {
+        long now = clock.getAsLong();
+        switch (state) {
+            case OPEN:
+                if (now < openUntil) {
+                    break;
+                }
+                state = State.HALF_OPEN;
+                publishState();
+                probeStartedAt = now;
+                return true;
+            case HALF_OPEN:
+                if (probeStartedAt >= 0 && now - probeStartedAt < PROBE_TIMEOUT_MILLIS) {
+                    break;
+                }
+                probeStartedAt = now;
+                return true;
+            case CLOSED:
+            default:
+                return true;
+        }
+        Metrics.audioSourceCalls.labels(source.label(), "rejected").inc();
+        return false;
+    }
+
+    /**
+     * @param millis how long the call took, or a negative value if its duration says nothing about the health of the
+     *               source, for example when loading a large playlist
+     */
+    public synchronized void onSuccess(long millis) {
+        boolean wasSlow = millis >= slowCallMillis;
+        Metrics.audioSourceCalls.labels(source.label(), wasSlow ? "slow" : "success").inc();
+        record(false, wasSlow);
+    }
+
+    public synchronized void onFailure() {
+        Metrics.audioSourceCalls.labels(source.label(), "failure").inc();
+        record(true, false);
+    }
+
+    /**
+     * The call was abandoned before the source answered, which says nothing about the health of the source. Nothing is
+     * recorded, but a half open breaker lets the next probe through right away.
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            probeStartedAt = -1;
+        }
+    }
+
+    /**
+     * Open the breaker right away, for signals that are clear enough on their own, like being rate limited.
+     */
+    public synchronized void trip(String reason) {
+        consecutiveTrips++;
+        long openMillis = Math.min(BASE_OPEN_MILLIS << Math.min(consecutiveTrips - 1, 16), MAX_OPEN_MILLIS);
+        openUntil = clock.getAsLong() + openMillis;
+        state = State.OPEN;
+        resetWindow();
+        publishState();
+        Metrics.audioSourceCircuitTrips.labels(source.label()).inc();
+        log.warn("Opened the circuit breaker of {} for {}s: {}", source, TimeUnit.MILLISECONDS.toSeconds(openMillis), reason);
+    }
+
+    private void record(boolean isFailure, boolean isSlow) {
+        switch (state) {
+            case HALF_OPEN:
+                probeStartedAt = -1;
+                if (isFailure || isSlow) {
+                    trip("probe " + (isFailure ? "failed" : "was slow"));
+                } else {
+                    close();
+                }
+                return;
+            case OPEN:
+                return; //started before we opened, this tells us nothing new
+            case CLOSED:
+            default:
+                break;
+        }
+
+        if (size == WINDOW_SIZE) {
+            if (failed[next]) failures--;
+            if (slow[next]) slows--;
+        } else {
+            size++;
+        }
+        failed[next] = isFailure;
+        slow[next] = isSlow;
+        if (isFailure) failures++;
+        if (isSlow) slows++;
+        next = (next + 1) % WINDOW_SIZE;
+
+        if (size >= MIN_CALLS) {
+            if (failures >= size * FAILURE_RATE_THRESHOLD) {
+                trip(String.format("%d of the last %d calls failed", failures, size));
+            } else if (slows >= size * SLOW_RATE_THRESHOLD) {
+                trip(String.format("%d of the last %d calls took longer than %dms", slows, size, slowCallMillis));
+            }
+        }
+    }
+
+    private void close() {
+        log.info("Closed the circuit breaker of {} again", source);
+        consecutiveTrips = 0;
+        state = State.CLOSED;
+        resetWindow();
+        publishState();
+    }
+
+    private void resetWindow() {
+        next = 0;
+        size = 0;
+        failures = 0;
+        slows = 0;
+    }
+
+    private void publishState() {
+        Metrics.audioSourceCircuitState.labels(source.label()).set(state.ordinal());
+    }
+
+    public AudioSource getSource() {
+        return source;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return a one line summary of this breaker, for debug output
+     */
+    public synchronized String describe() {
+        String summary = String.format("%-10s %-9s %d/%d failed, %d/%d slow", source.label(), state,
+                failures, size, slows, size);
+        if (state == State.OPEN) {
+            long remaining = Math.max(0, openUntil - clock.getAsLong());
+            summary += String.format(", retry in %ds", TimeUnit.MILLISECONDS.toSeconds(remaining));
+        }
+        return summary;
+    }
+}
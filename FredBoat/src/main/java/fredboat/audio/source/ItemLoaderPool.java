@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.source;
+
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import fredboat.config.property.AppConfig;
+import fredboat.feature.metrics.Metrics;
+import fredboat.feature.metrics.collectors.ThreadPoolCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The threads that all of our AudioPlayerManagers load items on, see {@link PooledAudioPlayerManager}.
+ * <p>
+ * There is a global budget of loader threads, and each {@link AudioSource} may only use a share of it, so that a slow
+ * or hammered source can not starve the others. The shares add up to at most the budget, so a load that is within the
+ * share of its source always finds a free thread. Loads above the share of their source wait in a bounded queue, loads
+ * that do not fit into the queue anymore are rejected right away.
+ */
+@Component
+public class ItemLoaderPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemLoaderPool.class);
+
+    //loading mostly waits on http, a small stack is plenty
+    private static final long STACK_SIZE = 256 * 1024;
+    //the sources, plus the lane for everything else
+    private static final int LANES = AudioSource.values().length + 1;
+
+    private final ThreadPoolExecutor executor;
+    private final Map<AudioSource, Lane> lanes = new EnumMap<>(AudioSource.class);
+    private final Lane otherLane; //identifiers we do not track a source for, like local files and paste lists
+
+    public ItemLoaderPool(AppConfig appConfig, ThreadPoolCollector threadPoolCollector) {
+        //every lane needs a thread of its own
+        int threads = Math.max(LANES, appConfig.getItemLoaderThreads());
+        int maxQueued = Math.max(0, appConfig.getItemLoaderQueueSize());
+
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(null, runnable, "item-loader-" + threadNumber.incrementAndGet(), STACK_SIZE));
+        executor.allowCoreThreadTimeOut(true);
+        threadPoolCollector.addPool("item-loader", executor);
+        Runtime.getRuntime().addShutdownHook(new Thread(executor::shutdown, "item-loader-shutdown-hook"));
+
+        for (AudioSource source : AudioSource.values()) {
+            lanes.put(source, new Lane(source.label(), share(source, threads), maxQueued));
+        }
+        otherLane = new Lane("other", share(null, threads), maxQueued);
+    }
+
+    /**
+     * Each lane gets one thread, the remaining ones are split in sixteenths: youtube carries the bulk of the loads and
+     * all searches, soundcloud a good part of the rest, the other lanes are much rarer. Rounded down, so the shares of
+     * all lanes never add up to more than the threads.
+     */
+    private static int share(@Nullable AudioSource source, int threads) {
+        int spare = threads - LANES;
+        int sixteenths;
+        if (source == AudioSource.YOUTUBE) {
+            sixteenths = 8;
+        } else if (source == AudioSource.SOUNDCLOUD) {
+            sixteenths = 2;
+        } else {
+            sixteenths = 6 / (LANES - 2);
+        }
+        return 1 + spare * sixteenths / 16;
+    }
+
+    /**
+     * Run a load of the given source once there is room for it.
+     *
+     * @param onRejected called right away instead if there are too many loads of the source waiting already
+     */
+    public void execute(@Nullable AudioSource source, Runnable load, Consumer<FriendlyException> onRejected) {
+        Lane lane = source != null ? lanes.get(source) : otherLane;
+        if (!lane.offer(new Task(load))) {
+            Metrics.itemLoadsRejected.labels(lane.label).inc();
+            onRejected.accept(new FriendlyException("Too many songs are being loaded from " + lane.label
+                    + " right now, please try again in a bit.", FriendlyException.Severity.COMMON, null));
+        }
+    }
+
+    private class Task {
+        private final Runnable load;
+        private final long queuedAt = System.nanoTime();
+
+        private Task(Runnable load) {
+            this.load = load;
+        }
+    }
+
+    private class Lane {
+        private final String label;
+        private final int limit;
+        private final int maxQueued;
+        //guarded by this
+        private final Deque<Task> queued = new ArrayDeque<>();
+        private int running = 0;
+
+        private Lane(String label, int limit, int maxQueued) {
+            this.label = label;
+            this.limit = limit;
+            this.maxQueued = maxQueued;
+        }
+
+        private boolean offer(Task task) {
+            synchronized (this) {
+                if (running >= limit) {
+                    if (queued.size() >= maxQueued) {
+                        return false;
+                    }
+                    queued.add(task);
+                    Metrics.itemLoadsQueued.labels(label).set(queued.size());
+                    return true;
+                }
+                running++;
+            }
+            submit(task);
+            return true;
+        }
+
+        private void submit(Task task) {
+            executor.execute(() -> run(task));
+        }
+
+        private void run(Task task) {
+            Metrics.itemLoadWaitSeconds.labels(label).observe((System.nanoTime() - task.queuedAt) / 1_000_000_000.0);
+            try {
+                task.load.run();
+            } catch (Throwable t) {
+                log.error("Uncaught exception while loading an item from {}", label, t);
+            } finally {
+                Task next;
+                synchronized (this) {
+                    next = queued.poll();
+                    if (next == null) {
+                        running--;
+                    }
+                    Metrics.itemLoadsQueued.labels(label).set(queued.size());
+                }
+                if (next != null) {
+                    submit(next);
+                }
+            }
+        }
+    }
+}
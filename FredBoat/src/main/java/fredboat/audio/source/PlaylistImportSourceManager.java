@@ -32,6 +32,7 @@ import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.*;
 import fredboat.audio.queue.PlaylistInfo;
+import fredboat.audio.queue.StreamingAudioPlaylist;
 import fredboat.main.BotController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,19 +41,31 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 
+/**
+ * Loads playlists from paste services, one identifier per whitespace separated item of the paste. The tracks are
+ * handed out in paste order as they resolve, see {@link StreamingImport}.
+ */
 public class PlaylistImportSourceManager implements AudioSourceManager, PlaylistImporter {
 
     private static final Logger log = LoggerFactory.getLogger(PlaylistImportSourceManager.class);
 
     private final AudioPlayerManager audioPlayerManager;
+    private final Executor executor;
+    private final int window;
 
-    public PlaylistImportSourceManager(AudioPlayerManager audioPlayerManager) {
+    /**
+     * @param window how many items of a paste are loaded at the same time
+     */
+    public PlaylistImportSourceManager(AudioPlayerManager audioPlayerManager, Executor executor, int window) {
         this.audioPlayerManager = audioPlayerManager;
+        this.executor = executor;
+        this.window = window;
     }
 
     @Override
@@ -73,24 +86,63 @@ public class PlaylistImportSourceManager implements AudioSourceManager, Playlist
             return null;
         }
         List<String> trackIds = loadAndParseTrackIds(serviceName, pasteId);
-
-        PasteServiceAudioResultHandler handler = new PasteServiceAudioResultHandler();
-        Future<Void> lastFuture = null;
-        for (String id : trackIds) {
-            lastFuture = audioPlayerManager.loadItemOrdered(handler, id, handler);
-        }
-
-        if (lastFuture == null) {
+        if (trackIds.isEmpty()) {
             return null;
         }
 
-        try {
-            lastFuture.get();
-        } catch (InterruptedException | ExecutionException ex) {
-            throw new FriendlyException("Failed loading playlist item", FriendlyException.Severity.FAULT, ex);
-        }
+        //don't hold the lavaplayer loader thread while the items are loaded, hand the tracks out as they resolve
+        return new StreamingImport<>(
+                new StreamingAudioPlaylist(pasteId, false, trackIds.size()),
+                trackIds,
+                null,
+                this::loadTracks,
+                () -> window,
+                executor
+        ).start();
+    }
 
-        return new BasicAudioPlaylist(pasteId, handler.getLoadedTracks(), null, false);
+    private CompletableFuture<List<AudioTrack>> loadTracks(String identifier) {
+        CompletableFuture<List<AudioTrack>> future = new CompletableFuture<>();
+        audioPlayerManager.loadItem(identifier, new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(AudioTrack track) {
+                future.complete(Collections.singletonList(track));
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist) {
+                if (!(playlist instanceof StreamingAudioPlaylist)) {
+                    future.complete(playlist.getTracks());
+                    return;
+                }
+                //nested imports, for example spotify links in a paste. they take up a single item of this import
+                List<AudioTrack> tracks = new ArrayList<>();
+                ((StreamingAudioPlaylist) playlist).subscribe(new StreamingAudioPlaylist.Listener() {
+                    @Override
+                    public boolean onTrack(AudioTrack track) {
+                        tracks.add(track);
+                        return true;
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        future.complete(tracks);
+                    }
+                });
+            }
+
+            @Override
+            public void noMatches() {
+                future.complete(Collections.emptyList());
+            }
+
+            @Override
+            public void loadFailed(FriendlyException exception) {
+                log.debug("Failed loading track provided via the paste service", exception);
+                future.complete(Collections.emptyList());
+            }
+        });
+        return future;
     }
 
     @Override
@@ -174,6 +226,12 @@ public class PlaylistImportSourceManager implements AudioSourceManager, Playlist
     }
 
 
+    @Override
+    public boolean isPlaylistIdentifier(String identifier) {
+        String[] parsed = parse(identifier);
+        return parsed != null && parsed[1] != null && !parsed[1].isEmpty();
+    }
+
     @Override
     public PlaylistInfo getPlaylistDataBlocking(String identifier) {
 
@@ -189,38 +247,4 @@ public class PlaylistImportSourceManager implements AudioSourceManager, Playlist
         return new PlaylistInfo(trackIds.size(), pasteId, PlaylistInfo.Source.PASTESERVICE);
     }
 
-    private class PasteServiceAudioResultHandler implements AudioLoadResultHandler {
-
-        private final List<AudioTrack> loadedTracks;
-
-        private PasteServiceAudioResultHandler() {
-            this.loadedTracks = new ArrayList<>();
-        }
-
-        @Override
-        public void trackLoaded(AudioTrack track) {
-            loadedTracks.add(track);
-        }
-
-        @Override
-        public void playlistLoaded(AudioPlaylist playlist) {
-            loadedTracks.addAll(playlist.getTracks());
-        }
-
-        @Override
-        public void noMatches() {
-            // ignore
-        }
-
-        @Override
-        public void loadFailed(FriendlyException exception) {
-            log.debug("Failed loading track provided via the paste service", exception);
-        }
-
-        public List<AudioTrack> getLoadedTracks() {
-            return loadedTracks;
-        }
-
-    }
-
 }
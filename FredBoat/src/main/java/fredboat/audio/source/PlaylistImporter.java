@@ -36,4 +36,12 @@ public interface PlaylistImporter {
      * @return information about the playlist or null if it's not a playlist recognized by this importer
      */
     PlaylistInfo getPlaylistDataBlocking(String identifier);
+
+    /**
+     * Cheap check without any IO, so callers can skip {@link #getPlaylistDataBlocking(String)} for identifiers that
+     * are of no interest to this importer.
+     *
+     * @return true if the identifier looks like a playlist this importer can load
+     */
+    boolean isPlaylistIdentifier(String identifier);
 }
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.source;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.ExceptionTools;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+/**
+ * An AudioPlayerManager that loads items on the shared {@link ItemLoaderPool} instead of a loader thread pool of its
+ * own, so that the concurrency of all managers together is bounded and split by audio source.
+ */
+public class PooledAudioPlayerManager extends DefaultAudioPlayerManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledAudioPlayerManager.class);
+
+    private static final int MAXIMUM_LOAD_REDIRECTS = 5;
+
+    private final ItemLoaderPool itemLoaderPool;
+    //the super class does not expose its source managers
+    private final List<AudioSourceManager> sourceManagers = new CopyOnWriteArrayList<>();
+
+    public PooledAudioPlayerManager(ItemLoaderPool itemLoaderPool) {
+        this.itemLoaderPool = itemLoaderPool;
+    }
+
+    @Override
+    public void registerSourceManager(AudioSourceManager sourceManager) {
+        super.registerSourceManager(sourceManager);
+        sourceManagers.add(sourceManager);
+    }
+
+    @Override
+    public Future<Void> loadItem(String identifier, AudioLoadResultHandler resultHandler) {
+        CompletableFuture<Void> loaded = new CompletableFuture<>();
+        itemLoaderPool.execute(AudioSource.ofIdentifier(identifier),
+                () -> {
+                    try {
+                        loadItemSync(identifier, resultHandler);
+                    } finally {
+                        loaded.complete(null);
+                    }
+                },
+                rejection -> {
+                    try {
+                        resultHandler.loadFailed(rejection);
+                    } finally {
+                        loaded.complete(null);
+                    }
+                });
+        return loaded;
+    }
+
+    /*
+        Following code is from Sedmelluq's LavaPlayer project (https://github.com/sedmelluq/lavaplayer)
+        and therefore under the Apache 2.0 License.
+        A copy of the License file is provided in "ThirdPartyLicenses/APACHE2"
+
+        Changes:
+         - Merged the item loader callable into a plain method that runs on the calling thread
+     */
+    private void loadItemSync(String identifier, AudioLoadResultHandler resultHandler) {
+        boolean[] reported = new boolean[1];
+
+        try {
+            if (!checkSourcesForItem(new AudioReference(identifier, null), resultHandler, reported)) {
+                log.debug("No matches for track with identifier {}.", identifier);
+                resultHandler.noMatches();
+            }
+        } catch (Throwable throwable) {
+            if (reported[0]) {
+                log.warn("Load result handler for {} threw an exception", identifier, throwable);
+            } else {
+                FriendlyException exception = ExceptionTools.wrapUnfriendlyExceptions(
+                        "Something went wrong when looking up the track", FriendlyException.Severity.FAULT, throwable);
+                ExceptionTools.log(log, exception, "loading item " + identifier);
+                resultHandler.loadFailed(exception);
+            }
+
+            ExceptionTools.rethrowErrors(throwable);
+        }
+    }
+
+    private boolean checkSourcesForItem(AudioReference reference, AudioLoadResultHandler resultHandler, boolean[] reported) {
+        AudioReference currentReference = reference;
+
+        for (int redirects = 0; redirects < MAXIMUM_LOAD_REDIRECTS && currentReference.identifier != null; redirects++) {
+            AudioItem item = checkSourcesForItemOnce(currentReference, resultHandler, reported);
+            if (item == null) {
+                return false;
+            } else if (!(item instanceof AudioReference)) {
+                return true;
+            }
+            currentReference = (AudioReference) item;
+        }
+
+        return false;
+    }
+
+    private AudioItem checkSourcesForItemOnce(AudioReference reference, AudioLoadResultHandler resultHandler, boolean[] reported) {
+        for (AudioSourceManager sourceManager : sourceManagers) {
+            AudioItem item = sourceManager.loadItem(this, reference);
+
+            if (item != null) {
+                if (item instanceof AudioTrack) {
+                    log.debug("Loaded a track with identifier {} using {}.", reference.identifier, sourceManager.getClass().getSimpleName());
+                    reported[0] = true;
+                    resultHandler.trackLoaded((AudioTrack) item);
+                } else if (item instanceof AudioPlaylist) {
+                    log.debug("Loaded a playlist with identifier {} using {}.", reference.identifier, sourceManager.getClass().getSimpleName());
+                    reported[0] = true;
+                    resultHandler.playlistLoaded((AudioPlaylist) item);
+                }
+                return item;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.source;
+
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link CircuitBreaker} of each {@link AudioSource} that has one. Searches and item loads of a source share
+ * its breaker.
+ */
+@Component
+public class SourceCircuitBreakers {
+
+    //searches time out after a few seconds, single track loads should not take much longer either
+    private static final long SLOW_CALL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Map<AudioSource, CircuitBreaker> breakers = new EnumMap<>(AudioSource.class);
+
+    public SourceCircuitBreakers() {
+        for (AudioSource source : AudioSource.values()) {
+            if (source.hasCircuitBreaker()) {
+                breakers.put(source, new CircuitBreaker(source, SLOW_CALL_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * @return the breaker of the source, or null if it does not have one, see {@link AudioSource#hasCircuitBreaker()}
+     */
+    @Nullable
+    public CircuitBreaker get(AudioSource source) {
+        return breakers.get(source);
+    }
+
+    public Collection<CircuitBreaker> getAll() {
+        return Collections.unmodifiableCollection(breakers.values());
+    }
+}
@@ -29,6 +29,7 @@ import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.*;
 import fredboat.audio.queue.PlaylistInfo;
+import fredboat.audio.queue.StreamingAudioPlaylist;
 import fredboat.definitions.SearchProvider;
 import fredboat.util.rest.SpotifyAPIWrapper;
 import fredboat.util.rest.TrackSearcher;
@@ -38,10 +39,13 @@ import org.slf4j.LoggerFactory;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,6 +55,9 @@ import java.util.regex.Pattern;
  * Loads playlists from Spotify playlist links.
  *
  * todo bulk load the songs from the search cache (remote db connections are slow when loading one by one)
+ * <p>
+ * Tracks are searched with a bounded parallelism while further pages of the playlist are fetched, and handed out in
+ * playlist order as they resolve, see {@link StreamingImport}.
  *
  * @author napster
  */
@@ -63,18 +70,29 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
     //https://regex101.com/r/AEWyxi/3
     private static final Pattern PLAYLIST_PATTERN = Pattern.compile("https?://.*\\.spotify\\.com/user/(.*)/playlist/([^?/\\s]*)");
 
-    //Take care when deciding on upping the core pool size: The threads may hog database connections when loading an uncached playlist.
+    //Shared by all imports, so this caps the searches fired by imports overall.
+    // Take care when deciding on upping the pool size: The threads may hog database connections when loading an uncached playlist.
     // Upping the threads will also fire search requests more aggressively against Youtube which is probably better avoided.
-    public static ScheduledExecutorService loader = Executors.newScheduledThreadPool(1);
+    private static final int MAX_LOADER_THREADS = 16;
+    public static ExecutorService loader = Executors.newFixedThreadPool(MAX_LOADER_THREADS,
+            runnable -> new Thread(runnable, "spotify-import"));
 
     private static final List<SearchProvider> searchProviders
             = Arrays.asList(SearchProvider.YOUTUBE, SearchProvider.SOUNDCLOUD);
     private final TrackSearcher trackSearcher;
     private final SpotifyAPIWrapper spotifyAPIWrapper;
+    private final SourceCircuitBreakers circuitBreakers;
+    private final int parallelism;
 
-    public SpotifyPlaylistSourceManager(TrackSearcher trackSearcher, SpotifyAPIWrapper spotifyAPIWrapper) {
+    /**
+     * @param parallelism how many tracks of a single playlist are searched at the same time
+     */
+    public SpotifyPlaylistSourceManager(TrackSearcher trackSearcher, SpotifyAPIWrapper spotifyAPIWrapper,
+                                        SourceCircuitBreakers circuitBreakers, int parallelism) {
         this.trackSearcher = trackSearcher;
         this.spotifyAPIWrapper = spotifyAPIWrapper;
+        this.circuitBreakers = circuitBreakers;
+        this.parallelism = Math.max(1, Math.min(parallelism, MAX_LOADER_THREADS));
     }
 
     @Override
@@ -82,6 +100,9 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
         return "spotify_playlist_import";
     }
 
+    /**
+     * @return a {@link StreamingAudioPlaylist} whose tracks are searched in the background, delivered in playlist order
+     */
     @Override
     public AudioItem loadItem(final DefaultAudioPlayerManager manager, final AudioReference ar) {
 
@@ -91,8 +112,11 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
         final String spotifyListId = data[1];
 
         PlaylistInfo plData;
+        SpotifyAPIWrapper.SearchTermsPage firstPage;
         try {
             plData = spotifyAPIWrapper.getPlaylistDataBlocking(spotifyUser, spotifyListId);
+            firstPage = spotifyAPIWrapper.getPlaylistTracksSearchTermsPageBlocking(spotifyUser, spotifyListId,
+                    0, SpotifyAPIWrapper.PAGE_SIZE);
         } catch (Exception e) {
             log.warn("Could not retrieve playlist " + spotifyListId + " of user " + spotifyUser, e);
             throw new FriendlyException("Couldn't load playlist. Either Spotify is down or the playlist does not exist.", FriendlyException.Severity.COMMON, e);
@@ -100,45 +124,40 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
 
         String playlistName = plData.getName();
         if (playlistName == null || "".equals(playlistName)) playlistName = "Spotify Playlist";
-        int tracksTotal = plData.getTotalTracks();
-
-        final List<AudioTrack> trackList = new ArrayList<>();
-        final List<String> trackListSearchTerms;
-
-        try {
-            trackListSearchTerms = spotifyAPIWrapper.getPlaylistTracksSearchTermsBlocking(spotifyUser, spotifyListId);
-        } catch (Exception e) {
-            log.warn("Could not retrieve tracks for playlist " + spotifyListId + " of user " + spotifyUser, e);
-            throw new FriendlyException("Couldn't load playlist. Either Spotify is down or the playlist does not exist.", FriendlyException.Severity.COMMON, e);
-        }
-        log.info("Retrieved playlist data for " + playlistName + " from Spotify, loading up " + tracksTotal + " tracks");
-
-        //build a task list
-        List<CompletableFuture<AudioTrack>> taskList = new ArrayList<>();
-        for (final String s : trackListSearchTerms) {
-            //remove all punctuation
-            final String query = s.replaceAll(TrackSearcher.PUNCTUATION_REGEX, "");
+        log.info("Retrieved playlist data for " + playlistName + " from Spotify, loading up " + plData.getTotalTracks() + " tracks");
 
-            CompletableFuture<AudioTrack> f = CompletableFuture.supplyAsync(() -> searchSingleTrack(query), loader);
-            taskList.add(f);
-        }
-
-        //build a tracklist from that task list
-        for (CompletableFuture<AudioTrack> futureTrack : taskList) {
-            try {
-                final AudioTrack audioItem = futureTrack.get();
-                if (audioItem == null) {
-                    continue; //skip the track if we couldn't find it
-                }
-                trackList.add(audioItem);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (ExecutionException ignored) {
-                //this is fine, loop will go for the next item
+        //fetches the following pages, one at a time
+        SpotifyAPIWrapper.SearchTermsPage[] lastPage = {firstPage};
+        StreamingImport.PageFetcher<String> pageFetcher = () -> {
+            SpotifyAPIWrapper.SearchTermsPage page = lastPage[0];
+            if (!page.hasNext()) {
+                return null;
             }
+            lastPage[0] = spotifyAPIWrapper.getPlaylistTracksSearchTermsPageBlocking(spotifyUser, spotifyListId,
+                    page.getNextOffset(), page.getNextLimit());
+            return lastPage[0].getSearchTerms();
+        };
+
+        return new StreamingImport<>(
+                new StreamingAudioPlaylist(playlistName, true, plData.getTotalTracks()),
+                firstPage.getSearchTerms(),
+                pageFetcher,
+                searchTerm -> CompletableFuture.supplyAsync(() -> {
+                    //remove all punctuation
+                    AudioTrack track = searchSingleTrack(searchTerm.replaceAll(TrackSearcher.PUNCTUATION_REGEX, ""));
+                    return track == null ? Collections.<AudioTrack>emptyList() : Collections.singletonList(track);
+                }, loader),
+                this::currentParallelism,
+                loader
+        ).start();
+    }
+
+    //back off to a single search at a time while youtube is not healthy, the searches fall through to soundcloud then
+    private int currentParallelism() {
+        if (circuitBreakers.get(AudioSource.YOUTUBE).getState() != CircuitBreaker.State.CLOSED) {
+            return 1;
         }
-        return new BasicAudioPlaylist(playlistName, trackList, null, true);
+        return parallelism;
     }
 
     /**
@@ -211,6 +230,11 @@ public class SpotifyPlaylistSourceManager implements AudioSourceManager, Playlis
         return result;
     }
 
+    @Override
+    public boolean isPlaylistIdentifier(String identifier) {
+        return PLAYLIST_PATTERN.matcher(identifier).find();
+    }
+
     @Override
     public PlaylistInfo getPlaylistDataBlocking(String identifier) {
 
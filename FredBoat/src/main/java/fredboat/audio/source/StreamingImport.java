@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.audio.source;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import fredboat.audio.queue.StreamingAudioPlaylist;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Resolves the items of a playlist import into a {@link StreamingAudioPlaylist}, with a bounded amount of items in
+ * flight at any time. Further pages of items are fetched in the background before the known items run out.
+ *
+ * @param <T> the items of the playlist, like search terms or identifiers
+ */
+public class StreamingImport<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingImport.class);
+
+    @FunctionalInterface
+    public interface PageFetcher<T> {
+        /**
+         * Blocking.
+         *
+         * @return the next page of items, or null if there are no more
+         */
+        @Nullable
+        List<T> fetchNext() throws Exception;
+    }
+
+    private final StreamingAudioPlaylist playlist;
+    private final Function<T, CompletableFuture<List<AudioTrack>>> resolver;
+    private final IntSupplier window;
+    @Nullable
+    private final PageFetcher<T> pageFetcher;
+    private final Executor executor;
+
+    //all of the below guarded by this
+    private final Deque<T> pending;
+    private int inFlight = 0;
+    private boolean fetching = false;
+    private boolean exhausted;
+
+    /**
+     * @param firstPage   the items that are known at the start
+     * @param pageFetcher fetches any further pages, null if there are none
+     * @param resolver    resolves a single item, the returned future should complete asynchronously
+     * @param window      how many items may be resolved at the same time. Asked again for each item, so it may change
+     *                    during the import, for example when a source becomes unhealthy.
+     * @param executor    runs the page fetching and the bookkeeping
+     */
+    public StreamingImport(StreamingAudioPlaylist playlist, List<T> firstPage, @Nullable PageFetcher<T> pageFetcher,
+                           Function<T, CompletableFuture<List<AudioTrack>>> resolver, IntSupplier window,
+                           Executor executor) {
+        this.playlist = playlist;
+        this.pending = new ArrayDeque<>(firstPage);
+        this.pageFetcher = pageFetcher;
+        this.exhausted = pageFetcher == null;
+        this.resolver = resolver;
+        this.window = window;
+        this.executor = executor;
+    }
+
+    public StreamingAudioPlaylist start() {
+        pump();
+        return playlist;
+    }
+
+    private synchronized void pump() {
+        if (playlist.isCancelled()) {
+            log.debug("Import of {} was cancelled, dropping {} pending items", playlist.getName(), pending.size());
+            pending.clear();
+            exhausted = true;
+        }
+
+        int limit = Math.max(1, window.getAsInt());
+        while (inFlight < limit && !pending.isEmpty()) {
+            T item = pending.poll();
+            int slot = playlist.reserve();
+            inFlight++;
+            CompletableFuture<List<AudioTrack>> resolved;
+            try {
+                resolved = resolver.apply(item);
+            } catch (Exception e) {
+                resolved = new CompletableFuture<>();
+                resolved.completeExceptionally(e);
+            }
+            //hop to the executor, so that futures completing right away do not recurse into this method
+            resolved.whenCompleteAsync((tracks, t) -> {
+                if (t != null) {
+                    log.debug("Failed to resolve item {} of {}", item, playlist.getName(), t);
+                }
+                playlist.resolve(slot, t != null || tracks == null ? Collections.emptyList() : tracks);
+                synchronized (this) {
+                    inFlight--;
+                }
+                pump();
+            }, executor);
+        }
+
+        //prefetch the next page while the current one is being resolved
+        if (!exhausted && !fetching && pending.size() < limit * 2) {
+            fetching = true;
+            executor.execute(this::fetchPage);
+        }
+
+        if (exhausted && !fetching && pending.isEmpty() && inFlight == 0) {
+            playlist.close();
+        }
+    }
+
+    private void fetchPage() {
+        List<T> page = null;
+        try {
+            //noinspection ConstantConditions exhausted is always set when there is no fetcher
+            page = pageFetcher.fetchNext();
+        } catch (Exception e) {
+            log.warn("Failed to fetch the next page of {}, finishing the import with what we got", playlist.getName(), e);
+        }
+        synchronized (this) {
+            fetching = false;
+            if (page == null) {
+                exhausted = true;
+            } else {
+                pending.addAll(page);
+            }
+        }
+        pump();
+    }
+}
@@ -25,6 +25,7 @@
 
 package fredboat.command.admin;
 
+import fredboat.audio.player.LavalinkNodeBalancer;
 import fredboat.command.info.HelpCommand;
 import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
@@ -88,6 +89,20 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
                     show(context);
                 }
                 break;
+            case "drain":
+                if (context.args.length < 2) {
+                    HelpCommand.sendFormattedCommandHelp(context);
+                } else {
+                    drain(context);
+                }
+                break;
+            case "undrain":
+                if (context.args.length < 2) {
+                    HelpCommand.sendFormattedCommandHelp(context);
+                } else {
+                    undrain(context);
+                }
+                break;
             case "list":
             default:
                 list(context);
@@ -129,6 +144,34 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
         context.reply("Added node: " + name + " @ " + uri.toString());
     }
 
+    private void drain(@Nonnull CommandContext context) {
+        String name = context.args[1];
+        LavalinkSocket node = null;
+        for (LavalinkSocket socket : Launcher.getBotController().getAudioConnectionFacade().getLavalink().getNodes()) {
+            if (socket.getName().equals(name)) {
+                node = socket;
+            }
+        }
+        if (node == null) {
+            context.reply("No node with name " + name + " found.");
+            return;
+        }
+
+        LavalinkNodeBalancer nodeBalancer = Launcher.getBotController().getAudioConnectionFacade().getNodeBalancer();
+        int moved = nodeBalancer.drain(node);
+        context.reply("Draining node " + name + ", moved " + moved + " players to other nodes.");
+    }
+
+    private void undrain(@Nonnull CommandContext context) {
+        String name = context.args[1];
+        LavalinkNodeBalancer nodeBalancer = Launcher.getBotController().getAudioConnectionFacade().getNodeBalancer();
+        if (nodeBalancer.undrain(name)) {
+            context.reply("Node " + name + " is accepting new players again.");
+        } else {
+            context.reply("Node " + name + " is not being drained.");
+        }
+    }
+
     private void show(@Nonnull CommandContext context) {
         String name = context.args[1];
         List<LavalinkSocket> nodes = Launcher.getBotController().getAudioConnectionFacade().getLavalink().getNodes().stream()
@@ -152,6 +195,7 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
 
     private void list(@Nonnull CommandContext context) {
         Lavalink lavalink = Launcher.getBotController().getAudioConnectionFacade().getLavalink();
+        LavalinkNodeBalancer nodeBalancer = Launcher.getBotController().getAudioConnectionFacade().getNodeBalancer();
 
 
         boolean showHosts = false;
@@ -202,6 +246,9 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
             str += "Deficit Frame Penalty:   " + penalties.getDeficitFramePenalty() + "\n";
             str += "Null Frame Penalty:      " + penalties.getNullFramePenalty() + "\n";
             str += "Raw: " + penalties.toString() + "\n";
+            str += "---------------\n";
+            str += "Balancer penalty:        " + nodeBalancer.getPenalty(socket) + "\n";
+            str += "Draining:                " + nodeBalancer.isDraining(socket.getName()) + "\n";
             str += "---------------\n\n";
 
             messages.add(str);
@@ -226,7 +273,10 @@ public class NodeAdminCommand extends Command implements ICommandRestricted {
                 + "\n{0}{1} show <name>"
                 + "\n{0}{1} add <name> <uri> <pass>"
                 + "\n{0}{1} remove <name>"
-                + "\n#Show information about connected lavalink nodes, or add or remove lavalink nodes.";
+                + "\n{0}{1} drain <name>"
+                + "\n{0}{1} undrain <name>"
+                + "\n#Show information about connected lavalink nodes, add or remove lavalink nodes, or move all "
+                + "players off a node and stop assigning new ones to it.";
     }
 
     @Nonnull
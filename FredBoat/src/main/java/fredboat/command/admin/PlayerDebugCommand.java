@@ -25,6 +25,8 @@
 
 package fredboat.command.admin;
 
+import fredboat.audio.player.AudioLossCounter;
+import fredboat.audio.player.GuildPlayer;
 import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
 import fredboat.commandmeta.abs.ICommandRestricted;
@@ -64,6 +66,7 @@ public class PlayerDebugCommand extends Command implements ICommandRestricted {
             data.put("isPlaying", player.isPlaying());
             data.put("isPaused", player.isPaused());
             data.put("songCount", player.getTrackCount());
+            data.put("audio", audioHealth(player));
 
             a.put(data);
         });
@@ -78,6 +81,22 @@ public class PlayerDebugCommand extends Command implements ICommandRestricted {
                 });
     }
 
+    //only the seconds that had null packets, to keep the paste small
+    private static JSONObject audioHealth(GuildPlayer player) {
+        AudioLossCounter counter = player.getAudioLossCounter();
+        JSONArray lossySeconds = new JSONArray();
+        for (AudioLossCounter.Second second : counter.getHistory(AudioLossCounter.HISTORY_SECONDS)) {
+            if (second.lost > 0) {
+                lossySeconds.put(new JSONArray().put(second.epochSecond).put(second.sent).put(second.lost));
+            }
+        }
+        return new JSONObject()
+                .put("source", player.getPlayingSourceName())
+                .put("lastMinuteSent", counter.getLastMinuteSuccess())
+                .put("lastMinuteNull", counter.getLastMinuteLoss())
+                .put("lossySeconds", lossySeconds); //[epoch second, sent, null]
+    }
+
     @Nonnull
     @Override
     public String help(@Nonnull Context context) {
@@ -35,10 +35,16 @@ import fredboat.messaging.internal.Context;
 import fredboat.util.TextUtils;
 
 import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 
 public class AudioDebugCommand extends Command implements IInfoCommand {
 
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneOffset.UTC);
+
     public AudioDebugCommand(String name, String... aliases) {
         super(name, aliases);
     }
@@ -63,17 +69,61 @@ public class AudioDebugCommand extends Command implements IInfoCommand {
         if(guildPlayer == null) {
             msg = msg + "No GuildPlayer found.\n";
         } else {
-            int deficit = AudioLossCounter.EXPECTED_PACKET_COUNT_PER_MIN - (guildPlayer.getAudioLossCounter().getLastMinuteLoss() + guildPlayer.getAudioLossCounter().getLastMinuteSuccess());
+            AudioLossCounter counter = guildPlayer.getAudioLossCounter();
+            int deficit = AudioLossCounter.EXPECTED_PACKET_COUNT_PER_MIN - (counter.getLastMinuteLoss() + counter.getLastMinuteSuccess() + counter.getLastMinuteIdle());
 
             msg = msg + "Last minute's packet stats:\n" + TextUtils.asCodeBlock(
-                              "Packets sent:   " + guildPlayer.getAudioLossCounter().getLastMinuteSuccess() + "\n"
-                            + "Null packets:   " + guildPlayer.getAudioLossCounter().getLastMinuteLoss() + "\n"
+                              "Packets sent:   " + counter.getLastMinuteSuccess() + "\n"
+                            + "Null packets:   " + counter.getLastMinuteLoss() + "\n"
                             + "Packet deficit: " + deficit);
+            msg = msg + "Last ten minutes, source " + guildPlayer.getPlayingSourceName() + ":\n"
+                    + TextUtils.asCodeBlock(describeHistory(counter.getHistory(AudioLossCounter.HISTORY_SECONDS)));
         }
 
         context.replyWithName(msg);
 
     }
+
+    //one line per minute, and the worst second if any packets were missing
+    private static String describeHistory(List<AudioLossCounter.Second> history) {
+        if (history.isEmpty()) {
+            return "No packets requested.";
+        }
+        StringBuilder sb = new StringBuilder("Minute    Sent  Null  Loss\n");
+        AudioLossCounter.Second worst = null;
+        long minute = -1;
+        int sent = 0;
+        int lost = 0;
+        for (AudioLossCounter.Second second : history) {
+            if (worst == null || second.lost > worst.lost) {
+                worst = second;
+            }
+            if (second.epochSecond / 60 != minute) {
+                appendMinute(sb, minute, sent, lost);
+                minute = second.epochSecond / 60;
+                sent = 0;
+                lost = 0;
+            }
+            sent += second.sent;
+            lost += second.lost;
+        }
+        appendMinute(sb, minute, sent, lost);
+        if (worst.lost > 0) {
+            sb.append("Worst second: ").append(TIME_FORMAT.format(Instant.ofEpochSecond(worst.epochSecond)))
+                    .append(" with ").append(worst.lost).append(" null packets");
+        }
+        return sb.toString();
+    }
+
+    private static void appendMinute(StringBuilder sb, long minute, int sent, int lost) {
+        if (minute < 0) {
+            return;
+        }
+        double loss = sent + lost == 0 ? 0 : 100.0 * lost / (sent + lost);
+        sb.append(String.format("%s  %5d %5d %4.1f%%%n",
+                TIME_FORMAT.format(Instant.ofEpochSecond(minute * 60)), sent, lost, loss));
+    }
+
     @Nonnull
     @Override
     public String help(@Nonnull Context context) {
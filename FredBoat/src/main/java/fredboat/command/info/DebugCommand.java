@@ -27,6 +27,7 @@ package fredboat.command.info;
 
 import fredboat.audio.player.AudioLossCounter;
 import fredboat.audio.player.GuildPlayer;
+import fredboat.audio.source.CircuitBreaker;
 import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
 import fredboat.commandmeta.abs.ICommandRestricted;
@@ -82,6 +83,7 @@ public class DebugCommand extends Command implements IInfoCommand, ICommandRestr
         //embed = addAudioDebug(embed, player); doesnt work currently
         embed = addLavaLinkDebug(embed, player);
         embed = addPlayerDebug(embed, player);
+        embed = addAudioSourceDebug(embed);
         embed = addVoiceChannelDebug(embed, player);
         embed = addAllTextChannelDebug(embed, player.getGuild());
         embed = gaddllVoiceChannelDebug(embed, player.getGuild());
@@ -99,7 +101,8 @@ public class DebugCommand extends Command implements IInfoCommand, ICommandRestr
     }
 
     private EmbedBuilder addAudioDebug(EmbedBuilder eb, GuildPlayer player) {
-        int deficit = AudioLossCounter.EXPECTED_PACKET_COUNT_PER_MIN - (player.getAudioLossCounter().getLastMinuteLoss() + player.getAudioLossCounter().getLastMinuteSuccess());
+        int deficit = AudioLossCounter.EXPECTED_PACKET_COUNT_PER_MIN - (player.getAudioLossCounter().getLastMinuteLoss() + player.getAudioLossCounter().getLastMinuteSuccess()
+                + player.getAudioLossCounter().getLastMinuteIdle());
 
         String title = "**Audio Debug**";
         String content
@@ -140,6 +143,15 @@ public class DebugCommand extends Command implements IInfoCommand, ICommandRestr
         return eb.addField(title, TextUtils.asCodeBlock(content), false);
     }
 
+    private EmbedBuilder addAudioSourceDebug(EmbedBuilder eb) {
+        String title = "**Audio Source Circuit Breakers**";
+        StringBuilder content = new StringBuilder();
+        for (CircuitBreaker breaker : Launcher.getBotController().getSourceCircuitBreakers().getAll()) {
+            content.append(breaker.describe()).append("\n");
+        }
+        return eb.addField(title, TextUtils.asCodeBlock(content.toString()), false);
+    }
+
     private EmbedBuilder addAllTextChannelDebug(EmbedBuilder eb, Guild guild) {
         String title = "**TextChannel Permissions - Can Talk**";
         StringBuilder content = new StringBuilder();
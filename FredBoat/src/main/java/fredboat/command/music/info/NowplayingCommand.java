@@ -105,7 +105,10 @@ public class NowplayingCommand extends Command implements IMusicCommand {
     }
 
     private EmbedBuilder getYoutubeEmbed(AudioTrackContext atc, GuildPlayer player, YoutubeAudioTrack at) {
-        YoutubeVideo yv = youtubeAPI.getVideoFromID(at.getIdentifier(), true);
+        YoutubeVideo yv = youtubeAPI.getVideo(at.getIdentifier());
+        if (yv == null) {
+            return getDefaultEmbed(atc, player, at); //deleted since it was loaded
+        }
         String timeField = "["
                 + TextUtils.formatTime(atc.getEffectivePosition(player))
                 + "/"
@@ -129,7 +132,7 @@ public class NowplayingCommand extends Command implements IMusicCommand {
 
         eb.setColor(new Color(205, 32, 31))
                 .setThumbnail("https://i.ytimg.com/vi/" + at.getIdentifier() + "/hqdefault.jpg")
-                .setAuthor(yv.getChannelTitle(), yv.getChannelUrl(), yv.getChannelThumbUrl());
+                .setAuthor(yv.getChannelTitle(), yv.getChannelUrl(), youtubeAPI.getChannelThumbnail(yv.getChannelId()));
 
         return eb;
     }
@@ -29,6 +29,7 @@ import fredboat.commandmeta.abs.Command;
 import fredboat.commandmeta.abs.CommandContext;
 import fredboat.config.property.AppConfig;
 import fredboat.feature.metrics.Metrics;
+import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,7 +75,7 @@ public class CommandContextParser {
         }
         // or starts with a custom/default prefix
         else {
-            String prefix = PrefixCommand.giefPrefix(event.getGuild());
+            String prefix = getPrefix(event.getGuild());
             String defaultPrefix = appConfig.getPrefix();
             if (raw.startsWith(prefix)) {
                 input = raw.substring(prefix.length());
@@ -130,4 +131,10 @@ public class CommandContextParser {
         }
     }
 
+    /**
+     * @return the prefix to look for in messages of the provided guild
+     */
+    protected String getPrefix(@Nullable Guild guild) {
+        return PrefixCommand.giefPrefix(guild);
+    }
 }
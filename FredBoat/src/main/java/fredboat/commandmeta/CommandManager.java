@@ -75,7 +75,7 @@ public class CommandManager {
         Member invoker = context.invoker;
 
         totalCommandsExecuted.incrementAndGet();
-        Metrics.commandsExecuted.labels(invoked.getClass().getSimpleName()).inc();
+        Metrics.commandsExecuted.inc(invoked.getClass());
 
         if (FeatureFlags.PATRON_VALIDATION.isActive()) {
             PatronageChecker.Status status = patronageChecker.getStatus(guild);
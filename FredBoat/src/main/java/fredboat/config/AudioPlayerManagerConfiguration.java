@@ -26,7 +26,6 @@ package fredboat.config;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.bandcamp.BandcampAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.beam.BeamAudioSourceManager;
@@ -36,7 +35,10 @@ import com.sedmelluq.discord.lavaplayer.source.twitch.TwitchStreamAudioSourceMan
 import com.sedmelluq.discord.lavaplayer.source.vimeo.VimeoAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
 import fredboat.audio.source.HttpSourceManager;
+import fredboat.audio.source.ItemLoaderPool;
 import fredboat.audio.source.PlaylistImportSourceManager;
+import fredboat.audio.source.PooledAudioPlayerManager;
+import fredboat.audio.source.SourceCircuitBreakers;
 import fredboat.audio.source.SpotifyPlaylistSourceManager;
 import fredboat.config.property.AppConfig;
 import fredboat.config.property.AudioSourcesConfig;
@@ -52,6 +54,7 @@ import org.springframework.context.annotation.Scope;
 
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by napster on 25.02.18.
@@ -173,8 +176,8 @@ public class AudioPlayerManagerConfiguration {
      */
     @Bean(destroyMethod = "")
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
-    public AudioPlayerManager preconfiguredAudioPlayerManager(AppConfig appConfig) {
-        AudioPlayerManager playerManager = new DefaultAudioPlayerManager();
+    public AudioPlayerManager preconfiguredAudioPlayerManager(AppConfig appConfig, ItemLoaderPool itemLoaderPool) {
+        AudioPlayerManager playerManager = new PooledAudioPlayerManager(itemLoaderPool);
 
         //Patrons and development get higher quality
         AudioConfiguration.ResamplingQuality quality = AudioConfiguration.ResamplingQuality.LOW;
@@ -185,7 +188,7 @@ public class AudioPlayerManagerConfiguration {
         playerManager.getConfiguration().setResamplingQuality(quality);
 
         playerManager.setFrameBufferDuration(1000);
-        playerManager.setItemLoaderThreadPoolSize(500);
+        //items are loaded on the shared ItemLoaderPool, the own loader threads of the manager stay unused
 
         return playerManager;
     }
@@ -193,8 +196,9 @@ public class AudioPlayerManagerConfiguration {
 
     @Bean(destroyMethod = "")
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
-    public PlaylistImportSourceManager playlistImportSourceManager(@Qualifier("pasteAudioPlayerManager") AudioPlayerManager audioPlayerManager) {
-        return new PlaylistImportSourceManager(audioPlayerManager);
+    public PlaylistImportSourceManager playlistImportSourceManager(@Qualifier("pasteAudioPlayerManager") AudioPlayerManager audioPlayerManager,
+                                                                   ExecutorService executor, AppConfig appConfig) {
+        return new PlaylistImportSourceManager(audioPlayerManager, executor, appConfig.getPasteImportWindow());
     }
 
     @Bean(destroyMethod = "")
@@ -241,8 +245,11 @@ public class AudioPlayerManagerConfiguration {
     @Bean(destroyMethod = "")
     @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
     public SpotifyPlaylistSourceManager spotifyPlaylistSourceManager(TrackSearcher trackSearcher,
-                                                                     SpotifyAPIWrapper spotifyAPIWrapper) {
-        return new SpotifyPlaylistSourceManager(trackSearcher, spotifyAPIWrapper);
+                                                                     SpotifyAPIWrapper spotifyAPIWrapper,
+                                                                     SourceCircuitBreakers circuitBreakers,
+                                                                     AppConfig appConfig) {
+        return new SpotifyPlaylistSourceManager(trackSearcher, spotifyAPIWrapper, circuitBreakers,
+                appConfig.getSpotifyImportParallelism());
     }
 
     @Bean(destroyMethod = "")
@@ -26,6 +26,7 @@ package fredboat.config;
 
 import com.sedmelluq.discord.lavaplayer.jdaudp.NativeAudioSendFactory;
 import fredboat.audio.player.AudioConnectionFacade;
+import fredboat.audio.player.VoiceConnectionIndex;
 import fredboat.config.property.ConfigPropertiesProvider;
 import fredboat.config.property.Credentials;
 import fredboat.event.EventListenerBoat;
@@ -33,10 +34,12 @@ import fredboat.event.EventLogger;
 import fredboat.event.MusicPersistenceHandler;
 import fredboat.event.ShardReviveHandler;
 import fredboat.feature.DikeSessionController;
+import fredboat.feature.metrics.JdaEntityTracker;
 import fredboat.feature.metrics.JdaEventsMetricsListener;
 import fredboat.feature.metrics.Metrics;
 import fredboat.main.ShutdownHandler;
 import fredboat.metrics.OkHttpEventMetrics;
+import fredboat.util.MemberSearchIndex;
 import fredboat.util.rest.Http;
 import net.dv8tion.jda.bot.sharding.DefaultShardManagerBuilder;
 import net.dv8tion.jda.bot.sharding.ShardManager;
@@ -72,7 +75,8 @@ public class ShardManagerConfiguration {
                                           AudioConnectionFacade audioConnectionFacade, SessionController sessionController,
                                           EventLogger eventLogger, JdaEventsMetricsListener jdaEventsMetricsListener,
                                           ShardReviveHandler shardReviveHandler, MusicPersistenceHandler musicPersistenceHandler,
-                                          ShutdownHandler shutdownHandler) {
+                                          ShutdownHandler shutdownHandler, VoiceConnectionIndex voiceConnectionIndex,
+                                          JdaEntityTracker jdaEntityTracker, MemberSearchIndex memberSearchIndex) {
 
         DefaultShardManagerBuilder builder = new DefaultShardManagerBuilder()
                 .setToken(configProvider.getCredentials().getBotToken())
@@ -91,6 +95,9 @@ public class ShardManagerConfiguration {
                 .addEventListeners(shardReviveHandler)
                 .addEventListeners(musicPersistenceHandler)
                 .addEventListeners(audioConnectionFacade)
+                .addEventListeners(voiceConnectionIndex)
+                .addEventListeners(jdaEntityTracker)
+                .addEventListeners(memberSearchIndex)
                 .setShardsTotal(configProvider.getCredentials().getRecommendedShardCount());
 
         if (!System.getProperty("os.arch").equalsIgnoreCase("arm")
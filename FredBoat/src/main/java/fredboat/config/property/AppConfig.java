@@ -60,6 +60,49 @@ public interface AppConfig {
 
     int getPlayerLimit();
 
+    /**
+     * @return minutes after which idle music players are turned dormant, 0 or less to never turn them dormant
+     */
+    int getPlayerDormancyMinutes();
+
+    /**
+     * @return seconds for which the snapshots of the expensive metrics collectors are reused between scrapes,
+     * 0 or less to collect them on every scrape
+     */
+    int getMetricsSnapshotTtlSeconds();
+
+    /**
+     * @return true if search providers should be raced against each other instead of being tried one after another
+     */
+    boolean isHedgedSearch();
+
+    /**
+     * @return quantile of the recent latencies of a search provider after which the next provider gets started when
+     * hedging searches, for example 0.95
+     */
+    double getSearchHedgeQuantile();
+
+    /**
+     * @return how many tracks of a spotify playlist are searched at the same time when importing it
+     */
+    int getSpotifyImportParallelism();
+
+    /**
+     * @return how many items of a paste playlist are loaded at the same time when importing it
+     */
+    int getPasteImportWindow();
+
+    /**
+     * @return amount of threads shared by all audio player managers for loading items, split by audio source. Raised to
+     * one thread per audio source if lower
+     */
+    int getItemLoaderThreads();
+
+    /**
+     * @return amount of item loads per audio source that may wait for a loader thread before further ones are rejected
+     */
+    int getItemLoaderQueueSize();
+
     /**
      * @return empty string for default status
      */
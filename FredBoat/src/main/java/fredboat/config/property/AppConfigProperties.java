@@ -54,6 +54,14 @@ public class AppConfigProperties implements AppConfig {
 
     //undocumented
     private int playerLimit = -1;
+    private int playerDormancyMinutes = 30;
+    private int metricsSnapshotTtlSeconds = 10;
+    private boolean hedgedSearch = false;
+    private double searchHedgeQuantile = 0.95;
+    private int spotifyImportParallelism = 4;
+    private int pasteImportWindow = 8;
+    private int itemLoaderThreads = 64;
+    private int itemLoaderQueueSize = 500;
 
     private boolean distributionLogged = false;
 
@@ -100,6 +108,46 @@ public class AppConfigProperties implements AppConfig {
         return playerLimit;
     }
 
+    @Override
+    public int getPlayerDormancyMinutes() {
+        return playerDormancyMinutes;
+    }
+
+    @Override
+    public int getMetricsSnapshotTtlSeconds() {
+        return metricsSnapshotTtlSeconds;
+    }
+
+    @Override
+    public boolean isHedgedSearch() {
+        return hedgedSearch;
+    }
+
+    @Override
+    public double getSearchHedgeQuantile() {
+        return searchHedgeQuantile;
+    }
+
+    @Override
+    public int getSpotifyImportParallelism() {
+        return spotifyImportParallelism;
+    }
+
+    @Override
+    public int getPasteImportWindow() {
+        return pasteImportWindow;
+    }
+
+    @Override
+    public int getItemLoaderThreads() {
+        return itemLoaderThreads;
+    }
+
+    @Override
+    public int getItemLoaderQueueSize() {
+        return itemLoaderQueueSize;
+    }
+
     public void setDevelopment(boolean development) {
         this.development = development;
     }
@@ -136,4 +184,36 @@ public class AppConfigProperties implements AppConfig {
     public void setPlayerLimit(int playerLimit) {
         this.playerLimit = playerLimit;
     }
+
+    public void setPlayerDormancyMinutes(int playerDormancyMinutes) {
+        this.playerDormancyMinutes = playerDormancyMinutes;
+    }
+
+    public void setMetricsSnapshotTtlSeconds(int metricsSnapshotTtlSeconds) {
+        this.metricsSnapshotTtlSeconds = metricsSnapshotTtlSeconds;
+    }
+
+    public void setHedgedSearch(boolean hedgedSearch) {
+        this.hedgedSearch = hedgedSearch;
+    }
+
+    public void setSearchHedgeQuantile(double searchHedgeQuantile) {
+        this.searchHedgeQuantile = searchHedgeQuantile;
+    }
+
+    public void setSpotifyImportParallelism(int spotifyImportParallelism) {
+        this.spotifyImportParallelism = spotifyImportParallelism;
+    }
+
+    public void setPasteImportWindow(int pasteImportWindow) {
+        this.pasteImportWindow = pasteImportWindow;
+    }
+
+    public void setItemLoaderThreads(int itemLoaderThreads) {
+        this.itemLoaderThreads = itemLoaderThreads;
+    }
+
+    public void setItemLoaderQueueSize(int itemLoaderQueueSize) {
+        this.itemLoaderQueueSize = itemLoaderQueueSize;
+    }
 }
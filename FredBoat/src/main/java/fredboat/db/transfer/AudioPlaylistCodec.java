@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.db.transfer;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import org.apache.commons.lang3.SerializationUtils;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary format for search result playlists that are stored in the backend.
+ * <p>
+ * Layout of version 1, all numbers big endian:
+ * <pre>
+ * 4 bytes   magic "FBPL"
+ * 1 byte    version
+ * 1 byte    flags: 0x1 is search result, 0x2 has name, 0x4 has selected track
+ * utf       name, if present (see {@link DataOutputStream#writeUTF(String)})
+ * int+bytes selected track, if present
+ * int       track count
+ * int+bytes each track, lavaplayer encoded
+ * </pre>
+ * Decoding only reads the header and the track offsets. Tracks are decoded by lavaplayer when they are requested, so a
+ * caller that needs only the first few tracks does not pay for the rest.
+ * <p>
+ * Data written by {@link #encodeLegacy} (java serialization of {@link SearchResult.SerializableAudioPlaylist}), which
+ * was the only format before, is detected by its stream header and can still be decoded.
+ */
+public class AudioPlaylistCodec {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'F', 'B', 'P', 'L'};
+    //java serialization stream magic
+    private static final byte LEGACY_MAGIC_0 = (byte) 0xAC;
+    private static final byte LEGACY_MAGIC_1 = (byte) 0xED;
+
+    private static final int FLAG_SEARCH_RESULT = 0x1;
+    private static final int FLAG_NAME = 0x2;
+    private static final int FLAG_SELECTED_TRACK = 0x4;
+
+    private AudioPlaylistCodec() {}
+
+    public static byte[] encode(AudioPlayerManager playerManager, AudioPlaylist playlist) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(256 + playlist.getTracks().size() * 256);
+            DataOutputStream out = new DataOutputStream(baos);
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+
+            byte[] selected = encodeTrack(playerManager, playlist.getSelectedTrack());
+            int flags = 0;
+            if (playlist.isSearchResult()) flags |= FLAG_SEARCH_RESULT;
+            if (playlist.getName() != null) flags |= FLAG_NAME;
+            if (selected != null) flags |= FLAG_SELECTED_TRACK;
+            out.writeByte(flags);
+
+            if (playlist.getName() != null) {
+                out.writeUTF(playlist.getName());
+            }
+            if (selected != null) {
+                out.writeInt(selected.length);
+                out.write(selected);
+            }
+
+            //tracks that fail to encode are skipped, so the count is written after collecting them
+            List<byte[]> tracks = new ArrayList<>(playlist.getTracks().size());
+            for (AudioTrack track : playlist.getTracks()) {
+                byte[] encoded = encodeTrack(playerManager, track);
+                if (encoded != null) {
+                    tracks.add(encoded);
+                }
+            }
+            out.writeInt(tracks.size());
+            for (byte[] track : tracks) {
+                out.writeInt(track.length);
+                out.write(track);
+            }
+            out.flush();
+            return baos.toByteArray();
+        } catch (IOException e) {
+            //writing to a byte array does not throw
+            throw new IllegalStateException("Failed to encode playlist", e);
+        }
+    }
+
+    /**
+     * The format used before the introduction of this codec.
+     */
+    public static byte[] encodeLegacy(AudioPlayerManager playerManager, AudioPlaylist playlist) {
+        return SerializationUtils.serialize(new SearchResult.SerializableAudioPlaylist(playerManager, playlist));
+    }
+
+    /**
+     * @param data either format, see {@link #encode} and {@link #encodeLegacy}
+     * @throws IOException if the data is malformed or of an unknown version
+     */
+    public static EncodedAudioPlaylist decode(byte[] data) throws IOException {
+        if (data.length >= 2 && data[0] == LEGACY_MAGIC_0 && data[1] == LEGACY_MAGIC_1) {
+            SearchResult.SerializableAudioPlaylist sap = SerializationUtils.deserialize(data);
+            return sap.toEncoded();
+        }
+        if (data.length < MAGIC.length + 2) {
+            throw new IOException("Encoded playlist is too short: " + data.length + " bytes");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                throw new IOException("Not an encoded playlist");
+            }
+        }
+        int version = data[MAGIC.length];
+        if (version != VERSION) {
+            throw new IOException("Unknown encoded playlist version " + version);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, MAGIC.length + 1,
+                data.length - MAGIC.length - 1));
+        int flags = in.readUnsignedByte();
+        String name = (flags & FLAG_NAME) != 0 ? in.readUTF() : null;
+
+        //the stream reads from the data array itself, so its remaining bytes tell us the current offset into it
+        int selectedOffset = -1;
+        int selectedLength = 0;
+        if ((flags & FLAG_SELECTED_TRACK) != 0) {
+            selectedLength = in.readInt();
+            selectedOffset = data.length - in.available();
+            skipFully(in, selectedLength);
+        }
+
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative track count " + count);
+        }
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = in.readInt();
+            offsets[i] = data.length - in.available();
+            skipFully(in, lengths[i]);
+        }
+
+        return new EncodedAudioPlaylist(name, (flags & FLAG_SEARCH_RESULT) != 0, data, offsets, lengths,
+                selectedOffset, selectedLength);
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        if (length < 0 || in.skipBytes(length) != length) {
+            throw new IOException("Encoded playlist is truncated");
+        }
+    }
+
+    //may return null if the encoding fails or the input is null
+    @Nullable
+    static byte[] encodeTrack(AudioPlayerManager playerManager, @Nullable AudioTrack track) {
+        if (track == null) {
+            return null;
+        }
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            playerManager.encodeTrack(new MessageOutput(baos), track);
+            return baos.toByteArray();
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    //may return null if the decoding fails
+    @Nullable
+    static AudioTrack decodeTrack(AudioPlayerManager playerManager, byte[] data, int offset, int length) {
+        try {
+            return playerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(data, offset, length)))
+                    .decodedTrack;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * An encoded playlist of which the tracks have not been decoded yet.
+     */
+    public static class EncodedAudioPlaylist {
+        @Nullable
+        private final String name;
+        private final boolean isSearchResult;
+        private final byte[] data;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final int selectedOffset;
+        private final int selectedLength;
+
+        EncodedAudioPlaylist(@Nullable String name, boolean isSearchResult, byte[] data, int[] offsets,
+                             int[] lengths, int selectedOffset, int selectedLength) {
+            this.name = name;
+            this.isSearchResult = isSearchResult;
+            this.data = data;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.selectedOffset = selectedOffset;
+            this.selectedLength = selectedLength;
+        }
+
+        public int getTrackCount() {
+            return offsets.length;
+        }
+
+        /**
+         * @return the decoded track at that index, or null if it could not be decoded
+         */
+        @Nullable
+        public AudioTrack decodeTrack(AudioPlayerManager playerManager, int index) {
+            return AudioPlaylistCodec.decodeTrack(playerManager, data, offsets[index], lengths[index]);
+        }
+
+        public AudioPlaylist decode(AudioPlayerManager playerManager) {
+            return decode(playerManager, Integer.MAX_VALUE);
+        }
+
+        /**
+         * @param maxTracks decode only up to this many tracks, any further tracks are left out of the result
+         */
+        public AudioPlaylist decode(AudioPlayerManager playerManager, int maxTracks) {
+            int count = Math.min(maxTracks, offsets.length);
+            List<AudioTrack> tracks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                AudioTrack track = decodeTrack(playerManager, i);
+                if (track != null) {
+                    tracks.add(track);
+                }
+            }
+            AudioTrack selected = selectedOffset < 0 ? null
+                    : AudioPlaylistCodec.decodeTrack(playerManager, data, selectedOffset, selectedLength);
+            return new BasicAudioPlaylist(name, tracks, selected, isSearchResult);
+        }
+    }
+}
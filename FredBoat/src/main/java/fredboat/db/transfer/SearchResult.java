@@ -25,20 +25,14 @@
 package fredboat.db.transfer;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
-import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
-import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
-import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
 import fredboat.definitions.SearchProvider;
-import org.apache.commons.lang3.SerializationUtils;
+import fredboat.feature.togglz.FeatureFlags;
 
 import javax.annotation.Nullable;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -63,7 +57,7 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
                         AudioPlaylist searchResult) {
         this.searchResultId = new SearchResultId(provider, searchTerm);
         this.timestamp = System.currentTimeMillis();
-        this.serializedSearchResult = SerializationUtils.serialize(new SearchResult.SerializableAudioPlaylist(playerManager, searchResult));
+        this.serializedSearchResult = encode(playerManager, searchResult);
     }
 
     @Override
@@ -96,12 +90,31 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
     }
 
     public AudioPlaylist getSearchResult(AudioPlayerManager playerManager) {
-        SerializableAudioPlaylist sap = SerializationUtils.deserialize(serializedSearchResult);
-        return sap.decode(playerManager);
+        return getSearchResult(playerManager, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxTracks only the first maxTracks tracks will be decoded and be part of the returned playlist
+     */
+    public AudioPlaylist getSearchResult(AudioPlayerManager playerManager, int maxTracks) {
+        try {
+            return AudioPlaylistCodec.decode(serializedSearchResult).decode(playerManager, maxTracks);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode search result " + searchResultId, e);
+        }
     }
 
     public void setSearchResult(AudioPlayerManager playerManager, AudioPlaylist searchResult) {
-        this.serializedSearchResult = SerializationUtils.serialize(new SerializableAudioPlaylist(playerManager, searchResult));
+        this.serializedSearchResult = encode(playerManager, searchResult);
+    }
+
+    //keep writing the legacy format until all instances that share the backend are able to read the new one
+    private static byte[] encode(AudioPlayerManager playerManager, AudioPlaylist searchResult) {
+        if (FeatureFlags.BINARY_SEARCH_RESULTS.isActive()) {
+            return AudioPlaylistCodec.encode(playerManager, searchResult);
+        } else {
+            return AudioPlaylistCodec.encodeLegacy(playerManager, searchResult);
+        }
     }
 
     /**
@@ -156,7 +169,11 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
     }
 
 
-    private static class SerializableAudioPlaylist implements Serializable {
+    /**
+     * The format of search results before {@link AudioPlaylistCodec}. Kept to read and write data of that format, do
+     * not change the name or fields of this class.
+     */
+    static class SerializableAudioPlaylist implements Serializable {
         private static final long serialVersionUID = -6823555858689776338L;
 
         @Nullable
@@ -175,22 +192,44 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
         public SerializableAudioPlaylist(AudioPlayerManager playerManager, AudioPlaylist audioPlaylist) {
             this.name = audioPlaylist.getName();
             this.tracks = encodeTracks(playerManager, audioPlaylist.getTracks());
-            this.selectedTrack = encodeTrack(playerManager, audioPlaylist.getSelectedTrack());
+            this.selectedTrack = AudioPlaylistCodec.encodeTrack(playerManager, audioPlaylist.getSelectedTrack());
             this.isSearchResult = audioPlaylist.isSearchResult();
         }
 
-        public AudioPlaylist decode(AudioPlayerManager playerManager) {
-            return new BasicAudioPlaylist(name,
-                    decodeTracks(playerManager, tracks),
-                    decodeTrack(playerManager, selectedTrack),
-                    isSearchResult);
+        AudioPlaylistCodec.EncodedAudioPlaylist toEncoded() {
+            byte[][] input = tracks != null ? tracks : new byte[0][];
+            int size = selectedTrack != null ? selectedTrack.length : 0;
+            for (byte[] track : input) {
+                size += track.length;
+            }
+
+            //lay them out in a single array like the binary format does
+            byte[] data = new byte[size];
+            int[] offsets = new int[input.length];
+            int[] lengths = new int[input.length];
+            int position = 0;
+            for (int i = 0; i < input.length; i++) {
+                System.arraycopy(input[i], 0, data, position, input[i].length);
+                offsets[i] = position;
+                lengths[i] = input[i].length;
+                position += input[i].length;
+            }
+            int selectedOffset = -1;
+            int selectedLength = 0;
+            if (selectedTrack != null) {
+                System.arraycopy(selectedTrack, 0, data, position, selectedTrack.length);
+                selectedOffset = position;
+                selectedLength = selectedTrack.length;
+            }
+            return new AudioPlaylistCodec.EncodedAudioPlaylist(name, isSearchResult, data, offsets, lengths,
+                    selectedOffset, selectedLength);
         }
 
         private static byte[][] encodeTracks(AudioPlayerManager playerManager, List<AudioTrack> tracks) {
             byte[][] encoded = new byte[tracks.size()][];
             int skipped = 0;
             for (int i = 0; i < tracks.size(); i++) {
-                encoded[i] = encodeTrack(playerManager, tracks.get(i));
+                encoded[i] = AudioPlaylistCodec.encodeTrack(playerManager, tracks.get(i));
                 if (encoded[i] == null) {
                     skipped++;
                 }
@@ -207,44 +246,5 @@ public class SearchResult implements TransferObject<SearchResult.SearchResultId>
 
             return result;
         }
-
-        //may return null if the encoding fails or the input is null
-        @Nullable
-        private static byte[] encodeTrack(AudioPlayerManager playerManager, @Nullable AudioTrack track) {
-            if (track == null) {
-                return null;
-            }
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                playerManager.encodeTrack(new MessageOutput(baos), track);
-                return baos.toByteArray();
-            } catch (IOException ignored) {
-                return null;
-            }
-        }
-
-        private static List<AudioTrack> decodeTracks(AudioPlayerManager playerManager, @Nullable byte[][] input) {
-            List<AudioTrack> result = new ArrayList<>();
-            if (input == null) return result;
-
-            for (byte[] track : input) {
-                AudioTrack decoded = decodeTrack(playerManager, track);
-                if (decoded != null) {
-                    result.add(decoded);
-                }
-            }
-            return result;
-        }
-
-        //may return null if the decoding fails or the input is null
-        @Nullable
-        private static AudioTrack decodeTrack(AudioPlayerManager playerManager, @Nullable byte[] input) {
-            if (input == null) return null;
-            ByteArrayInputStream bais = new ByteArrayInputStream(input);
-            try {
-                return playerManager.decodeTrack(new MessageInput(bais)).decodedTrack;
-            } catch (IOException e) {
-                return null;
-            }
-        }
     }
 }
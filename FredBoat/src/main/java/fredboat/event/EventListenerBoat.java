@@ -164,7 +164,7 @@ public class EventListenerBoat extends AbstractEventListener {
             return;
         }
 
-        Metrics.commandsReceived.labels(context.command.getClass().getSimpleName()).inc();
+        Metrics.commandsReceived.inc(context.command.getClass());
 
         //BOT_ADMINs can always use all commands everywhere
         if (!PermsUtil.checkPerms(PermissionLevel.BOT_ADMIN, event.getMember())) {
@@ -192,7 +192,7 @@ public class EventListenerBoat extends AbstractEventListener {
 
         try (//NOTE: Some commands, like ;;mal, run async and will not reflect the real performance of FredBoat
              // their performance should be judged by the totalResponseTime metric instead
-             Summary.Timer ignored = Metrics.executionTime.labels(context.command.getClass().getSimpleName()).startTimer()
+             Summary.Timer ignored = Metrics.executionTimeOf(context.command.getClass()).startTimer()
         ) {
             commandManager.prefixCalled(context);
         }
@@ -271,7 +271,7 @@ public class EventListenerBoat extends AbstractEventListener {
         if (joined.getUser().isBot()
                 && guild.getSelfMember().getUser().getIdLong() != joined.getUser().getIdLong()) return;
 
-        GuildPlayer player = playerRegistry.getExisting(guild);
+        GuildPlayer player = playerRegistry.getLive(guild);
 
         if (player != null
                 && player.isPaused()
@@ -294,7 +294,7 @@ public class EventListenerBoat extends AbstractEventListener {
             return;
 
         Guild guild = channelLeft.getGuild();
-        GuildPlayer player = playerRegistry.getExisting(guild);
+        GuildPlayer player = playerRegistry.getLive(guild);
 
         if (player == null) {
             return;
@@ -27,10 +27,11 @@ package fredboat.feature.metrics;
 import fredboat.agent.StatsAgent;
 import fredboat.audio.player.PlayerRegistry;
 import fredboat.config.property.Credentials;
-import fredboat.jda.GuildProvider;
 import fredboat.jda.ShardProvider;
 import fredboat.util.DiscordUtil;
 import net.dv8tion.jda.core.JDA;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
@@ -47,11 +48,13 @@ import java.util.stream.Collectors;
 @Component
 public class BotMetrics {
 
+    private static final Logger log = LoggerFactory.getLogger(BotMetrics.class);
+
     private final StatsAgent statsAgent;
     private final ShardProvider shardProvider;
     private final Credentials credentials;
-    private final GuildProvider guildProvider;
     private final PlayerRegistry playerRegistry;
+    private final JdaEntityTracker jdaEntityTracker;
     private final JdaEntityStats jdaEntityStatsTotal = new JdaEntityStats();
     private final DockerStats dockerStats = new DockerStats();
     private final MusicPlayerStats musicPlayerStats = new MusicPlayerStats();
@@ -59,12 +62,12 @@ public class BotMetrics {
 
 
     public BotMetrics(StatsAgent statsAgent, ShardProvider shardProvider, Credentials credentials,
-                      GuildProvider guildProvider, PlayerRegistry playerRegistry) {
+                      PlayerRegistry playerRegistry, JdaEntityTracker jdaEntityTracker) {
         this.statsAgent = statsAgent;
         this.shardProvider = shardProvider;
         this.credentials = credentials;
-        this.guildProvider = guildProvider;
         this.playerRegistry = playerRegistry;
+        this.jdaEntityTracker = jdaEntityTracker;
 
         start();
     }
@@ -92,11 +95,11 @@ public class BotMetrics {
     private void start() {
         Supplier<Collection<JDA>> shardsSupplier = () -> shardProvider.streamShards().collect(Collectors.toList());
         try {
-            jdaEntityStatsTotal.count(shardsSupplier);
+            publishJdaEntityStats(shardsSupplier);
         } catch (Exception ignored) {}
 
         statsAgent.addAction(new StatsAgent.ActionAdapter("jda entity stats for fredboat",
-                () -> jdaEntityStatsTotal.count(shardsSupplier)));
+                () -> publishJdaEntityStats(shardsSupplier)));
 
         if (DiscordUtil.isOfficialBot(credentials)) {
             try {
@@ -110,11 +113,21 @@ public class BotMetrics {
         } catch (Exception ignored) {}
         statsAgent.addAction(new StatsAgent.ActionAdapter("music player stats for fredboat",
                 () -> musicPlayerStats.count(playerRegistry)));
+    }
 
-        try {
-            guildSizes.count(guildProvider::streamGuilds);
-        } catch (Exception ignored) {}
-        statsAgent.addAction(new StatsAgent.ActionAdapter("guild sizes for fredboat",
-                () -> guildSizes.count(guildProvider::streamGuilds)));
+    //the counts are kept up to date by JDA events, a full recount only happens after events that the tracker cannot
+    // apply incrementally, and only once all shards are ready
+    private void publishJdaEntityStats(Supplier<Collection<JDA>> shardsSupplier) {
+        if (jdaEntityTracker.isDirty()) {
+            Collection<JDA> shards = shardsSupplier.get();
+            for (JDA shard : shards) {
+                if (shard.getStatus() != JDA.Status.CONNECTED) {
+                    log.info("Skipping recount of JDA entities since not all shards are ready.");
+                    return;
+                }
+            }
+            jdaEntityTracker.rebuildIfDirty(shards);
+        }
+        jdaEntityTracker.publish(jdaEntityStatsTotal, guildSizes);
     }
 }
@@ -24,14 +24,10 @@
 
 package fredboat.feature.metrics;
 
-import net.dv8tion.jda.core.entities.Guild;
-
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Supplier;
-import java.util.stream.Stream;
-
 /**
  * Created by napster on 18.04.18.
+ * <p>
+ * Guilds by member count. Filled by the {@link JdaEntityTracker}.
  */
 public class GuildSizes {
 
@@ -43,39 +39,6 @@ public class GuildSizes {
     protected int bucket100kAndUp;
 
 
-    protected void count(Supplier<Stream<Guild>> guilds) {
-        AtomicInteger b1to10 = new AtomicInteger(0);
-        AtomicInteger b10to100 = new AtomicInteger(0);
-        AtomicInteger b100to1k = new AtomicInteger(0);
-        AtomicInteger b1kto10k = new AtomicInteger(0);
-        AtomicInteger b10kto100k = new AtomicInteger(0);
-        AtomicInteger b100kAndUp = new AtomicInteger(0);
-
-        guilds.get().forEach(guild -> {
-            long size = guild.getMemberCache().size();
-            if (size <= 10) {
-                b1to10.incrementAndGet();
-            } else if (size <= 100) {
-                b10to100.incrementAndGet();
-            } else if (size <= 1000) {
-                b100to1k.incrementAndGet();
-            } else if (size <= 10000) {
-                b1kto10k.incrementAndGet();
-            } else if (size <= 100000) {
-                b10kto100k.incrementAndGet();
-            } else {
-                b100kAndUp.incrementAndGet();
-            }
-        });
-
-        bucket1to10 = b1to10.get();
-        bucket10to100 = b10to100.get();
-        bucket100to1k = b100to1k.get();
-        bucket1kto10k = b1kto10k.get();
-        bucket10kto100k = b10kto100k.get();
-        bucket100kAndUp = b100kAndUp.get();
-    }
-
     public int getBucket1to10() {
         return bucket1to10;
     }
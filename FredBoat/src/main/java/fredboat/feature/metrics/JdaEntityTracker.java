@@ -0,0 +1,362 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.feature.metrics;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
+import net.dv8tion.jda.core.events.channel.category.CategoryCreateEvent;
+import net.dv8tion.jda.core.events.channel.category.CategoryDeleteEvent;
+import net.dv8tion.jda.core.events.channel.text.TextChannelCreateEvent;
+import net.dv8tion.jda.core.events.channel.text.TextChannelDeleteEvent;
+import net.dv8tion.jda.core.events.channel.voice.VoiceChannelCreateEvent;
+import net.dv8tion.jda.core.events.channel.voice.VoiceChannelDeleteEvent;
+import net.dv8tion.jda.core.events.emote.EmoteAddedEvent;
+import net.dv8tion.jda.core.events.emote.EmoteRemovedEvent;
+import net.dv8tion.jda.core.events.guild.GuildAvailableEvent;
+import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.core.events.guild.GuildUnavailableEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberLeaveEvent;
+import net.dv8tion.jda.core.events.role.RoleCreateEvent;
+import net.dv8tion.jda.core.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Keeps counts of JDA entities up to date from JDA events, so that the stats do not require walking all guilds and
+ * users of all shards every few minutes.
+ * <p>
+ * Unique users across shards are counted exactly with a map of user id to the amount of guilds we share with them.
+ * <p>
+ * Guilds becoming (un)available are counted like guilds we join or leave. Events that JDA does not give us a reliable
+ * delta for (ready, reconnects) mark the tracker as dirty, and the next call to {@link #rebuildIfDirty(Collection)}
+ * does a single full recount.
+ * <p>
+ * JDA updates its caches before it dispatches an event, so an event that waited for a recount to finish may already be
+ * part of it. Each guild remembers what it contributed, and events bring that in line with the caches of the guild
+ * instead of blindly adding or subtracting one, so applying an event that was already counted changes nothing.
+ */
+@Component
+public class JdaEntityTracker extends ListenerAdapter {
+
+    private static final Logger log = LoggerFactory.getLogger(JdaEntityTracker.class);
+
+    private final Long2IntOpenHashMap userRefCounts = new Long2IntOpenHashMap();
+    private final Long2ObjectOpenHashMap<GuildCounts> guilds = new Long2ObjectOpenHashMap<>();
+    private final int[] guildSizeBuckets = new int[6];
+    private int textChannels;
+    private int voiceChannels;
+    private int categories;
+    private int emotes;
+    private int roles;
+
+    private volatile boolean dirty = true;
+
+    /**
+     * Recount everything from scratch if events happened that we could not apply incrementally. This is the expensive
+     * operation that this class avoids otherwise, it is expected to happen rarely (startup, shard reconnects).
+     *
+     * @return true if a recount took place
+     */
+    public boolean rebuildIfDirty(Collection<JDA> shards) {
+        if (!dirty) {
+            return false;
+        }
+        synchronized (this) {
+            dirty = false; //events arriving during the recount may set this again
+            userRefCounts.clear();
+            guilds.clear();
+            Arrays.fill(guildSizeBuckets, 0);
+            textChannels = 0;
+            voiceChannels = 0;
+            categories = 0;
+            emotes = 0;
+            roles = 0;
+
+            for (JDA shard : shards) {
+                for (Guild guild : shard.getGuildCache()) {
+                    if (guild.isAvailable()) { //same as if it had become unavailable after the recount
+                        addGuild(guild);
+                    }
+                }
+            }
+            userRefCounts.trim();
+            guilds.trim();
+        }
+        log.info("Recounted JDA entities of {} shards: {} guilds, {} unique users",
+                shards.size(), guilds.size(), userRefCounts.size());
+        return true;
+    }
+
+    /**
+     * Copy the current counts over to the provided stats objects.
+     */
+    public synchronized void publish(JdaEntityStats stats, GuildSizes guildSizes) {
+        stats.uniqueUsersCount = userRefCounts.size();
+        stats.guildsCount = guilds.size();
+        stats.textChannelsCount = textChannels;
+        stats.voiceChannelsCount = voiceChannels;
+        stats.categoriesCount = categories;
+        stats.emotesCount = emotes;
+        stats.rolesCount = roles;
+        stats.counted = true;
+
+        guildSizes.bucket1to10 = guildSizeBuckets[0];
+        guildSizes.bucket10to100 = guildSizeBuckets[1];
+        guildSizes.bucket100to1k = guildSizeBuckets[2];
+        guildSizes.bucket1kto10k = guildSizeBuckets[3];
+        guildSizes.bucket10kto100k = guildSizeBuckets[4];
+        guildSizes.bucket100kAndUp = guildSizeBuckets[5];
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    // ################################################################################
+    // ##                           Events
+    // ################################################################################
+
+    @Override
+    public void onReady(ReadyEvent event) {
+        dirty = true;
+    }
+
+    @Override
+    public void onReconnect(ReconnectedEvent event) {
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void onGuildAvailable(GuildAvailableEvent event) {
+        addGuildIfAbsent(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onGuildUnavailable(GuildUnavailableEvent event) {
+        removeGuildIfPresent(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onGuildJoin(GuildJoinEvent event) {
+        addGuildIfAbsent(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onGuildLeave(GuildLeaveEvent event) {
+        removeGuildIfPresent(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onGuildMemberJoin(GuildMemberJoinEvent event) {
+        GuildCounts counts = guilds.get(event.getGuild().getIdLong());
+        if (counts == null) {
+            return; //guild is not tracked yet, will be picked up by the next rebuild
+        }
+        int members = event.getGuild().getMemberCache().size();
+        if (counts.members < members) { //otherwise the recount already saw this member
+            addUser(event.getUser().getIdLong());
+        }
+        setGuildSize(counts, members);
+    }
+
+    @Override
+    public synchronized void onGuildMemberLeave(GuildMemberLeaveEvent event) {
+        GuildCounts counts = guilds.get(event.getGuild().getIdLong());
+        if (counts == null) {
+            return;
+        }
+        int members = event.getGuild().getMemberCache().size();
+        if (counts.members > members) {
+            removeUser(event.getUser().getIdLong());
+        }
+        setGuildSize(counts, members);
+    }
+
+    @Override
+    public synchronized void onTextChannelCreate(TextChannelCreateEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onTextChannelDelete(TextChannelDeleteEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onVoiceChannelCreate(VoiceChannelCreateEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onVoiceChannelDelete(VoiceChannelDeleteEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onCategoryCreate(CategoryCreateEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onCategoryDelete(CategoryDeleteEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onEmoteAdded(EmoteAddedEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onEmoteRemoved(EmoteRemovedEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onRoleCreate(RoleCreateEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    @Override
+    public synchronized void onRoleDelete(RoleDeleteEvent event) {
+        syncGuild(event.getGuild());
+    }
+
+    // ################################################################################
+    // ##                           Internals, callers hold the lock
+    // ################################################################################
+
+    private void addGuildIfAbsent(Guild guild) {
+        if (!guilds.containsKey(guild.getIdLong())) {
+            addGuild(guild);
+        }
+    }
+
+    private void addGuild(Guild guild) {
+        GuildCounts counts = new GuildCounts();
+        for (Member member : guild.getMemberCache()) {
+            addUser(member.getUser().getIdLong());
+            counts.members++;
+        }
+        guilds.put(guild.getIdLong(), counts);
+        guildSizeBuckets[bucket(counts.members)]++;
+        syncGuild(guild);
+    }
+
+    private void removeGuildIfPresent(Guild guild) {
+        GuildCounts counts = guilds.remove(guild.getIdLong());
+        if (counts == null) {
+            return;
+        }
+        guildSizeBuckets[bucket(counts.members)]--;
+        guild.getMemberCache().forEach(member -> removeUser(member.getUser().getIdLong()));
+        //what the guild contributed, its caches may have changed since
+        textChannels -= counts.textChannels;
+        voiceChannels -= counts.voiceChannels;
+        categories -= counts.categories;
+        emotes -= counts.emotes;
+        roles -= counts.roles;
+    }
+
+    //bring the channel, emote and role counts of a tracked guild in line with its caches
+    private void syncGuild(Guild guild) {
+        GuildCounts counts = guilds.get(guild.getIdLong());
+        if (counts == null) {
+            return; //guild is not tracked yet, will be picked up by the next rebuild
+        }
+        int text = guild.getTextChannelCache().size();
+        int voice = guild.getVoiceChannelCache().size();
+        int categoryCount = guild.getCategoryCache().size();
+        int emoteCount = guild.getEmoteCache().size();
+        int roleCount = guild.getRoleCache().size();
+        textChannels += text - counts.textChannels;
+        voiceChannels += voice - counts.voiceChannels;
+        categories += categoryCount - counts.categories;
+        emotes += emoteCount - counts.emotes;
+        roles += roleCount - counts.roles;
+        counts.textChannels = text;
+        counts.voiceChannels = voice;
+        counts.categories = categoryCount;
+        counts.emotes = emoteCount;
+        counts.roles = roleCount;
+    }
+
+    private void setGuildSize(GuildCounts counts, int members) {
+        guildSizeBuckets[bucket(counts.members)]--;
+        guildSizeBuckets[bucket(members)]++;
+        counts.members = members;
+    }
+
+    private void addUser(long userId) {
+        userRefCounts.addTo(userId, 1);
+    }
+
+    private void removeUser(long userId) {
+        int left = userRefCounts.addTo(userId, -1) - 1;
+        if (left <= 0) {
+            userRefCounts.remove(userId);
+        }
+    }
+
+    //what a guild contributed to the totals when it was last counted
+    private static class GuildCounts {
+        private int members;
+        private int textChannels;
+        private int voiceChannels;
+        private int categories;
+        private int emotes;
+        private int roles;
+    }
+
+    //same buckets as GuildSizes
+    private static int bucket(long size) {
+        if (size <= 10) {
+            return 0;
+        } else if (size <= 100) {
+            return 1;
+        } else if (size <= 1000) {
+            return 2;
+        } else if (size <= 10000) {
+            return 3;
+        } else if (size <= 100000) {
+            return 4;
+        } else {
+            return 5;
+        }
+    }
+}
@@ -39,6 +39,6 @@ public class JdaEventsMetricsListener extends ListenerAdapter {
 
     @Override
     public void onGenericEvent(Event event) {
-        Metrics.jdaEvents.labels(event.getClass().getSimpleName()).inc();
+        Metrics.jdaEvents.inc(event.getClass());
     }
 }
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.feature.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter with a single label, meant for the hot paths where the prometheus {@link io.prometheus.client.Counter}
+ * would build a label list and do a map lookup for every single increment.
+ * <p>
+ * Children are {@link LongAdder}s. When counting by class (commands, events, exceptions), the child is resolved once per
+ * class and cached in a {@link ClassValue}, using the simple name of the class as the label value.
+ * <p>
+ * The amount of distinct label values is capped. Any value beyond that cap is counted under {@link #OVERFLOW_LABEL},
+ * so a bug or an unexpected input can not blow up the amount of time series we expose.
+ */
+public class LabelledCounter extends Collector {
+
+    private static final Logger log = LoggerFactory.getLogger(LabelledCounter.class);
+
+    public static final String OVERFLOW_LABEL = "other";
+
+    private final String name;
+    private final String help;
+    private final List<String> labelNames;
+    private final int maxLabelValues;
+    private final Map<String, LongAdder> children = new ConcurrentHashMap<>();
+    private final LongAdder overflow = new LongAdder();
+    private volatile boolean overflowLogged = false;
+
+    private final ClassValue<LongAdder> byClass = new ClassValue<LongAdder>() {
+        @Override
+        protected LongAdder computeValue(Class<?> type) {
+            return child(type.getSimpleName());
+        }
+    };
+
+    /**
+     * @param maxLabelValues how many distinct label values this counter will expose at most
+     */
+    public LabelledCounter(String name, String help, String labelName, int maxLabelValues) {
+        this.name = name;
+        this.help = help;
+        this.labelNames = Collections.singletonList(labelName);
+        this.maxLabelValues = maxLabelValues;
+    }
+
+    public void inc(Class<?> clazz) {
+        byClass.get(clazz).increment();
+    }
+
+    public void inc(String labelValue) {
+        child(labelValue).increment();
+    }
+
+    /**
+     * @return the child for the provided label value, or the overflow child if the cap of label values has been reached
+     */
+    public LongAdder child(String labelValue) {
+        LongAdder child = children.get(labelValue);
+        if (child != null) {
+            return child;
+        }
+        if (children.size() >= maxLabelValues) {
+            if (!overflowLogged) {
+                overflowLogged = true;
+                log.warn("Metric {} reached its cap of {} label values, counting {} and any further values as {}",
+                        name, maxLabelValues, labelValue, OVERFLOW_LABEL);
+            }
+            return overflow;
+        }
+        return children.computeIfAbsent(labelValue, __ -> new LongAdder());
+    }
+
+    /**
+     * @return current value of the provided label value, 0 if it has never been counted
+     */
+    public long get(String labelValue) {
+        LongAdder child = children.get(labelValue);
+        return child == null ? 0 : child.sum();
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        CounterMetricFamily family = new CounterMetricFamily(name, help, labelNames);
+        for (Map.Entry<String, LongAdder> entry : children.entrySet()) {
+            family.addMetric(Collections.singletonList(entry.getKey()), entry.getValue().sum());
+        }
+        long overflowed = overflow.sum();
+        if (overflowed > 0) {
+            family.addMetric(Collections.singletonList(OVERFLOW_LABEL), overflowed);
+        }
+        return Collections.singletonList(family);
+    }
+}
@@ -33,6 +33,7 @@ import fredboat.feature.metrics.collectors.GuildSizesCollector;
 import fredboat.feature.metrics.collectors.ShardStatusCollector;
 import fredboat.feature.metrics.collectors.ThreadPoolCollector;
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import io.prometheus.client.Summary;
 import io.prometheus.client.guava.cache.CacheMetricsCollector;
@@ -89,14 +90,19 @@ public class Metrics {
     }
 
 
+    //cap for metrics labelled by the simple names of classes (commands, events, exceptions), see LabelledCounter
+    private static final int MAX_CLASS_LABELS = 500;
+
+
     // ################################################################################
     // ##                              JDA Stats
     // ################################################################################
 
-    public static final Counter jdaEvents = Counter.build()
-            .name("fredboat_jda_events_received_total")
-            .help("All events that JDA provides us with by class")
-            .labelNames("class") //GuildJoinedEvent, MessageReceivedEvent, ReconnectEvent etc
+    public static final LabelledCounter jdaEvents = new LabelledCounter(
+            "fredboat_jda_events_received_total",
+            "All events that JDA provides us with by class",
+            "class", //GuildJoinedEvent, MessageReceivedEvent, ReconnectEvent etc
+            MAX_CLASS_LABELS)
             .register();
 
     public static final Counter successfulRestActions = Counter.build()
@@ -129,10 +135,11 @@ public class Metrics {
             .help("Total messages received by users that are blacklisted. Might include bots.")
             .register();
 
-    public static final Counter commandsRatelimited = Counter.build()
-            .name("fredboat_commands_ratelimited_total")
-            .help("Total ratelimited commands")
-            .labelNames("class") // use the simple name of the command class
+    public static final LabelledCounter commandsRatelimited = new LabelledCounter(
+            "fredboat_commands_ratelimited_total",
+            "Total ratelimited commands",
+            "class", // use the simple name of the command class
+            MAX_CLASS_LABELS)
             .register();
 
 
@@ -149,6 +156,94 @@ public class Metrics {
             .labelNames("source") //cache, youtube, soundcloud etc
             .register();
 
+    public static final Counter searchCacheLookups = Counter.build()
+            .name("fredboat_music_search_cache_lookups_total")
+            .help("Total search result cache lookups by cache tier")
+            .labelNames("tier", "result") //tier: local, backend; result: hit, miss
+            .register();
+
+    public static final Histogram searchProviderDuration = Histogram.build()
+            .name("fredboat_music_search_provider_duration_seconds")
+            .help("How long a completed lavaplayer search of a single provider took")
+            .labelNames("provider") //youtube, soundcloud etc
+            .buckets(.05, .1, .25, .5, 1, 2, 3, 5, 10, 30)
+            .register();
+
+    public static final Counter searchHedges = Counter.build()
+            .name("fredboat_music_search_hedges_total")
+            .help("Total searches of a provider started because the previous provider was slow")
+            .labelNames("provider") //the provider that was started
+            .register();
+
+    public static final Counter requestsCoalesced = Counter.build()
+            .name("fredboat_music_requests_coalesced_total")
+            .help("Total searches and item loads that shared the result of an identical request already in flight")
+            .labelNames("type") //search, load, youtube
+            .register();
+
+    public static final Counter audioSourceCalls = Counter.build()
+            .name("fredboat_audio_source_calls_total")
+            .help("Total searches and item loads per audio source, by outcome")
+            .labelNames("source", "result") //result: success, slow, failure, rejected
+            .register();
+
+    public static final Gauge audioSourceCircuitState = Gauge.build()
+            .name("fredboat_audio_source_circuit_state")
+            .help("State of the circuit breaker of an audio source: 0 closed, 1 half open, 2 open")
+            .labelNames("source")
+            .register();
+
+    public static final Counter audioSourceCircuitTrips = Counter.build()
+            .name("fredboat_audio_source_circuit_trips_total")
+            .help("Total times the circuit breaker of an audio source was opened")
+            .labelNames("source")
+            .register();
+
+    public static final Histogram itemLoadWaitSeconds = Histogram.build()
+            .name("fredboat_music_item_load_wait_seconds")
+            .help("How long item loads waited for a loader thread")
+            .labelNames("source") //youtube, soundcloud, other etc
+            .buckets(.001, .01, .05, .1, .25, .5, 1, 2, 5, 10, 30)
+            .register();
+
+    public static final Gauge itemLoadsQueued = Gauge.build()
+            .name("fredboat_music_item_loads_queued_current")
+            .help("Item loads waiting because their source used up its share of loader threads")
+            .labelNames("source")
+            .register();
+
+    public static final Counter itemLoadsRejected = Counter.build()
+            .name("fredboat_music_item_loads_rejected_total")
+            .help("Total item loads rejected because too many loads of their source were waiting already")
+            .labelNames("source")
+            .register();
+
+    public static final Counter youtubeApiQuota = Counter.build()
+            .name("fredboat_youtube_api_quota_used_total")
+            .help("Estimated quota units used on the YouTube Data API")
+            .labelNames("endpoint") //videos, channels, search
+            .register();
+
+    public static final Histogram youtubeApiBatchSize = Histogram.build()
+            .name("fredboat_youtube_api_batch_size")
+            .help("Amount of ids looked up per YouTube Data API request")
+            .labelNames("endpoint") //videos, channels
+            .buckets(1, 2, 5, 10, 20, 35, 50)
+            .register();
+
+    public static final Histogram audioFrameLossRatio = Histogram.build()
+            .name("fredboat_audio_frame_loss_ratio")
+            .help("Share of the frames of a second that local players were missing while playing a track")
+            .labelNames("source") //lavaplayer source manager names: youtube, soundcloud, http etc
+            .buckets(0, .01, .02, .05, .1, .2, .5, 1)
+            .register();
+
+    public static final Counter lavalinkMigrations = Counter.build()
+            .name("fredboat_lavalink_player_migrations_total")
+            .help("Players that were moved to another lavalink node")
+            .labelNames("reason") //drain, overload
+            .register();
+
     public static final Counter tracksLoaded = Counter.build()
             .name("fredboat_music_tracks_loaded_total")
             .help("Total tracks loaded by the audio loader")
@@ -159,6 +254,21 @@ public class Metrics {
             .help("Total failed track loads by the audio loader")
             .register();
 
+    public static final Counter playersHibernated = Counter.build()
+            .name("fredboat_music_players_hibernated_total")
+            .help("Total idle music players that were turned dormant")
+            .register();
+
+    public static final Counter playersRevived = Counter.build()
+            .name("fredboat_music_players_revived_total")
+            .help("Total dormant music players that were woken up again")
+            .register();
+
+    public static final Counter playerHibernationReclaimedBytes = Counter.build()
+            .name("fredboat_music_player_hibernation_reclaimed_bytes_total")
+            .help("Estimated heap bytes released by turning idle music players dormant")
+            .register();
+
     public static final Counter voiceChannelsCleanedUp = Counter.build()
             .name("fredboat_music_voicechannels_cleanedup_total")
             .help("Total voice channels that were cleaned up by the voice channel agent")
@@ -173,16 +283,18 @@ public class Metrics {
             .labelNames("type") // default, mention, custom
             .register();
 
-    public static final Counter commandsReceived = Counter.build()
-            .name("fredboat_commands_received_total")
-            .help("Total received commands. Some of these might get ratelimited.")
-            .labelNames("class") // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
+    public static final LabelledCounter commandsReceived = new LabelledCounter(
+            "fredboat_commands_received_total",
+            "Total received commands. Some of these might get ratelimited.",
+            "class", // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
+            MAX_CLASS_LABELS)
             .register();
 
-    public static final Counter commandsExecuted = Counter.build()
-            .name("fredboat_commands_executed_total")
-            .help("Total executed commands by class")
-            .labelNames("class") // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
+    public static final LabelledCounter commandsExecuted = new LabelledCounter(
+            "fredboat_commands_executed_total",
+            "Total executed commands by class",
+            "class", // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
+            MAX_CLASS_LABELS)
             .register();
 
     public static final Summary executionTime = Summary.build()//commands execution time, excluding ratelimited ones
@@ -191,6 +303,18 @@ public class Metrics {
             .labelNames("class") // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
             .register();
 
+    //resolves the children of the execution time once per command class
+    private static final ClassValue<Summary.Child> executionTimeChildren = new ClassValue<Summary.Child>() {
+        @Override
+        protected Summary.Child computeValue(Class<?> type) {
+            return executionTime.labels(type.getSimpleName());
+        }
+    };
+
+    public static Summary.Child executionTimeOf(Class<?> commandClass) {
+        return executionTimeChildren.get(commandClass);
+    }
+
     //total commands response time: delta between the message creation times of the triggering command and our answer message
     //this can be slowed down by several factors:
     // - we do slow things while processing the command
@@ -207,16 +331,18 @@ public class Metrics {
             .labelNames("class") // use the simple name of the command class: PlayCommand, DanceCommand, ShardsCommand etc
             .register();
 
-    public static final Counter handledExceptions = Counter.build()
-            .name("fredboat_handled_exceptions_total")
-            .help("Total uncaught exceptions bubbled up by command invocation or other moving parts")
-            .labelNames("class") //class of the exception, messaging exceptions should be summed up into one, as they have their own stat, see below
+    public static final LabelledCounter handledExceptions = new LabelledCounter(
+            "fredboat_handled_exceptions_total",
+            "Total uncaught exceptions bubbled up by command invocation or other moving parts",
+            "class", //class of the exception, messaging exceptions should be summed up into one, as they have their own stat, see below
+            MAX_CLASS_LABELS)
             .register();
 
-    public static final Counter messagingExceptions = Counter.build()
-            .name("fredboat_messaging_exceptions_total")
-            .help("Total messaging exceptions bubbled by command invocation or other moving parts")
-            .labelNames("class") //subclass of the messaging exception
+    public static final LabelledCounter messagingExceptions = new LabelledCounter(
+            "fredboat_messaging_exceptions_total",
+            "Total messaging exceptions bubbled by command invocation or other moving parts",
+            "class", //subclass of the messaging exception
+            MAX_CLASS_LABELS)
             .register();
 
     public static final Counter selectionChoiceChosen = Counter.build()
@@ -33,10 +33,12 @@ public class MusicPlayerStats {
     private boolean counted = false;
     protected long total;
     protected long playing;
+    protected long dormant;
 
     void count(PlayerRegistry playerRegistry) {
         total = playerRegistry.totalCount();
         playing = playerRegistry.playingCount();
+        dormant = playerRegistry.dormantCount();
         counted = true;
     }
 
@@ -56,4 +58,9 @@ public class MusicPlayerStats {
     public long getPlaying() {
         return playing;
     }
+
+    //is 0 while uncalculated
+    public long getDormant() {
+        return dormant;
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.feature.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Enumeration;
+
+/**
+ * Writes metric samples in the OpenMetrics text format. The prometheus client we use only knows the 0.0.4 text format.
+ * <p>
+ * See https://github.com/OpenObservability/OpenMetrics/blob/master/specification/OpenMetrics.md
+ */
+public class OpenMetricsTextFormat {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    public static final String MEDIA_TYPE = "application/openmetrics-text";
+
+    private static final String TOTAL_SUFFIX = "_total";
+
+    private OpenMetricsTextFormat() {}
+
+    public static void write(Writer writer, Enumeration<MetricFamilySamples> mfs) throws IOException {
+        while (mfs.hasMoreElements()) {
+            MetricFamilySamples family = mfs.nextElement();
+            boolean counter = family.type == Collector.Type.COUNTER;
+            //counter families are named without the _total suffix in openmetrics, their samples carry it
+            String familyName = counter && family.name.endsWith(TOTAL_SUFFIX)
+                    ? family.name.substring(0, family.name.length() - TOTAL_SUFFIX.length())
+                    : family.name;
+
+            writer.write("# TYPE ");
+            writer.write(familyName);
+            writer.write(' ');
+            writer.write(typeString(family.type));
+            writer.write('\n');
+
+            writer.write("# HELP ");
+            writer.write(familyName);
+            writer.write(' ');
+            writeEscaped(writer, family.help);
+            writer.write('\n');
+
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (counter && (sample.name.equals(family.name) || sample.name.equals(familyName))) {
+                    writer.write(familyName);
+                    writer.write(TOTAL_SUFFIX);
+                } else {
+                    writer.write(sample.name);
+                }
+                if (!sample.labelNames.isEmpty()) {
+                    writer.write('{');
+                    for (int i = 0; i < sample.labelNames.size(); i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        writer.write(sample.labelNames.get(i));
+                        writer.write("=\"");
+                        writeEscaped(writer, sample.labelValues.get(i));
+                        writer.write('"');
+                    }
+                    writer.write('}');
+                }
+                writer.write(' ');
+                writer.write(Collector.doubleToGoString(sample.value));
+                writer.write('\n');
+            }
+        }
+        writer.write("# EOF\n");
+    }
+
+    private static String typeString(Collector.Type type) {
+        switch (type) {
+            case COUNTER:
+                return "counter";
+            case GAUGE:
+                return "gauge";
+            case SUMMARY:
+                return "summary";
+            case HISTOGRAM:
+                return "histogram";
+            default:
+                return "unknown";
+        }
+    }
+
+    //escapes backslashes, double quotes and line feeds, as required for both help texts and label values
+    private static void writeEscaped(Writer writer, String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+    }
+}
@@ -25,11 +25,11 @@
 
 package fredboat.feature.metrics.collectors;
 
+import fredboat.config.property.AppConfig;
 import fredboat.feature.metrics.BotMetrics;
 import fredboat.feature.metrics.DockerStats;
 import fredboat.feature.metrics.JdaEntityStats;
 import fredboat.feature.metrics.MusicPlayerStats;
-import io.prometheus.client.Collector;
 import io.prometheus.client.CounterMetricFamily;
 import io.prometheus.client.GaugeMetricFamily;
 import org.springframework.stereotype.Component;
@@ -44,17 +44,17 @@ import java.util.List;
  * Collects various FredBoat stats for prometheus
  */
 @Component
-public class FredBoatCollector extends Collector {
+public class FredBoatCollector extends SnapshotCollector {
 
     private final BotMetrics botMetrics;
 
-    public FredBoatCollector(BotMetrics botMetrics) {
-        super();
+    public FredBoatCollector(BotMetrics botMetrics, AppConfig appConfig) {
+        super(appConfig.getMetricsSnapshotTtlSeconds());
         this.botMetrics = botMetrics;
     }
 
     @Override
-    public List<MetricFamilySamples> collect() {
+    protected List<MetricFamilySamples> collectSnapshot() {
 
         List<MetricFamilySamples> mfs = new ArrayList<>();
         //NOTE: shard specific metrics have been disabled, because we were not really using them, but they take up a ton
@@ -91,6 +91,7 @@ public class FredBoatCollector extends Collector {
         if (musicPlayerStats.isCounted()) {
             playersPlaying.addMetric(Arrays.asList("total", "Players"), musicPlayerStats.getPlaying()); //entity could be better named "PlayingPlayers", but dont break existing graphs...besides, players will hopefully one day be stateless entities in the database instead of paused objects in the JVM.
             playersPlaying.addMetric(Arrays.asList("total", "TotalPlayers"), musicPlayerStats.getTotal());
+            playersPlaying.addMetric(Arrays.asList("total", "DormantPlayers"), musicPlayerStats.getDormant());
         }
 
         //docker stats
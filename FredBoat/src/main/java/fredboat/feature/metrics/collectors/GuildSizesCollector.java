@@ -24,8 +24,8 @@
 
 package fredboat.feature.metrics.collectors;
 
+import fredboat.config.property.AppConfig;
 import fredboat.feature.metrics.BotMetrics;
-import io.prometheus.client.Collector;
 import io.prometheus.client.GaugeMetricFamily;
 import org.springframework.stereotype.Component;
 
@@ -37,17 +37,17 @@ import java.util.List;
  * Created by napster on 22.03.18.
  */
 @Component
-public class GuildSizesCollector extends Collector {
+public class GuildSizesCollector extends SnapshotCollector {
 
     private final BotMetrics botMetrics;
 
-    public GuildSizesCollector(BotMetrics botMetrics) {
-        super();
+    public GuildSizesCollector(BotMetrics botMetrics, AppConfig appConfig) {
+        super(appConfig.getMetricsSnapshotTtlSeconds());
         this.botMetrics = botMetrics;
     }
 
     @Override
-    public List<MetricFamilySamples> collect() {
+    protected List<MetricFamilySamples> collectSnapshot() {
         List<MetricFamilySamples> mfs = new ArrayList<>();
         List<String> labelNames = Collections.singletonList("bucket");
 
@@ -24,8 +24,8 @@
 
 package fredboat.feature.metrics.collectors;
 
+import fredboat.config.property.AppConfig;
 import fredboat.jda.ShardProvider;
-import io.prometheus.client.Collector;
 import io.prometheus.client.GaugeMetricFamily;
 import net.dv8tion.jda.core.JDA;
 import org.springframework.stereotype.Component;
@@ -38,17 +38,17 @@ import java.util.List;
  * Created by napster on 19.04.18.
  */
 @Component
-public class ShardStatusCollector extends Collector {
+public class ShardStatusCollector extends SnapshotCollector {
 
     private final ShardProvider shardProvider;
 
-    public ShardStatusCollector(ShardProvider shardProvider) {
-        super();
+    public ShardStatusCollector(ShardProvider shardProvider, AppConfig appConfig) {
+        super(appConfig.getMetricsSnapshotTtlSeconds());
         this.shardProvider = shardProvider;
     }
 
     @Override
-    public List<MetricFamilySamples> collect() {
+    protected List<MetricFamilySamples> collectSnapshot() {
 
         List<MetricFamilySamples> mfs = new ArrayList<>();
         List<String> noLabels = Collections.emptyList();
@@ -61,10 +61,16 @@ public class ShardStatusCollector extends Collector {
                 "Total shards managed by this instance that are connected", noLabels);
         mfs.add(shardsConnected);
 
-        totalShards.addMetric(noLabels, shardProvider.streamShards().count());
-        shardsConnected.addMetric(noLabels, shardProvider.streamShards()
-                .filter(shard -> shard.getStatus() == JDA.Status.CONNECTED)
-                .count());
+        //single pass over the shards
+        long[] counts = new long[2];
+        shardProvider.streamShards().forEach(shard -> {
+            counts[0]++;
+            if (shard.getStatus() == JDA.Status.CONNECTED) {
+                counts[1]++;
+            }
+        });
+        totalShards.addMetric(noLabels, counts[0]);
+        shardsConnected.addMetric(noLabels, counts[1]);
 
         return mfs;
     }
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.feature.metrics.collectors;
+
+import io.prometheus.client.Collector;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A collector that reuses its last snapshot for a while, for collectors that are expensive to run compared to how
+ * often the values they report change. Several prometheus instances scraping us within the ttl share one collection.
+ */
+public abstract class SnapshotCollector extends Collector {
+
+    private final long ttlNanos;
+    private volatile List<MetricFamilySamples> snapshot;
+    private volatile long snapshotTakenAt;
+
+    /**
+     * @param ttlSeconds how long a snapshot is reused, 0 or less to collect on every call
+     */
+    protected SnapshotCollector(int ttlSeconds) {
+        super();
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, ttlSeconds));
+    }
+
+    /**
+     * @return fresh samples. Called at most once per ttl.
+     */
+    protected abstract List<MetricFamilySamples> collectSnapshot();
+
+    @Override
+    public final List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> current = snapshot;
+        if (current != null && System.nanoTime() - snapshotTakenAt < ttlNanos) {
+            return current;
+        }
+        synchronized (this) {
+            //another scrape might have refreshed it while we were waiting
+            current = snapshot;
+            if (current != null && System.nanoTime() - snapshotTakenAt < ttlNanos) {
+                return current;
+            }
+            current = Collections.unmodifiableList(collectSnapshot());
+            snapshotTakenAt = System.nanoTime();
+            snapshot = current;
+            return current;
+        }
+    }
+}
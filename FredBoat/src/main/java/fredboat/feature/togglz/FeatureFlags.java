@@ -41,6 +41,9 @@ public enum FeatureFlags implements Feature {
     @Label("Force soundcloud search instead of youtube")
     FORCE_SOUNDCLOUD_SEARCH,
 
+    @Label("Store search results in the binary format instead of java serialization")
+    BINARY_SEARCH_RESULTS,
+
     ;
 
     public boolean isActive() {
@@ -4,6 +4,7 @@ import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager
 import fredboat.agent.FredBoatAgent
 import fredboat.audio.player.AudioConnectionFacade
 import fredboat.audio.player.PlayerRegistry
+import fredboat.audio.source.SourceCircuitBreakers
 import fredboat.config.property.*
 import fredboat.db.api.GuildConfigService
 import fredboat.db.api.GuildModulesService
@@ -14,6 +15,7 @@ import fredboat.feature.metrics.BotMetrics
 import fredboat.feature.metrics.Metrics
 import fredboat.jda.JdaEntityProvider
 import fredboat.metrics.OkHttpEventMetrics
+import fredboat.util.MemberSearchIndex
 import fredboat.util.ratelimit.Ratelimiter
 import fredboat.util.rest.Http
 import net.dv8tion.jda.bot.sharding.ShardManager
@@ -40,7 +42,9 @@ class BotController(private val configProvider: ConfigPropertiesProvider,
                     val guildConfigService: GuildConfigService,
                     val guildModulesService: GuildModulesService,
                     val guildPermsService: GuildPermsService,
-                    val prefixService: PrefixService) {
+                    val prefixService: PrefixService,
+                    val sourceCircuitBreakers: SourceCircuitBreakers,
+                    val memberSearchIndex: MemberSearchIndex) {
 
     companion object {
         @JvmStatic
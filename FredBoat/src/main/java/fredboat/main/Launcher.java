@@ -3,19 +3,22 @@ package fredboat.main;
 import com.sedmelluq.discord.lavaplayer.tools.PlayerLibrary;
 import fredboat.agent.CarbonitexAgent;
 import fredboat.agent.FredBoatAgent;
+import fredboat.agent.LavalinkRebalanceAgent;
+import fredboat.agent.PlayerHibernationAgent;
 import fredboat.agent.StatsAgent;
 import fredboat.agent.VoiceChannelCleanupAgent;
 import fredboat.audio.player.AudioConnectionFacade;
+import fredboat.audio.player.LavalinkNodeBalancer;
 import fredboat.audio.player.PlayerLimiter;
 import fredboat.audio.player.PlayerRegistry;
 import fredboat.audio.player.VideoSelectionCache;
+import fredboat.audio.player.VoiceConnectionIndex;
 import fredboat.commandmeta.CommandInitializer;
 import fredboat.commandmeta.CommandRegistry;
 import fredboat.config.SentryConfiguration;
 import fredboat.config.property.ConfigPropertiesProvider;
 import fredboat.feature.I18n;
 import fredboat.feature.metrics.BotMetrics;
-import fredboat.jda.GuildProvider;
 import fredboat.jda.ShardProvider;
 import fredboat.util.AppInfo;
 import fredboat.util.GitRepoState;
@@ -76,7 +79,7 @@ public class Launcher implements ApplicationRunner {
     private final TrackSearcher trackSearcher;
     private final VideoSelectionCache videoSelectionCache;
     private final ShardProvider shardProvider;
-    private final GuildProvider guildProvider;
+    private final VoiceConnectionIndex voiceConnectionIndex;
     private final SentryConfiguration sentryConfiguration;
     private final PlayerLimiter playerLimiter;
     private final YoutubeAPI youtubeAPI;
@@ -129,7 +132,7 @@ public class Launcher implements ApplicationRunner {
                     CacheMetricsCollector cacheMetrics, PlayerRegistry playerRegistry,
                     StatsAgent statsAgent, BotMetrics botMetrics, Weather weather,
                     AudioConnectionFacade audioConnectionFacade, TrackSearcher trackSearcher,
-                    VideoSelectionCache videoSelectionCache, ShardProvider shardProvider, GuildProvider guildProvider,
+                    VideoSelectionCache videoSelectionCache, ShardProvider shardProvider, VoiceConnectionIndex voiceConnectionIndex,
                     SentryConfiguration sentryConfiguration, PlayerLimiter playerLimiter, YoutubeAPI youtubeAPI) {
         Launcher.BC = botController;
         this.configProvider = configProvider;
@@ -143,7 +146,7 @@ public class Launcher implements ApplicationRunner {
         this.trackSearcher = trackSearcher;
         this.videoSelectionCache = videoSelectionCache;
         this.shardProvider = shardProvider;
-        this.guildProvider = guildProvider;
+        this.voiceConnectionIndex = voiceConnectionIndex;
         this.sentryConfiguration = sentryConfiguration;
         this.playerLimiter = playerLimiter;
         this.youtubeAPI = youtubeAPI;
@@ -161,12 +164,24 @@ public class Launcher implements ApplicationRunner {
 
         if (!configProvider.getAppConfig().isPatronDistribution()) {
             log.info("Starting VoiceChannelCleanupAgent.");
-            FredBoatAgent.start(new VoiceChannelCleanupAgent(playerRegistry, guildProvider, audioConnectionFacade));
+            FredBoatAgent.start(new VoiceChannelCleanupAgent(playerRegistry, voiceConnectionIndex, audioConnectionFacade));
         } else {
             log.info("Skipped setting up the VoiceChannelCleanupAgent, " +
                     "either running Patron distro or overridden by temp config");
         }
 
+        int dormancyMinutes = configProvider.getAppConfig().getPlayerDormancyMinutes();
+        if (dormancyMinutes > 0) {
+            log.info("Starting PlayerHibernationAgent, idle players will turn dormant after {} minutes.", dormancyMinutes);
+            FredBoatAgent.start(new PlayerHibernationAgent(playerRegistry, dormancyMinutes));
+        }
+
+        LavalinkNodeBalancer nodeBalancer = audioConnectionFacade.getNodeBalancer();
+        if (nodeBalancer != null) {
+            log.info("Starting LavalinkRebalanceAgent.");
+            FredBoatAgent.start(new LavalinkRebalanceAgent(nodeBalancer));
+        }
+
         //Check MAL creds
         executor.submit(this::hasValidMALLogin);
 
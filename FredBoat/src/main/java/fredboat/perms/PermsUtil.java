@@ -36,6 +36,7 @@ import net.dv8tion.jda.core.entities.Role;
 
 import javax.annotation.CheckReturnValue;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * This class provides utility methods for FredBoat's own permission system, **not** the Discord permission system.
@@ -43,15 +44,27 @@ import java.util.List;
 public class PermsUtil {
 
     public static PermissionLevel getPerms(Member member) {
-        if (DiscordUtil.getOwnerId(member.getJDA()) == member.getUser().getIdLong()) {
+        return getPerms(member, DiscordUtil.getOwnerId(member.getJDA()),
+                Launcher.getBotController().getAppConfig().getAdminIds(),
+                () -> Launcher.getBotController().getGuildPermsService().fetchGuildPermissions(member.getGuild()));
+    }
+
+    /**
+     * @param ownerId          id of the owner of the bot
+     * @param adminIds         ids of the users and roles that are bot admins
+     * @param guildPermissions permissions of the guild of the member, only fetched if they need to be looked at
+     */
+    public static PermissionLevel getPerms(Member member, long ownerId, List<Long> adminIds,
+                                           Supplier<GuildPermissions> guildPermissions) {
+        if (ownerId == member.getUser().getIdLong()) {
             return PermissionLevel.BOT_OWNER; // https://fred.moe/Q-EB.png
-        } else if (isBotAdmin(member)) {
+        } else if (isBotAdmin(member, adminIds)) {
             return PermissionLevel.BOT_ADMIN;
         } else if (member.hasPermission(Permission.ADMINISTRATOR)) {
             return PermissionLevel.ADMIN;
         }
 
-        GuildPermissions gp = Launcher.getBotController().getGuildPermsService().fetchGuildPermissions(member.getGuild());
+        GuildPermissions gp = guildPermissions.get();
 
         if (checkList(gp.getAdminList(), member)) return PermissionLevel.ADMIN;
         if (checkList(gp.getDjList(), member)) return PermissionLevel.DJ;
@@ -96,9 +109,9 @@ public class PermsUtil {
     /**
      * returns true if the member is or holds a role defined as admin in the configuration file
      */
-    private static boolean isBotAdmin(Member member) {
+    private static boolean isBotAdmin(Member member, List<Long> adminIds) {
         boolean botAdmin = false;
-        for (long id : Launcher.getBotController().getAppConfig().getAdminIds()) {
+        for (long id : adminIds) {
             Role r = member.getGuild().getRoleById(id);
             if (member.getUser().getIdLong() == id
                     || (r != null && member.getRoles().contains(r))) {
@@ -26,12 +26,14 @@
 package fredboat.util;
 
 import fredboat.commandmeta.abs.CommandContext;
+import fredboat.main.Launcher;
 import net.dv8tion.jda.core.entities.*;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -40,6 +42,8 @@ import java.util.stream.Collectors;
 public class ArgumentUtil {
 
     public static final int FUZZY_RESULT_LIMIT = 10;
+    //the most results a fuzzy search returns, way more than we ever display
+    public static final int FUZZY_SEARCH_CAP = 100;
 
     private ArgumentUtil() {
     }
@@ -95,38 +99,50 @@ public class ArgumentUtil {
         }
     }
 
+    /**
+     * Search the members of a guild by name, tag, nickname and id, see {@link MemberSearchIndex#search}.
+     *
+     * @return at most {@link #FUZZY_SEARCH_CAP} members, best matches first
+     */
     @CheckReturnValue
     public static List<Member> fuzzyMemberSearch(Guild guild, String term, boolean includeBots) {
-        ArrayList<Member> list = new ArrayList<>();
-
-        term = term.toLowerCase();
-
-        for (Member mem : guild.getMembers()) {
-            if ((mem.getUser().getName().toLowerCase() + "#" + mem.getUser().getDiscriminator()).contains(term)
-                    || (mem.getEffectiveName().toLowerCase().contains(term))
-                    || term.contains(mem.getUser().getId())) {
-
-                if (!includeBots && mem.getUser().isBot()) continue;
-                list.add(mem);
-            }
-        }
-
-        return list;
+        return Launcher.getBotController().getMemberSearchIndex().search(guild, term, includeBots, FUZZY_SEARCH_CAP);
     }
 
+    /**
+     * Search the roles of a guild by name and id. Exact matches come first, followed by names starting with the term
+     * and names containing the term.
+     *
+     * @return at most {@link #FUZZY_SEARCH_CAP} roles, best matches first
+     */
     @CheckReturnValue
     public static List<Role> fuzzyRoleSearch(Guild guild, String term) {
-        ArrayList<Role> list = new ArrayList<>();
-
         term = term.toLowerCase();
 
+        //a guild has at most 250 roles, not worth indexing
+        List<List<Role>> byRank = Arrays.asList(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
         for (Role role : guild.getRoles()) {
-            if ((role.getName().toLowerCase()).contains(term)
-                    || term.contains(role.getId())) {
-                list.add(role);
+            String name = role.getName().toLowerCase();
+            if (term.contains(role.getId())) {
+                byRank.get(0).add(role);
+            } else if (name.equals(term)) {
+                byRank.get(1).add(role);
+            } else if (name.startsWith(term)) {
+                byRank.get(2).add(role);
+            } else if (name.contains(term)) {
+                byRank.get(3).add(role);
             }
         }
 
+        List<Role> list = new ArrayList<>();
+        for (List<Role> roles : byRank) {
+            for (Role role : roles) {
+                if (list.size() >= FUZZY_SEARCH_CAP) {
+                    return list;
+                }
+                list.add(role);
+            }
+        }
         return list;
     }
 
@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import fredboat.audio.queue.StreamingAudioPlaylist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lavaplayer related helpers.
+ */
+public class AudioUtil {
+
+    /**
+     * Lavaplayer tracks can only be played once, so a playlist that is handed out to several consumers needs to be
+     * copied for each of them.
+     *
+     * @return a copy of the playlist with cloned tracks. The selected track of the copy is the clone of the selected
+     * track of the template. Streaming playlists are returned as they are, they hand out clones to each additional
+     * subscriber on their own.
+     */
+    public static AudioPlaylist copyOf(AudioPlaylist template) {
+        if (template instanceof StreamingAudioPlaylist) {
+            return template;
+        }
+        List<AudioTrack> tracks = new ArrayList<>(template.getTracks().size());
+        for (AudioTrack track : template.getTracks()) {
+            tracks.add(track.makeClone());
+        }
+        AudioTrack selected = template.getSelectedTrack();
+        if (selected != null) {
+            int index = template.getTracks().indexOf(selected);
+            selected = index >= 0 ? tracks.get(index) : selected.makeClone();
+        }
+        return new BasicAudioPlaylist(template.getName(), tracks, selected, template.isSearchResult());
+    }
+}
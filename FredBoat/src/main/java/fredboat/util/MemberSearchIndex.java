@@ -0,0 +1,381 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import fredboat.util.rest.CacheUtil;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
+import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.core.events.guild.GuildUnavailableEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberLeaveEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberNickChangeEvent;
+import net.dv8tion.jda.core.events.user.UserNameUpdateEvent;
+import net.dv8tion.jda.core.events.user.update.UserUpdateDiscriminatorEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per guild search index of the lowercased names, tags and nicknames of the members, used by the fuzzy member search.
+ * Without it, every search lowercases and concatenates the names of every member of the guild, which are millions
+ * of strings in the largest guilds.
+ * <p>
+ * The index of a guild is built by the first search in it, and afterwards kept up to date by member events. Indices
+ * that have not been searched for a while are dropped. Events that we may have missed member changes during
+ * (reconnects, guilds becoming unavailable) drop the affected indices, they are rebuilt by the next search.
+ * <p>
+ * Names are indexed by their trigrams. A search for a term of at least three chars only looks at the members that
+ * have the rarest trigram of the term in their names, shorter terms look at all members.
+ */
+@Component
+public class MemberSearchIndex extends ListenerAdapter {
+
+    private final Cache<Long, GuildIndex> guilds;
+
+    public MemberSearchIndex(CacheMetricsCollector cacheMetrics) {
+        guilds = CacheBuilder.newBuilder()
+                .recordStats()
+                .expireAfterAccess(30, TimeUnit.MINUTES)
+                .build();
+        cacheMetrics.addCache("memberSearchIndex", guilds);
+    }
+
+    /**
+     * Search the members of a guild by name, tag, nickname and id. Exact matches come first, followed by names
+     * starting with the term and names containing the term, shorter names first.
+     *
+     * @param term  search term, a mention or an id of a member matches too
+     * @param limit the maximum amount of results
+     */
+    public List<Member> search(Guild guild, String term, boolean includeBots, int limit) {
+        GuildIndex index = CacheUtil.getUncheckedUnwrapped(guilds, guild.getIdLong(), () -> GuildIndex.of(guild));
+        List<Entry> found = index.search(term.toLowerCase(), includeBots, limit);
+
+        List<Member> result = new ArrayList<>(found.size());
+        for (Entry entry : found) {
+            Member member = guild.getMemberById(entry.userId);
+            if (member != null) {
+                result.add(member);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onGuildMemberJoin(GuildMemberJoinEvent event) {
+        GuildIndex index = guilds.getIfPresent(event.getGuild().getIdLong());
+        if (index != null) {
+            index.add(event.getMember());
+        }
+    }
+
+    @Override
+    public void onGuildMemberLeave(GuildMemberLeaveEvent event) {
+        GuildIndex index = guilds.getIfPresent(event.getGuild().getIdLong());
+        if (index != null) {
+            index.remove(event.getUser().getIdLong());
+        }
+    }
+
+    @Override
+    public void onGuildMemberNickChange(GuildMemberNickChangeEvent event) {
+        GuildIndex index = guilds.getIfPresent(event.getGuild().getIdLong());
+        if (index != null) {
+            index.add(event.getMember());
+        }
+    }
+
+    @Override
+    public void onUserNameUpdate(UserNameUpdateEvent event) {
+        reindex(event.getUser());
+    }
+
+    //the tag of the user changes along with the discriminator
+    @Override
+    public void onUserUpdateDiscriminator(UserUpdateDiscriminatorEvent event) {
+        reindex(event.getUser());
+    }
+
+    private void reindex(User user) {
+        for (Guild guild : user.getMutualGuilds()) {
+            GuildIndex index = guilds.getIfPresent(guild.getIdLong());
+            Member member = guild.getMember(user);
+            if (index != null && member != null) {
+                index.add(member);
+            }
+        }
+    }
+
+    @Override
+    public void onGuildLeave(GuildLeaveEvent event) {
+        guilds.invalidate(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onGuildUnavailable(GuildUnavailableEvent event) {
+        guilds.invalidate(event.getGuild().getIdLong());
+    }
+
+    @Override
+    public void onReconnect(ReconnectedEvent event) {
+        for (Guild guild : event.getJDA().getGuilds()) {
+            guilds.invalidate(guild.getIdLong());
+        }
+    }
+
+    private static class Entry {
+        private final long userId;
+        private final boolean bot;
+        private final String tag; //name#discriminator
+        private final String effectiveName;
+
+        private Entry(Member member) {
+            this.userId = member.getUser().getIdLong();
+            this.bot = member.getUser().isBot();
+            this.tag = (member.getUser().getName() + "#" + member.getUser().getDiscriminator()).toLowerCase();
+            this.effectiveName = member.getEffectiveName().toLowerCase();
+        }
+
+        //lower is better, -1 if it does not match at all
+        private int rank(String term) {
+            if (effectiveName.equals(term) || tag.equals(term)
+                    || (tag.startsWith(term) && tag.charAt(term.length()) == '#')) {
+                return 1;
+            } else if (effectiveName.startsWith(term) || tag.startsWith(term)) {
+                return 2;
+            } else if (effectiveName.contains(term) || tag.contains(term)) {
+                return 3;
+            }
+            return -1;
+        }
+    }
+
+    private static class Ranked {
+        private final Entry entry;
+        private final int rank;
+
+        private Ranked(Entry entry, int rank) {
+            this.entry = entry;
+            this.rank = rank;
+        }
+
+        private boolean isBetterThan(Ranked other) {
+            if (rank != other.rank) {
+                return rank < other.rank;
+            }
+            return entry.effectiveName.length() < other.entry.effectiveName.length();
+        }
+    }
+
+    private static class GuildIndex {
+        //rebuild the trigram lists once they point to more removed entries than live ones
+        private static final int MIN_REMOVED_FOR_COMPACTION = 1024;
+
+        //slot -> entry, null for removed entries
+        private final List<Entry> entries = new ArrayList<>();
+        private final Long2IntOpenHashMap slotsByUser = new Long2IntOpenHashMap();
+        //trigram -> slots of the entries that contain it, slots of removed entries are skipped during a search
+        private final Long2ObjectOpenHashMap<IntArrayList> trigrams = new Long2ObjectOpenHashMap<>();
+        private int removed = 0;
+
+        private GuildIndex() {
+            slotsByUser.defaultReturnValue(-1);
+        }
+
+        private static GuildIndex of(Guild guild) {
+            GuildIndex index = new GuildIndex();
+            for (Member member : guild.getMembers()) {
+                index.add(member);
+            }
+            return index;
+        }
+
+        private synchronized void add(Member member) {
+            remove(member.getUser().getIdLong());
+            insert(new Entry(member));
+        }
+
+        private synchronized void remove(long userId) {
+            int slot = slotsByUser.remove(userId);
+            if (slot < 0) {
+                return;
+            }
+            entries.set(slot, null);
+            removed++;
+            if (removed > MIN_REMOVED_FOR_COMPACTION && removed > entries.size() / 2) {
+                compact();
+            }
+        }
+
+        private synchronized List<Entry> search(String term, boolean includeBots, int limit) {
+            List<Ranked> top = new ArrayList<>(Math.min(limit, 16));
+
+            //a mention or an id of a member
+            for (long id : parseIds(term)) {
+                int slot = slotsByUser.get(id);
+                if (slot >= 0 && (includeBots || !entries.get(slot).bot)) {
+                    offer(top, new Ranked(entries.get(slot), 0), limit);
+                }
+            }
+
+            IntArrayList candidates = term.length() >= 3 ? rarestTrigram(term) : null;
+            if (candidates != null) {
+                for (int i = 0; i < candidates.size(); i++) {
+                    consider(top, entries.get(candidates.getInt(i)), term, includeBots, limit);
+                }
+            } else if (term.length() < 3) {
+                for (Entry entry : entries) {
+                    consider(top, entry, term, includeBots, limit);
+                }
+            }
+            //else one of the trigrams of the term is in no name at all
+
+            List<Entry> result = new ArrayList<>(top.size());
+            for (Ranked ranked : top) {
+                if (!result.contains(ranked.entry)) { //an id match may be found again by name
+                    result.add(ranked.entry);
+                }
+            }
+            return result;
+        }
+
+        private void consider(List<Ranked> top, Entry entry, String term, boolean includeBots, int limit) {
+            if (entry == null || (!includeBots && entry.bot)) {
+                return;
+            }
+            int rank = entry.rank(term);
+            if (rank >= 0) {
+                offer(top, new Ranked(entry, rank), limit);
+            }
+        }
+
+        //keep the best results, sorted, without ever holding more than the limit
+        private static void offer(List<Ranked> top, Ranked candidate, int limit) {
+            if (top.size() >= limit && !candidate.isBetterThan(top.get(top.size() - 1))) {
+                return;
+            }
+            int i = top.size();
+            while (i > 0 && candidate.isBetterThan(top.get(i - 1))) {
+                i--;
+            }
+            top.add(i, candidate);
+            if (top.size() > limit) {
+                top.remove(top.size() - 1);
+            }
+        }
+
+        //null if the term has a trigram that no name has
+        private IntArrayList rarestTrigram(String term) {
+            IntArrayList rarest = null;
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                IntArrayList slots = trigrams.get(trigram(term, i));
+                if (slots == null) {
+                    return null;
+                }
+                if (rarest == null || slots.size() < rarest.size()) {
+                    rarest = slots;
+                }
+            }
+            return rarest;
+        }
+
+        private void insert(Entry entry) {
+            int slot = entries.size();
+            entries.add(entry);
+            slotsByUser.put(entry.userId, slot);
+            indexTrigrams(entry.tag, slot);
+            indexTrigrams(entry.effectiveName, slot);
+        }
+
+        private void indexTrigrams(String name, int slot) {
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                long trigram = trigram(name, i);
+                IntArrayList slots = trigrams.get(trigram);
+                if (slots == null) {
+                    slots = new IntArrayList(2);
+                    trigrams.put(trigram, slots);
+                }
+                //entries are inserted one after another, so a repeated trigram of this entry is always the last slot
+                if (slots.isEmpty() || slots.getInt(slots.size() - 1) != slot) {
+                    slots.add(slot);
+                }
+            }
+        }
+
+        private void compact() {
+            List<Entry> live = new ArrayList<>(entries.size() - removed);
+            for (Entry entry : entries) {
+                if (entry != null) {
+                    live.add(entry);
+                }
+            }
+            entries.clear();
+            slotsByUser.clear();
+            trigrams.clear();
+            removed = 0;
+            live.forEach(this::insert);
+        }
+
+        private static long trigram(String s, int index) {
+            return ((long) s.charAt(index) << 32) | ((long) s.charAt(index + 1) << 16) | s.charAt(index + 2);
+        }
+
+        //runs of digits that are long enough to be a discord id
+        private static List<Long> parseIds(String term) {
+            List<Long> ids = new ArrayList<>(1);
+            int start = -1;
+            for (int i = 0; i <= term.length(); i++) {
+                char c = i < term.length() ? term.charAt(i) : ' ';
+                boolean digit = c >= '0' && c <= '9';
+                if (digit && start < 0) {
+                    start = i;
+                } else if (!digit && start >= 0) {
+                    if (i - start >= 15 && i - start <= 19) {
+                        try {
+                            ids.add(Long.parseLong(term.substring(start, i)));
+                        } catch (NumberFormatException ignored) {
+                            //19 digits that are out of the range of a long, not an id then
+                        }
+                    }
+                    start = -1;
+                }
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * Collects lookups of single keys that arrive within a short window into one call of a batch loader, for APIs that
+ * accept many keys per request. A batch is sent once the window has passed or once it is full, whatever comes first.
+ * Lookups of a key that is already waiting or in flight share its result.
+ */
+public class MicroBatcher<K, V> {
+
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final Function<List<K>, Map<K, V>> batchLoader;
+    private final IntConsumer onBatch;
+    private final Runnable onShared;
+
+    //all of the below guarded by this
+    private final Map<K, CompletableFuture<V>> futures = new HashMap<>(); //waiting or in flight
+    private Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+
+    /**
+     * @param batchLoader looks up the provided keys. Keys missing from the returned map complete with null.
+     * @param onBatch     called with the size of each batch that is sent
+     * @param onShared    called when a lookup shares the result of another one
+     */
+    public MicroBatcher(int maxBatchSize, long windowMillis, ScheduledExecutorService scheduler, Executor executor,
+                        Function<List<K>, Map<K, V>> batchLoader, IntConsumer onBatch, Runnable onShared) {
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.batchLoader = batchLoader;
+        this.onBatch = onBatch;
+        this.onShared = onShared;
+    }
+
+    /**
+     * @return completes with the value of the key, or null if the batch loader did not return one. Completes
+     * exceptionally if the batch that the key was part of failed.
+     */
+    public CompletableFuture<V> get(K key) {
+        CompletableFuture<V> future;
+        Map<K, CompletableFuture<V>> full = null;
+        synchronized (this) {
+            future = futures.get(key);
+            if (future != null) {
+                onShared.run();
+                return future;
+            }
+            future = new CompletableFuture<>();
+            futures.put(key, future);
+            waiting.put(key, future);
+            if (waiting.size() >= maxBatchSize) {
+                full = takeWaiting();
+            } else if (waiting.size() == 1) {
+                scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            Map<K, CompletableFuture<V>> batch = full;
+            executor.execute(() -> load(batch));
+        }
+        return future;
+    }
+
+    //a flush may hit a batch that was started after the one it was scheduled for, sending that one a bit early is fine
+    private void flush() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            if (waiting.isEmpty()) {
+                return;
+            }
+            batch = takeWaiting();
+        }
+        executor.execute(() -> load(batch));
+    }
+
+    private Map<K, CompletableFuture<V>> takeWaiting() {
+        Map<K, CompletableFuture<V>> batch = waiting;
+        waiting = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void load(Map<K, CompletableFuture<V>> batch) {
+        try {
+            onBatch.accept(batch.size());
+            Map<K, V> result = batchLoader.apply(Collections.unmodifiableList(new ArrayList<>(batch.keySet())));
+            for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+                entry.getValue().complete(result.get(entry.getKey()));
+            }
+        } catch (Throwable t) {
+            for (CompletableFuture<V> future : batch.values()) {
+                future.completeExceptionally(t);
+            }
+        } finally {
+            synchronized (this) {
+                for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+                    futures.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+}
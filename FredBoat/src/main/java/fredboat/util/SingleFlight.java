@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller executes the work, callers arriving while it is in
+ * flight wait for and share its outcome. Nothing is kept after the work completes, this is not a cache.
+ * <p>
+ * If the work of a caller fails because that caller got interrupted or cancelled, the callers waiting for it are not
+ * failed with it: one of them takes over and executes the work itself.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param copier applied to the shared result before handing it to any caller but the one that executed the work,
+     *               for results that are not safe to be used by several callers. Not called for null results.
+     * @param onShared called when this call waited for the work of another caller
+     * @throws Exception whatever the work threw, also rethrown to all waiting callers, unless the caller executing it
+     *                   was interrupted or cancelled
+     */
+    public V call(K key, Callable<V> work, UnaryOperator<V> copier, Runnable onShared) throws Exception {
+        boolean shared = false;
+        while (true) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+            if (running == null) {
+                return lead(key, mine, work);
+            }
+
+            if (!shared) {
+                shared = true;
+                onShared.run();
+            }
+            V result;
+            try {
+                result = running.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Abandoned) {
+                    continue; //the leader gave up, take over or wait for whoever did
+                }
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            return result == null ? null : copier.apply(result);
+        }
+    }
+
+    private V lead(K key, CompletableFuture<V> mine, Callable<V> work) throws Exception {
+        try {
+            V result = work.call();
+            mine.complete(result);
+            return result;
+        } catch (Throwable t) {
+            if (Thread.currentThread().isInterrupted() || t instanceof InterruptedException
+                    || t instanceof CancellationException) {
+                //a failure of this caller, not of the work
+                mine.completeExceptionally(new Abandoned(t));
+            } else {
+                mine.completeExceptionally(t);
+            }
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * @return amount of keys that currently have work in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static class Abandoned extends Exception {
+        private static final long serialVersionUID = 6387130921526372467L;
+
+        Abandoned(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -63,8 +63,10 @@ public class TextUtils {
 
     private static final Pattern TIMESTAMP_PATTERN = Pattern.compile("^(\\d?\\d)(?::([0-5]?\\d))?(?::([0-5]?\\d))?$");
 
-    private static final Collection<Character> BACKTICK = Collections.singleton('`');
-    private static final List<Character> MARKDOWN_CHARS = Arrays.asList('*', '`', '~', '_');
+    //lookup tables of the ascii chars that get a backslash in front of them, anything above is never escaped
+    private static final boolean[] BACKTICK = asciiTable('`');
+    private static final boolean[] MARKDOWN_CHARS = asciiTable('*', '`', '~', '_');
+    private static final boolean[] NO_CHARS = asciiTable();
 
     public static final CharMatcher SPLIT_SELECT_SEPARATOR =
             CharMatcher.whitespace().or(CharMatcher.is(','))
@@ -126,12 +128,12 @@ public class TextUtils {
     public static void handleException(String logMessage, Throwable e, Context context) {
         String label;
         if (e instanceof MessagingException) {
-            Metrics.messagingExceptions.labels(e.getClass().getSimpleName()).inc();
+            Metrics.messagingExceptions.inc(e.getClass());
             label = MessagingException.class.getSimpleName();
         } else {
             label = e.getClass().getSimpleName();
         }
-        Metrics.handledExceptions.labels(label).inc();
+        Metrics.handledExceptions.inc(label);
 
 
         if (e instanceof MessagingException) {
@@ -300,12 +302,22 @@ public class TextUtils {
         return revisedString.toString();
     }
 
+    /**
+     * @return the input with escaped markdown, or the input itself if there is nothing to escape
+     */
     public static String escapeMarkdown(@Nonnull String input) {
-        return escape(input, MARKDOWN_CHARS);
+        return escape(input, MARKDOWN_CHARS, false);
+    }
+
+    /**
+     * Append the input with escaped markdown to the provided builder.
+     */
+    public static StringBuilder escapeMarkdown(@Nonnull String input, @Nonnull StringBuilder out) {
+        return appendEscaped(input, MARKDOWN_CHARS, false, out);
     }
 
     public static String escapeBackticks(@Nonnull String input) {
-        return escape(input, BACKTICK);
+        return escape(input, BACKTICK, false);
     }
 
 
@@ -410,7 +422,16 @@ public class TextUtils {
      */
     @Nonnull
     public static String escapeAndDefuse(@Nonnull String input) {
-        return defuse(escapeMarkdown(input));
+        return escape(input, MARKDOWN_CHARS, true);
+    }
+
+    /**
+     * Append the input with escaped markdown and defused mentions and URLs to the provided builder, see
+     * {@link #escapeAndDefuse(String)}
+     */
+    @Nonnull
+    public static StringBuilder escapeAndDefuse(@Nonnull String input, @Nonnull StringBuilder out) {
+        return appendEscaped(input, MARKDOWN_CHARS, true, out);
     }
 
     /**
@@ -424,18 +445,71 @@ public class TextUtils {
      */
     @Nonnull
     public static String defuse(@Nonnull String input) {
-        return defuseUrls(defuseMentions(input));
+        return escape(input, NO_CHARS, true);
     }
 
-    @Nonnull
-    private static String defuseMentions(@Nonnull String input) {
-        return input.replaceAll("@here", "@" + ZERO_WIDTH_CHAR + "here")
-                .replaceAll("@everyone", "@" + ZERO_WIDTH_CHAR + "everyone");
+    //escaping and defusing in a single pass. most inputs have nothing to escape, those are returned without copying
+    private static String escape(String input, boolean[] toEscape, boolean defuse) {
+        int first = firstChange(input, toEscape, defuse);
+        if (first < 0) {
+            return input;
+        }
+        StringBuilder out = new StringBuilder(input.length() + 16);
+        return appendEscaped(input, first, toEscape, defuse, out).toString();
     }
 
-    @Nonnull
-    private static String defuseUrls(@Nonnull String input) {
-        return input.replaceAll("://", ":" + ZERO_WIDTH_CHAR + "//");
+    private static StringBuilder appendEscaped(String input, boolean[] toEscape, boolean defuse, StringBuilder out) {
+        int first = firstChange(input, toEscape, defuse);
+        if (first < 0) {
+            return out.append(input);
+        }
+        return appendEscaped(input, first, toEscape, defuse, out);
+    }
+
+    private static StringBuilder appendEscaped(String input, int first, boolean[] toEscape, boolean defuse,
+                                               StringBuilder out) {
+        out.append(input, 0, first);
+        for (int i = first; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c < toEscape.length && toEscape[c]) {
+                out.append('\\');
+            }
+            out.append(c);
+            if (defuse && isDefusedAfter(input, i)) {
+                out.append(ZERO_WIDTH_CHAR);
+            }
+        }
+        return out;
+    }
+
+    //index of the first char that needs to be escaped or defused, or -1 if there is none
+    private static int firstChange(String input, boolean[] toEscape, boolean defuse) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if ((c < toEscape.length && toEscape[c]) || (defuse && isDefusedAfter(input, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //whether a zero width char goes after the char at the index: @here, @everyone and ://
+    private static boolean isDefusedAfter(String input, int index) {
+        char c = input.charAt(index);
+        if (c == '@') {
+            return input.startsWith("here", index + 1) || input.startsWith("everyone", index + 1);
+        } else if (c == ':') {
+            return input.startsWith("//", index + 1);
+        }
+        return false;
+    }
+
+    private static boolean[] asciiTable(char... chars) {
+        boolean[] table = new boolean[128];
+        for (char c : chars) {
+            table[c] = true;
+        }
+        return table;
     }
 
     @Nonnull
@@ -123,7 +123,7 @@ public class Ratelimiter {
                     allowed = ratelimit.isAllowed(context, weight, autoBlacklist);
                 }
                 if (!allowed) {
-                    Metrics.commandsRatelimited.labels(command.getClass().getSimpleName()).inc();
+                    Metrics.commandsRatelimited.inc(command.getClass());
                     context.replyWithMention(ratelimit.getMessage().apply(context));
                     return true;
                 }
@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package fredboat.util.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import fredboat.definitions.SearchProvider;
+import fredboat.util.AudioUtil;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process first level cache of search results, in front of the search result cache of the backend.
+ * <p>
+ * Holds already decoded playlists as templates. Each read returns a fresh playlist with cloned tracks, since the
+ * tracks handed out will be played, and lavaplayer tracks can only be played once.
+ * <p>
+ * The cache is bounded by the total amount of tracks held. Entries expire after the default max age of the
+ * {@link TrackSearcher}; callers asking for fresher results get a miss for older entries.
+ */
+@Component
+public class LocalSearchResultCache {
+
+    //decoded tracks take roughly a kilobyte each
+    private static final long MAX_TRACKS = 20000;
+
+    private final Cache<Key, Entry> cache = CacheBuilder.newBuilder()
+            .recordStats()
+            .maximumWeight(MAX_TRACKS)
+            .weigher((Key key, Entry entry) -> entry.playlist.getTracks().size() + 1)
+            .expireAfterWrite(TrackSearcher.DEFAULT_CACHE_MAX_AGE, TimeUnit.MILLISECONDS)
+            .build();
+
+    public LocalSearchResultCache(CacheMetricsCollector cacheMetrics) {
+        cacheMetrics.addCache("localSearchResults", cache);
+    }
+
+    /**
+     * @param maxAgeMillis maximum age of an acceptable result
+     * @return a copy of the cached result that is safe to be used by the caller, or null if there is no cached result
+     * that is recent enough
+     */
+    @Nullable
+    public AudioPlaylist get(SearchProvider provider, String query, long maxAgeMillis) {
+        Entry entry = cache.getIfPresent(new Key(provider, query));
+        if (entry == null || System.currentTimeMillis() - entry.createdAt > maxAgeMillis) {
+            return null;
+        }
+        return AudioUtil.copyOf(entry.playlist);
+    }
+
+    /**
+     * @param createdAt epoch millis of when this search result was retrieved from the search provider
+     */
+    public void put(SearchProvider provider, String query, AudioPlaylist result, long createdAt) {
+        if (result.getTracks().isEmpty()) {
+            return;
+        }
+        //store a copy, the passed in tracks are going to be handed out to the caller
+        cache.put(new Key(provider, query), new Entry(AudioUtil.copyOf(result), createdAt));
+    }
+
+    /**
+     * Normalize a query so that trivially different spellings of a search are treated as the same search.
+     */
+    static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+        private final AudioPlaylist playlist;
+        private final long createdAt;
+
+        private Entry(AudioPlaylist playlist, long createdAt) {
+            this.playlist = playlist;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Normalized (provider, query) pair, so that trivially different spellings of a search share an entry.
+     */
+    private static class Key {
+        private final SearchProvider provider;
+        private final String query;
+
+        private Key(SearchProvider provider, String query) {
+            this.provider = provider;
+            this.query = normalize(query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(provider, query);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return provider == other.provider && query.equals(other.query);
+        }
+    }
+}
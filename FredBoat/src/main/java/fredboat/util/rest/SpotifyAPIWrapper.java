@@ -53,6 +53,7 @@ public class SpotifyAPIWrapper {
     //https://regex101.com/r/FkknVc/1
     private static final Pattern PARAMETER_PATTERN = Pattern.compile("offset=([0-9]*)&limit=([0-9]*)$");
 
+    public static final int PAGE_SIZE = 100;
     private static final String URL_SPOTIFY_API = "https://api.spotify.com";
     private static final String URL_SPOTIFY_AUTHENTICATION_HOST = "https://accounts.spotify.com";
 
@@ -134,64 +135,99 @@ public class SpotifyAPIWrapper {
      * @return a string for each track on the requested playlist, containing track and artist names
      */
     public List<String> getPlaylistTracksSearchTermsBlocking(String userId, String playlistId) throws IOException, JSONException {
+        List<String> list = new ArrayList<>();
+        SearchTermsPage page = getPlaylistTracksSearchTermsPageBlocking(userId, playlistId, 0, PAGE_SIZE);
+        list.addAll(page.getSearchTerms());
+        while (page.hasNext()) {
+            page = getPlaylistTracksSearchTermsPageBlocking(userId, playlistId, page.getNextOffset(), page.getNextLimit());
+            list.addAll(page.getSearchTerms());
+        }
+        return list;
+    }
+
+    /**
+     * @param userId     Spotify user id of the owner of the requested playlist
+     * @param playlistId Spotify playlist identifier
+     * @return a single page of search terms of the requested playlist, see
+     * {@link #getPlaylistTracksSearchTermsBlocking(String, String)}
+     */
+    public SearchTermsPage getPlaylistTracksSearchTermsPageBlocking(String userId, String playlistId, int offset, int limit)
+            throws IOException, JSONException {
         refreshTokenIfNecessary();
 
+        //request a page of tracks
+        JSONObject jsonPage = BotController.Companion.getHTTP().get(URL_SPOTIFY_API + "/v1/users/" + userId + "/playlists/" + playlistId + "/tracks",
+                Http.Params.of(
+                        "offset", Integer.toString(offset),
+                        "limit", Integer.toString(limit)
+                ))
+                .auth("Bearer " + accessToken)
+                .asJson();
+
         //strings on this list will contain name of the track + names of the artists
         List<String> list = new ArrayList<>();
 
-        JSONObject jsonPage = null;
-        //get page, then collect its tracks
-        do {
-            String offset = "0";
-            String limit = "100";
+        //add tracks to our result list
+        // https://developer.spotify.com/web-api/object-model/#paging-object
+        JSONArray jsonTracks = jsonPage.getJSONArray("items");
 
-            //this determines offset and limit on the 2nd+ pass of the do loop
-            if (jsonPage != null) {
-                String nextPageUrl;
-                if (!jsonPage.has("next") || jsonPage.get("next") == JSONObject.NULL) break;
-                nextPageUrl = jsonPage.getString("next");
+        jsonTracks.forEach((jsonPlaylistTrack) -> {
+            try {
+                JSONObject track = ((JSONObject) jsonPlaylistTrack).getJSONObject("track");
+                final StringBuilder trackNameAndArtists = new StringBuilder();
+                trackNameAndArtists.append(track.getString("name"));
 
-                final Matcher m = PARAMETER_PATTERN.matcher(nextPageUrl);
+                track.getJSONArray("artists").forEach((jsonArtist) -> trackNameAndArtists.append(" ")
+                        .append(((JSONObject) jsonArtist).getString("name")));
 
-                if (!m.find()) {
-                    log.debug("Did not find parameter pattern in next page URL provided by Spotify");
-                    break;
-                }
+                list.add(trackNameAndArtists.toString());
+            } catch (Exception e) {
+                log.warn("Could not create track from json, skipping", e);
+            }
+        });
+
+        //this determines offset and limit of the next page
+        int nextOffset = -1;
+        int nextLimit = -1;
+        if (jsonPage.has("next") && jsonPage.get("next") != JSONObject.NULL) {
+            final Matcher m = PARAMETER_PATTERN.matcher(jsonPage.getString("next"));
+            if (m.find()) {
                 //We are trusting Spotify to get their shit together and provide us sane values for these
-                offset = m.group(1);
-                limit = m.group(2);
+                nextOffset = Integer.parseInt(m.group(1));
+                nextLimit = Integer.parseInt(m.group(2));
+            } else {
+                log.debug("Did not find parameter pattern in next page URL provided by Spotify");
             }
+        }
 
-            //request a page of tracks
-            jsonPage = BotController.Companion.getHTTP().get(URL_SPOTIFY_API + "/v1/users/" + userId + "/playlists/" + playlistId + "/tracks",
-                    Http.Params.of(
-                            "offset", offset,
-                            "limit", limit
-                    ))
-                    .auth("Bearer " + accessToken)
-                    .asJson();
+        return new SearchTermsPage(list, nextOffset, nextLimit);
+    }
 
-            //add tracks to our result list
-            // https://developer.spotify.com/web-api/object-model/#paging-object
-            JSONArray jsonTracks = jsonPage.getJSONArray("items");
+    public static class SearchTermsPage {
+        private final List<String> searchTerms;
+        private final int nextOffset;
+        private final int nextLimit;
 
-            jsonTracks.forEach((jsonPlaylistTrack) -> {
-                try {
-                    JSONObject track = ((JSONObject) jsonPlaylistTrack).getJSONObject("track");
-                    final StringBuilder trackNameAndArtists = new StringBuilder();
-                    trackNameAndArtists.append(track.getString("name"));
+        private SearchTermsPage(List<String> searchTerms, int nextOffset, int nextLimit) {
+            this.searchTerms = searchTerms;
+            this.nextOffset = nextOffset;
+            this.nextLimit = nextLimit;
+        }
 
-                    track.getJSONArray("artists").forEach((jsonArtist) -> trackNameAndArtists.append(" ")
-                            .append(((JSONObject) jsonArtist).getString("name")));
+        public List<String> getSearchTerms() {
+            return searchTerms;
+        }
 
-                    list.add(trackNameAndArtists.toString());
-                } catch (Exception e) {
-                    log.warn("Could not create track from json, skipping", e);
-                }
-            });
+        public boolean hasNext() {
+            return nextOffset >= 0;
+        }
 
-        } while (jsonPage.has("next") && jsonPage.get("next") != null);
+        public int getNextOffset() {
+            return nextOffset;
+        }
 
-        return list;
+        public int getNextLimit() {
+            return nextLimit;
+        }
     }
 }
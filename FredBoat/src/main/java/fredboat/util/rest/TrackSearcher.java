@@ -32,12 +32,19 @@ import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import fredboat.audio.source.AudioSource;
+import fredboat.audio.source.CircuitBreaker;
+import fredboat.audio.source.SourceCircuitBreakers;
 import fredboat.config.property.AppConfig;
 import fredboat.db.api.SearchResultService;
 import fredboat.db.transfer.SearchResult;
 import fredboat.definitions.SearchProvider;
 import fredboat.feature.metrics.Metrics;
 import fredboat.feature.togglz.FeatureFlags;
+import fredboat.util.AudioUtil;
+import fredboat.util.LatencyWindow;
+import fredboat.util.SingleFlight;
+import io.prometheus.client.Collector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -47,9 +54,14 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -60,27 +72,35 @@ public class TrackSearcher {
     public static final long DEFAULT_CACHE_MAX_AGE = TimeUnit.HOURS.toMillis(48);
     public static final String PUNCTUATION_REGEX = "[.,/#!$%^&*;:{}=\\-_`~()\"\']";
     private static final int DEFAULT_TIMEOUT = 3000;
+    private static final long MIN_HEDGE_DELAY = 100;
 
     private static final Logger log = LoggerFactory.getLogger(TrackSearcher.class);
 
-    //give youtube a break if we get flagged and keep getting 503s
-    private static final long DEFAULT_YOUTUBE_COOLDOWN = TimeUnit.MINUTES.toMillis(10); // 10 minutes
-    private static long youtubeCooldownUntil;
-
     private final AudioPlayerManager audioPlayerManager;
     private final YoutubeAPI youtubeAPI;
     private final SearchResultService searchResultService;
     private final AppConfig appConfig;
     private final ExecutorService executor;
+    private final LocalSearchResultCache localCache;
+    private final SourceCircuitBreakers circuitBreakers;
+    private final Map<SearchProvider, LatencyWindow> providerLatencies = new EnumMap<>(SearchProvider.class);
+    //concurrent searches of the same provider for the same query share a single search
+    private final SingleFlight<String, AudioPlaylist> inFlightSearches = new SingleFlight<>();
 
     public TrackSearcher(@Qualifier("searchAudioPlayerManager") AudioPlayerManager audioPlayerManager,
                          YoutubeAPI youtubeAPI, SearchResultService searchResultService, AppConfig appConfig,
-                         ExecutorService executor) {
+                         ExecutorService executor, LocalSearchResultCache localCache,
+                         SourceCircuitBreakers circuitBreakers) {
         this.audioPlayerManager = audioPlayerManager;
         this.youtubeAPI = youtubeAPI;
         this.searchResultService = searchResultService;
         this.appConfig = appConfig;
         this.executor = executor;
+        this.localCache = localCache;
+        this.circuitBreakers = circuitBreakers;
+        for (SearchProvider provider : SearchProvider.values()) {
+            providerLatencies.put(provider, new LatencyWindow(200));
+        }
     }
 
     public AudioPlaylist searchForTracks(String query, List<SearchProvider> providers) throws SearchingException {
@@ -92,7 +112,8 @@ public class TrackSearcher {
      * @param cacheMaxAge   Age of acceptable results from cache.
      * @param timeoutMillis How long to wait for each lavaplayer search to answer
      * @param providers     Providers that shall be used for the search. They will be used in the order they are provided, the
-     *                      result of the first successful one will be returned
+     *                      result of the first successful one will be returned. With hedged searches enabled, slow
+     *                      providers do not block the next ones from being started, see {@link #hedgedSearch}
      * @return The result of the search, or an empty list.
      * @throws SearchingException If none of the search providers could give us a result, and there was at least one SearchingException thrown by them
      */
@@ -109,60 +130,100 @@ public class TrackSearcher {
             provs.addAll(providers);
         }
 
+        if (appConfig.isHedgedSearch() && provs.size() > 1) {
+            return hedgedSearch(query, cacheMaxAge, timeoutMillis, provs);
+        }
+
         SearchingException searchingException = null;
 
         for (SearchProvider provider : provs) {
-            //1. cache
-            AudioPlaylist cacheResult = fromCache(provider, query, cacheMaxAge);
-            if (cacheResult != null && !cacheResult.getTracks().isEmpty()) {
-                log.debug("Loaded search result {} {} from cache", provider, query);
-                Metrics.searchHits.labels("cache").inc();
-                return cacheResult;
+            try {
+                AudioPlaylist result = searchProvider(provider, query, cacheMaxAge, timeoutMillis);
+                if (result != null) {
+                    return result;
+                }
+            } catch (SearchCancelledException e) {
+                throw e;
+            } catch (SearchingException e) {
+                searchingException = e;
             }
+        }
 
-            //2. lavaplayer todo break up this beautiful construction of ifs and exception handling in a better readable one?
-            if (provider != SearchProvider.YOUTUBE || System.currentTimeMillis() > youtubeCooldownUntil) {
-                try {
-                    AudioPlaylist lavaplayerResult = new SearchResultHandler()
-                            .searchSync(audioPlayerManager, provider, query, timeoutMillis);
-                    if (!lavaplayerResult.getTracks().isEmpty()) {
-                        log.debug("Loaded search result {} {} from lavaplayer", provider, query);
-                        // got a search result? cache and return it
-                        executor.execute(() -> searchResultService
-                                .mergeSearchResult(new SearchResult(audioPlayerManager, provider, query, lavaplayerResult)));
-                        Metrics.searchHits.labels("lavaplayer-" + provider.name().toLowerCase()).inc();
-                        return lavaplayerResult;
-                    }
-                } catch (Http503Exception e) {
-                    if (provider == SearchProvider.YOUTUBE) {
-                        log.warn("Got a 503 from Youtube. Not hitting it with searches it for {} minutes", TimeUnit.MILLISECONDS.toMinutes(DEFAULT_YOUTUBE_COOLDOWN));
-                        youtubeCooldownUntil = System.currentTimeMillis() + DEFAULT_YOUTUBE_COOLDOWN;
+        return noResult(query, searchingException);
+    }
+
+    /**
+     * Start with the first provider. Whenever the most recently started provider has not answered within its usual
+     * latency (see {@link AppConfig#getSearchHedgeQuantile()}), or answered without a result, the next provider is
+     * started in parallel. The first non-empty result is returned, the results of searches still running at that point
+     * are ignored.
+     *
+     * @throws SearchCancelledException if the calling thread is interrupted while waiting for the searches
+     */
+    private AudioPlaylist hedgedSearch(String query, long cacheMaxAge, int timeoutMillis, List<SearchProvider> provs)
+            throws SearchingException {
+        CompletionService<AudioPlaylist> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<AudioPlaylist>> futures = new ArrayList<>(provs.size());
+        SearchingException searchingException = null;
+        int finished = 0;
+
+        try {
+            while (finished < provs.size()) {
+                if (futures.size() == finished) { //nothing running, start the next provider right away
+                    SearchProvider provider = provs.get(futures.size());
+                    futures.add(completionService.submit(() -> searchProvider(provider, query, cacheMaxAge, timeoutMillis)));
+                }
+
+                Future<AudioPlaylist> done;
+                if (futures.size() < provs.size()) {
+                    SearchProvider latest = provs.get(futures.size() - 1);
+                    done = completionService.poll(hedgeDelayMillis(latest, timeoutMillis), TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        SearchProvider provider = provs.get(futures.size());
+                        log.debug("Search of {} for {} is slow, hedging with {}", latest, query, provider);
+                        Metrics.searchHedges.labels(provider.name().toLowerCase()).inc();
+                        futures.add(completionService.submit(() -> searchProvider(provider, query, cacheMaxAge, timeoutMillis)));
+                        continue;
                     }
-                    searchingException = e;
-                } catch (SearchingException e) {
-                    searchingException = e;
+                } else {
+                    done = completionService.take();
                 }
-            }
 
-            //3. optional: youtube api
-            if (provider == SearchProvider.YOUTUBE
-                    && (appConfig.isPatronDistribution() || appConfig.isDevDistribution())) {
+                finished++;
                 try {
-                    AudioPlaylist youtubeApiResult = youtubeAPI.search(query, MAX_RESULTS, audioPlayerManager.source(YoutubeAudioSourceManager.class));
-                    if (!youtubeApiResult.getTracks().isEmpty()) {
-                        log.debug("Loaded search result {} {} from Youtube API", provider, query);
-                        // got a search result? cache and return it
-                        executor.execute(() -> searchResultService
-                                .mergeSearchResult(new SearchResult(audioPlayerManager, provider, query, youtubeApiResult)));
-                        Metrics.searchHits.labels("youtube-api").inc();
-                        return youtubeApiResult;
+                    AudioPlaylist result = done.get();
+                    if (result != null) {
+                        return result;
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof SearchingException) {
+                        searchingException = (SearchingException) e.getCause();
+                    } else {
+                        searchingException = new SearchingException("Search failed for " + query, e);
                     }
-                } catch (SearchingException e) {
-                    searchingException = e;
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            //same as a cancelled sequential search, nobody is waiting for a result, empty or not
+            throw new SearchCancelledException("Hedged search for " + query + " was interrupted", e);
+        } finally {
+            //the losers. not interrupted: they may be leading a search other callers are waiting for, see searchProvider
+            for (Future<AudioPlaylist> future : futures) {
+                future.cancel(false);
+            }
         }
 
+        return noResult(query, searchingException);
+    }
+
+    private long hedgeDelayMillis(SearchProvider provider, int timeoutMillis) {
+        LatencyWindow latencies = providerLatencies.get(provider);
+        long delay = latencies.percentile(appConfig.getSearchHedgeQuantile(), timeoutMillis / 2);
+        return Math.max(MIN_HEDGE_DELAY, Math.min(timeoutMillis, delay));
+    }
+
+    private AudioPlaylist noResult(String query, @Nullable SearchingException searchingException) throws SearchingException {
         //did we run into searching exceptions that made us end up here?
         if (searchingException != null) {
             Metrics.searchHits.labels("exception").inc();
@@ -174,16 +235,143 @@ public class TrackSearcher {
     }
 
     /**
+     * Search a single provider: cache, then lavaplayer, then optionally the youtube api. Callers searching for the
+     * same query while a search is in flight wait for that one and get a copy of its result, using its cache max age
+     * and timeout.
+     *
+     * @return a non-empty search result, or null if there was none
+     * @throws SearchingException if there was no result, and searching ran into an exception
+     */
+    @Nullable
+    private AudioPlaylist searchProvider(SearchProvider provider, String query, long cacheMaxAge, int timeoutMillis)
+            throws SearchingException {
+        try {
+            String key = provider.name() + ":" + LocalSearchResultCache.normalize(query);
+            return inFlightSearches.call(key,
+                    () -> doSearchProvider(provider, query, cacheMaxAge, timeoutMillis),
+                    AudioUtil::copyOf,
+                    () -> Metrics.requestsCoalesced.labels("search").inc());
+        } catch (SearchingException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SearchingException("Failed to search provider " + provider + " for query " + query, e);
+        }
+    }
+
+    @Nullable
+    private AudioPlaylist doSearchProvider(SearchProvider provider, String query, long cacheMaxAge, int timeoutMillis)
+            throws SearchingException {
+        SearchingException searchingException = null;
+
+        //1. cache
+        AudioPlaylist cacheResult = fromCache(provider, query, cacheMaxAge);
+        if (cacheResult != null && !cacheResult.getTracks().isEmpty()) {
+            log.debug("Loaded search result {} {} from cache", provider, query);
+            Metrics.searchHits.labels("cache").inc();
+            return cacheResult;
+        }
+
+        //2. lavaplayer todo break up this beautiful construction of ifs and exception handling in a better readable one?
+        //the provider lavaplayer is actually going to search, its breaker and latencies are the ones that count
+        SearchProvider searched = FeatureFlags.FORCE_SOUNDCLOUD_SEARCH.isActive()
+                ? SearchProvider.SOUNDCLOUD
+                : provider;
+        CircuitBreaker breaker = circuitBreakers.get(AudioSource.of(searched));
+        if (breaker.tryAcquire()) {
+            long started = System.currentTimeMillis();
+            try {
+                AudioPlaylist lavaplayerResult = new SearchResultHandler()
+                        .searchSync(audioPlayerManager, searched, query, timeoutMillis);
+                long millis = System.currentTimeMillis() - started;
+                breaker.onSuccess(millis);
+                recordLatency(searched, millis);
+                if (!lavaplayerResult.getTracks().isEmpty()) {
+                    log.debug("Loaded search result {} {} from lavaplayer", provider, query);
+                    // got a search result? cache and return it
+                    localCache.put(provider, query, lavaplayerResult, System.currentTimeMillis());
+                    executor.execute(() -> searchResultService
+                            .mergeSearchResult(new SearchResult(audioPlayerManager, provider, query, lavaplayerResult)));
+                    Metrics.searchHits.labels("lavaplayer-" + provider.name().toLowerCase()).inc();
+                    return lavaplayerResult;
+                }
+            } catch (Http503Exception e) {
+                //we got flagged, give it a break right away
+                breaker.trip("got a 503 while searching");
+                searchingException = e;
+            } catch (SearchCancelledException e) {
+                //we gave up on it, that is not the fault of the provider. and there is no one left to search for
+                breaker.onCancelled();
+                throw e;
+            } catch (SearchingException e) {
+                breaker.onFailure();
+                searchingException = e;
+            }
+        } else {
+            log.debug("Not searching {} for {}, its circuit breaker is open", searched, query);
+        }
+
+        //3. optional: youtube api
+        if (provider == SearchProvider.YOUTUBE
+                && (appConfig.isPatronDistribution() || appConfig.isDevDistribution())) {
+            try {
+                AudioPlaylist youtubeApiResult = youtubeAPI.search(query, MAX_RESULTS, audioPlayerManager.source(YoutubeAudioSourceManager.class));
+                if (!youtubeApiResult.getTracks().isEmpty()) {
+                    log.debug("Loaded search result {} {} from Youtube API", provider, query);
+                    // got a search result? cache and return it
+                    localCache.put(provider, query, youtubeApiResult, System.currentTimeMillis());
+                    executor.execute(() -> searchResultService
+                            .mergeSearchResult(new SearchResult(audioPlayerManager, provider, query, youtubeApiResult)));
+                    Metrics.searchHits.labels("youtube-api").inc();
+                    return youtubeApiResult;
+                }
+            } catch (SearchingException e) {
+                searchingException = e;
+            }
+        }
+
+        if (searchingException != null) {
+            throw searchingException;
+        }
+        return null;
+    }
+
+    /**
+     * Only completed lavaplayer searches are recorded: cache hits, coalesced waits and failed searches would skew the
+     * latencies the hedge delay is derived from.
+     */
+    private void recordLatency(SearchProvider provider, long millis) {
+        providerLatencies.get(provider).record(millis);
+        Metrics.searchProviderDuration.labels(provider.name().toLowerCase())
+                .observe(millis / Collector.MILLISECONDS_PER_SECOND);
+    }
+
+    /**
+     * Looks up the local cache first, then the search result cache of the backend.
+     *
      * @param provider   the search provider that shall be used for this search
      * @param searchTerm the searchTerm to search for
      */
     @Nullable
     private AudioPlaylist fromCache(SearchProvider provider, String searchTerm, long cacheMaxAge) {
+        AudioPlaylist local = localCache.get(provider, searchTerm, cacheMaxAge);
+        if (local != null) {
+            Metrics.searchCacheLookups.labels("local", "hit").inc();
+            return local;
+        }
+        Metrics.searchCacheLookups.labels("local", "miss").inc();
+
         try {
             SearchResult.SearchResultId id = new SearchResult.SearchResultId(provider, searchTerm);
-            return searchResultService.getSearchResult(id, cacheMaxAge)
-                    .map(searchResult -> searchResult.getSearchResult(audioPlayerManager))
-                    .orElse(null);
+            SearchResult searchResult = searchResultService.getSearchResult(id, cacheMaxAge).orElse(null);
+            if (searchResult == null) {
+                Metrics.searchCacheLookups.labels("backend", "miss").inc();
+                return null;
+            }
+            Metrics.searchCacheLookups.labels("backend", "hit").inc();
+            //nothing uses more than the first few results, so don't bother decoding the others
+            AudioPlaylist result = searchResult.getSearchResult(audioPlayerManager, MAX_RESULTS);
+            localCache.put(provider, searchTerm, result, searchResult.getTimestamp());
+            return result;
         } catch (Exception e) {
             //could be a database issue, could be a serialization issue. better to catch them all here and "orderly" return
             log.warn("Could not retrieve cached search result from database.", e);
@@ -216,6 +404,17 @@ public class TrackSearcher {
         }
     }
 
+    /**
+     * Thrown when the thread searching was interrupted. Not a failure of the provider.
+     */
+    public static class SearchCancelledException extends SearchingException {
+        private static final long serialVersionUID = 4150542474011954372L;
+
+        public SearchCancelledException(String message, Exception cause) {
+            super(message, cause);
+        }
+    }
+
     private static class SearchResultHandler implements AudioLoadResultHandler {
 
         Exception exception;
@@ -225,19 +424,16 @@ public class TrackSearcher {
          * @return The result of the search (which may be empty but not null).
          */
         @Nonnull
-        AudioPlaylist searchSync(AudioPlayerManager audioPlayerManager, SearchProvider provider, String query, int timeoutMillis)
-                throws SearchingException {
-            SearchProvider searchProvider = provider;
-            if (FeatureFlags.FORCE_SOUNDCLOUD_SEARCH.isActive()) {
-                searchProvider = SearchProvider.SOUNDCLOUD;
-            }
-
+        AudioPlaylist searchSync(AudioPlayerManager audioPlayerManager, SearchProvider searchProvider, String query,
+                                 int timeoutMillis) throws SearchingException {
             log.debug("Searching {} for {}", searchProvider, query);
             try {
                 audioPlayerManager.loadItem(searchProvider.getPrefix() + query, this)
                         .get(timeoutMillis, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                throw new SearchCancelledException(String.format("Searching provider %s for %s was interrupted",
+                        searchProvider.name(), query), e);
             } catch (ExecutionException e) {
                 exception = e;
             } catch (TimeoutException e) {
@@ -25,12 +25,17 @@
 
 package fredboat.util.rest;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
 import fredboat.config.property.Credentials;
+import fredboat.feature.metrics.Metrics;
 import fredboat.main.BotController;
+import fredboat.util.MicroBatcher;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -38,81 +43,276 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Calls to the YouTube Data API. Video metadata and channel thumbnails are cached, including the ids of videos that
+ * do not exist, to keep the latency of commands like ;;np down and to save API quota. Lookups of uncached ids that
+ * arrive within a few milliseconds are sent as a single request, lookups of the same id share their result.
+ */
 @Component
 public class YoutubeAPI {
 
     private static final Logger log = LoggerFactory.getLogger(YoutubeAPI.class);
 
-    public static final String YOUTUBE_VIDEO = "https://www.googleapis.com/youtube/v3/videos?part=contentDetails,snippet&fields=items(id,snippet/title,contentDetails/duration)";
     public static final String YOUTUBE_VIDEO_VERBOSE = "https://www.googleapis.com/youtube/v3/videos?part=contentDetails,snippet";
     public static final String YOUTUBE_SEARCH = "https://www.googleapis.com/youtube/v3/search?part=snippet";
-    public static final String YOUTUBE_CHANNEL = "https://www.googleapis.com/youtube/v3/channels?part=snippet&fields=items(snippet/thumbnails)";
+    public static final String YOUTUBE_CHANNEL = "https://www.googleapis.com/youtube/v3/channels?part=snippet&fields=items(id,snippet/thumbnails)";
+
+    //quota costs of the endpoints, see https://developers.google.com/youtube/v3/determine_quota_cost
+    private static final int QUOTA_VIDEOS = 1;
+    private static final int QUOTA_CHANNELS = 1;
+    private static final int QUOTA_SEARCH = 100;
+
+    private static final int MAX_IDS_PER_REQUEST = 50;
+    //how long to wait for more ids to look up together with the first one
+    private static final long BATCH_WINDOW_MILLIS = 5;
+
     private final Credentials credentials;
 
-    public YoutubeAPI(Credentials credentials) {
+    //weighed by the length of their texts, the descriptions can be long
+    private final Cache<String, YoutubeVideo> videos = CacheBuilder.newBuilder()
+            .recordStats()
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .maximumWeight(16 * 1024 * 1024) //chars
+            .weigher((String id, YoutubeVideo video) -> video.weight())
+            .build();
+    //ids of videos that do not exist (anymore), so we don't keep asking about them
+    private final Cache<String, Boolean> missingVideos = CacheBuilder.newBuilder()
+            .recordStats()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(10000)
+            .build();
+    //empty if the channel has no thumbnail, or does not exist
+    private final Cache<String, Optional<String>> channelThumbnails = CacheBuilder.newBuilder()
+            .recordStats()
+            .expireAfterWrite(6, TimeUnit.HOURS)
+            .maximumSize(10000)
+            .build();
+    //the videos and channels endpoints take up to 50 comma separated ids per request
+    private final MicroBatcher<String, YoutubeVideo> videoLookups;
+    private final MicroBatcher<String, Optional<String>> channelThumbnailLookups;
+
+    public YoutubeAPI(Credentials credentials, ExecutorService executor, CacheMetricsCollector cacheMetrics) {
         this.credentials = credentials;
+        ScheduledExecutorService batchScheduler = Executors.newSingleThreadScheduledExecutor(
+                runnable -> new Thread(runnable, "youtube-api-batcher"));
+        videoLookups = new MicroBatcher<>(MAX_IDS_PER_REQUEST, BATCH_WINDOW_MILLIS, batchScheduler, executor,
+                this::fetchVideos,
+                size -> Metrics.youtubeApiBatchSize.labels("videos").observe(size),
+                () -> Metrics.requestsCoalesced.labels("youtube").inc());
+        channelThumbnailLookups = new MicroBatcher<>(MAX_IDS_PER_REQUEST, BATCH_WINDOW_MILLIS, batchScheduler, executor,
+                this::fetchChannelThumbnails,
+                size -> Metrics.youtubeApiBatchSize.labels("channels").observe(size),
+                () -> Metrics.requestsCoalesced.labels("youtube").inc());
+        cacheMetrics.addCache("youtubeVideos", videos);
+        cacheMetrics.addCache("youtubeMissingVideos", missingVideos);
+        cacheMetrics.addCache("youtubeChannelThumbnails", channelThumbnails);
+    }
+
+    /**
+     * Blocks if the video is not cached.
+     *
+     * @return metadata of the video with the provided id, or null if there is no such video
+     * @throws RuntimeException if the lookup failed
+     */
+    @Nullable
+    public YoutubeVideo getVideo(String id) {
+        return join(getVideoAsync(id));
+    }
+
+    /**
+     * Blocks if any of the videos are not cached. Uncached videos are looked up together.
+     *
+     * @return metadata of the videos with the provided ids, in the same order. Videos that do not exist are missing.
+     * @throws RuntimeException if the lookup failed
+     */
+    public Map<String, YoutubeVideo> getVideos(Collection<String> ids) {
+        Map<String, CompletableFuture<YoutubeVideo>> lookups = new LinkedHashMap<>();
+        for (String id : ids) {
+            lookups.put(id, getVideoAsync(id));
+        }
+        Map<String, YoutubeVideo> result = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<YoutubeVideo>> lookup : lookups.entrySet()) {
+            YoutubeVideo video = join(lookup.getValue());
+            if (video != null) {
+                result.put(lookup.getKey(), video);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return completes with the metadata of the video with the provided id, or null if there is no such video
+     */
+    public CompletableFuture<YoutubeVideo> getVideoAsync(String id) {
+        YoutubeVideo cached = videos.getIfPresent(id);
+        if (cached != null || missingVideos.getIfPresent(id) != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return videoLookups.get(id);
+    }
+
+    /**
+     * Blocks if the thumbnail is not cached.
+     *
+     * @return url of the default thumbnail of the channel with the provided id, or null if it has none or it could not
+     * be looked up
+     */
+    @Nullable
+    public String getChannelThumbnail(String channelId) {
+        try {
+            Optional<String> thumbnail = join(getChannelThumbnailAsync(channelId));
+            return thumbnail == null ? null : thumbnail.orElse(null);
+        } catch (Exception e) {
+            log.error("Failed to get channel thumbnail", e);
+            return null;
+        }
+    }
+
+    //completes with an empty optional if there is no such channel
+    private CompletableFuture<Optional<String>> getChannelThumbnailAsync(String channelId) {
+        Optional<String> cached = channelThumbnails.getIfPresent(channelId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return channelThumbnailLookups.get(channelId);
     }
 
-    private YoutubeVideo getVideoFromID(String id) {
-        Http.SimpleRequest simpleRequest = BotController.Companion.getHTTP().get(YOUTUBE_VIDEO, Http.Params.of(
-                "id", id,
-                "key", credentials.getRandomGoogleKey()
+    /**
+     * Look the metadata of the video and its channel up in the background, if they aren't cached yet, so that showing
+     * them later on does not need to wait for the YouTube API.
+     */
+    public void prefetch(String videoId) {
+        if (credentials.getGoogleKeys().isEmpty()
+                || (videos.getIfPresent(videoId) != null || missingVideos.getIfPresent(videoId) != null)) {
+            return;
+        }
+        getVideoAsync(videoId)
+                .thenCompose(video -> video != null && video.getChannelId() != null
+                        ? getChannelThumbnailAsync(video.getChannelId())
+                        : CompletableFuture.completedFuture(null))
+                .whenComplete((ignored, t) -> {
+                    if (t != null) {
+                        log.debug("Failed to prefetch youtube video {}", videoId, t);
+                    }
+                });
+    }
+
+    @Nullable
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Map<String, YoutubeVideo> fetchVideos(List<String> ids) {
+        String gkey = credentials.getRandomGoogleKey();
+        Http.SimpleRequest request = BotController.Companion.getHTTP().get(YOUTUBE_VIDEO_VERBOSE, Http.Params.of(
+                "id", String.join(",", ids),
+                "key", gkey
         ));
 
         JSONObject data = null;
         try {
-            data = simpleRequest.asJson();
-            YoutubeVideo vid = new YoutubeVideo(credentials);
-            vid.id = data.getJSONArray("items").getJSONObject(0).getString("id");
-            vid.name = data.getJSONArray("items").getJSONObject(0).getJSONObject("snippet").getString("title");
-            vid.duration = data.getJSONArray("items").getJSONObject(0).getJSONObject("contentDetails").getString("duration");
-
-            return vid;
+            Metrics.youtubeApiQuota.labels("videos").inc(QUOTA_VIDEOS);
+            data = request.asJson();
+            JSONArray items = data.getJSONArray("items");
+            Map<String, YoutubeVideo> result = new HashMap<>();
+            for (int i = 0; i < items.length(); i++) {
+                YoutubeVideo vid = parseVideo(items.getJSONObject(i));
+                videos.put(vid.id, vid);
+                result.put(vid.id, vid);
+            }
+            for (String id : ids) {
+                if (!result.containsKey(id)) {
+                    missingVideos.put(id, true);
+                }
+            }
+            return result;
         } catch (JSONException ex) {
-            log.error("Could not parse youtube video {}", data != null ? data.toString() : "null");
+            log.error(data != null ? data.toString() : null);
+
+            log.error("API key used ends with: " + gkey.substring(20));
+
             throw ex;
-        } catch (IOException ex) {
+        } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
     }
 
-    public YoutubeVideo getVideoFromID(String id, boolean verbose) {
-        if(verbose){
-            String gkey = credentials.getRandomGoogleKey();
-            Http.SimpleRequest request = BotController.Companion.getHTTP().get(YOUTUBE_VIDEO_VERBOSE, Http.Params.of(
-                    "id", id,
-                    "key", gkey
-            ));
+    private static YoutubeVideo parseVideo(JSONObject item) {
+        JSONObject snippet = item.getJSONObject("snippet");
+        YoutubeVideo vid = new YoutubeVideo();
+        vid.id = item.getString("id");
+        vid.name = snippet.getString("title");
+        vid.duration = item.getJSONObject("contentDetails").getString("duration");
+        vid.description = snippet.getString("description");
+        vid.channelId = snippet.getString("channelId");
+        vid.channelTitle = snippet.getString("channelTitle");
+        vid.isStream = !snippet.getString("liveBroadcastContent").equals("none");
+        return vid;
+    }
 
-            JSONObject data = null;
+    private Map<String, Optional<String>> fetchChannelThumbnails(List<String> channelIds) {
+        Http.SimpleRequest request = BotController.Companion.getHTTP().get(YOUTUBE_CHANNEL,
+                Http.Params.of(
+                        "id", String.join(",", channelIds),
+                        "key", credentials.getRandomGoogleKey()
+                ));
+        Metrics.youtubeApiQuota.labels("channels").inc(QUOTA_CHANNELS);
+        JSONObject json;
+        try {
+            json = request.asJson();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.debug("Channel thumb response");
+        Map<String, Optional<String>> result = new HashMap<>();
+        JSONArray items = json.getJSONArray("items");
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            Optional<String> thumbnail;
             try {
-                data = request.asJson();
-                YoutubeVideo vid = new YoutubeVideo(credentials);
-                vid.id = data.getJSONArray("items").getJSONObject(0).getString("id");
-                vid.name = data.getJSONArray("items").getJSONObject(0).getJSONObject("snippet").getString("title");
-                vid.duration = data.getJSONArray("items").getJSONObject(0).getJSONObject("contentDetails").getString("duration");
-                vid.description = data.getJSONArray("items").getJSONObject(0).getJSONObject("snippet").getString("description");
-                vid.channelId = data.getJSONArray("items").getJSONObject(0).getJSONObject("snippet").getString("channelId");
-                vid.channelTitle = data.getJSONArray("items").getJSONObject(0).getJSONObject("snippet").getString("channelTitle");
-                vid.isStream = !data.getJSONArray("items").getJSONObject(0).getJSONObject("snippet").getString("liveBroadcastContent").equals("none");
-
-                return vid;
-            } catch (JSONException ex) {
-                log.error(data != null ? data.toString() : null);
-
-                log.error("API key used ends with: " + gkey.substring(20));
-
-                throw ex;
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
+                thumbnail = Optional.of(item.getJSONObject("snippet")
+                        .getJSONObject("thumbnails")
+                        .getJSONObject("default")
+                        .getString("url"));
+            } catch (JSONException e) {
+                log.debug("No thumbnail for channel {}", item.optString("id"), e);
+                thumbnail = Optional.empty();
             }
-        } else {
-            return getVideoFromID(id);
+            String channelId = item.getString("id");
+            channelThumbnails.put(channelId, thumbnail);
+            result.put(channelId, thumbnail);
         }
+        //deleted or terminated channels are left out of the response, don't look them up again and again
+        for (String channelId : channelIds) {
+            if (!result.containsKey(channelId)) {
+                channelThumbnails.put(channelId, Optional.empty());
+                result.put(channelId, Optional.empty());
+            }
+        }
+        return result;
     }
 
     /**
@@ -135,13 +335,14 @@ public class YoutubeAPI {
                 "q", query
         ));
         try {
+            Metrics.youtubeApiQuota.labels("search").inc(QUOTA_SEARCH);
             data = request.asJson();
         } catch (IOException e) {
             throw new TrackSearcher.SearchingException("Youtube API search failed", e);
         }
 
         //The search contains all values we need, except for the duration :feelsbadman:
-        //so we need to do another query for each video.
+        //so we need to do another query for the videos.
         List<String> ids = new ArrayList<>(maxResults);
         try {
             JSONArray items = data.getJSONArray("items");
@@ -155,14 +356,15 @@ public class YoutubeAPI {
             throw new TrackSearcher.SearchingException(message, e);
         }
 
+        Map<String, YoutubeVideo> vids;
+        try {
+            vids = getVideos(ids);
+        } catch (RuntimeException e) {
+            throw new TrackSearcher.SearchingException("Could not look up details for youtube videos with ids " + ids, e);
+        }
         List<AudioTrack> tracks = new ArrayList<>();
-        for (String id : ids) {
-            try {
-                YoutubeVideo vid = getVideoFromID(id, true);
-                tracks.add(sourceManager.buildTrackObject(id, vid.name, vid.channelTitle, vid.isStream, vid.getDurationInMillis()));
-            } catch (RuntimeException e) {
-                throw new TrackSearcher.SearchingException("Could not look up details for youtube video with id " + id, e);
-            }
+        for (YoutubeVideo vid : vids.values()) { //videos deleted since they were indexed by the search are missing
+            tracks.add(sourceManager.buildTrackObject(vid.id, vid.name, vid.channelTitle, vid.isStream, vid.getDurationInMillis()));
         }
         return new BasicAudioPlaylist("Search results for: " + query, tracks, null, true);
     }
@@ -25,21 +25,11 @@
 
 package fredboat.util.rest;
 
-import fredboat.config.property.Credentials;
-import fredboat.main.BotController;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class YoutubeVideo {
 
-    private static final Logger log = LoggerFactory.getLogger(YoutubeVideo.class);
-
     String id = null;
     String name = null;
     String duration = null;//Youtube has strange duration strings suchs as PT2H3M33S
@@ -48,10 +38,7 @@ public class YoutubeVideo {
     String channelTitle = null;
     boolean isStream = false;
 
-    private final Credentials credentials;
-
-    public YoutubeVideo(Credentials credentials) {
-        this.credentials = credentials;
+    YoutubeVideo() {
     }
 
     public String getId() {
@@ -132,25 +119,16 @@ public class YoutubeVideo {
         return "https://www.youtube.com/channel/" + channelId;
     }
 
-    public String getChannelThumbUrl() {
-        Http.SimpleRequest request = BotController.Companion.getHTTP().get(YoutubeAPI.YOUTUBE_CHANNEL,
-                Http.Params.of(
-                        "id", channelId,
-                        "key", credentials.getRandomGoogleKey()
-                ));
-        try {
-            JSONObject json = request.asJson();
-            log.debug("Channel thumb response");
-            return json.getJSONArray("items")
-                    .getJSONObject(0)
-                    .getJSONObject("snippet")
-                    .getJSONObject("thumbnails")
-                    .getJSONObject("default")
-                    .getString("url");
-        } catch (JSONException | IOException e) {
-            log.error("Failed to get channel thumbnail", e);
-            return null;
-        }
+    /**
+     * @return rough size of this object in chars, used to bound the cache of the {@link YoutubeAPI}
+     */
+    int weight() {
+        return 64 + length(id) + length(name) + length(duration) + length(description) + length(channelId)
+                + length(channelTitle);
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
     }
 
     private String forceTwoDigits(int i) {
@@ -112,6 +112,46 @@ public class MockConfig implements AppConfig, AudioSourcesConfig, Credentials, E
         return -1;
     }
 
+    @Override
+    public int getPlayerDormancyMinutes() {
+        return 0;
+    }
+
+    @Override
+    public int getMetricsSnapshotTtlSeconds() {
+        return 0;
+    }
+
+    @Override
+    public boolean isHedgedSearch() {
+        return false;
+    }
+
+    @Override
+    public double getSearchHedgeQuantile() {
+        return 0.95;
+    }
+
+    @Override
+    public int getSpotifyImportParallelism() {
+        return 4;
+    }
+
+    @Override
+    public int getPasteImportWindow() {
+        return 8;
+    }
+
+    @Override
+    public int getItemLoaderThreads() {
+        return 64;
+    }
+
+    @Override
+    public int getItemLoaderQueueSize() {
+        return 500;
+    }
+
     @Override
     public boolean isYouTubeEnabled() {
         return false;
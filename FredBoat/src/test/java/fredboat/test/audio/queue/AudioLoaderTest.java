@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.audio.queue;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import fredboat.audio.player.GuildPlayer;
+import fredboat.audio.queue.AudioLoader;
+import fredboat.audio.queue.AudioTrackContext;
+import fredboat.audio.queue.ITrackProvider;
+import fredboat.audio.queue.IdentifierContext;
+import fredboat.audio.queue.ItemLoadCoalescer;
+import fredboat.audio.queue.PlaylistPreflight;
+import fredboat.audio.queue.StreamingAudioPlaylist;
+import fredboat.jda.JdaEntityProvider;
+import fredboat.messaging.MessageFuture;
+import fredboat.test.BaseTest;
+import fredboat.util.ratelimit.Ratelimiter;
+import fredboat.util.rest.YoutubeAPI;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * The reorder buffer of the {@link AudioLoader}: identifiers are loaded in parallel, but committed to the queue in the
+ * order they were requested.
+ */
+class AudioLoaderTest extends BaseTest {
+
+    private final Map<String, AudioLoadResultHandler> started = new HashMap<>();
+    private final List<String> queued = Collections.synchronizedList(new ArrayList<>());
+
+    private JdaEntityProvider jdaEntityProvider;
+    private TextChannel textChannel;
+    private Member member;
+    private AudioLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        jdaEntityProvider = Mockito.mock(JdaEntityProvider.class);
+        textChannel = Mockito.mock(TextChannel.class);
+        member = Mockito.mock(Member.class, Mockito.RETURNS_DEEP_STUBS);
+
+        ItemLoadCoalescer itemLoader = Mockito.mock(ItemLoadCoalescer.class);
+        Mockito.doAnswer(invocation -> started.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(itemLoader).loadItem(anyString(), any());
+
+        PlaylistPreflight preflight = Mockito.mock(PlaylistPreflight.class);
+        Mockito.when(preflight.getPlaylistInfo(anyString()))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+        ITrackProvider trackProvider = Mockito.mock(ITrackProvider.class);
+        Mockito.doAnswer(invocation -> {
+            AudioTrackContext context = invocation.getArgument(0);
+            return queued.add(context.getTrack().getIdentifier());
+        }).when(trackProvider).add(any());
+
+        loader = new AudioLoader(jdaEntityProvider, Mockito.mock(Ratelimiter.class), trackProvider, itemLoader,
+                preflight, Mockito.mock(GuildPlayer.class), Mockito.mock(YoutubeAPI.class));
+    }
+
+    @Test
+    void outOfOrderResultsAreCommittedInRequestOrder() {
+        load("a", "b", "c");
+        Assertions.assertEquals(3, started.size(), "all loads run in parallel");
+
+        started.get("c").trackLoaded(track("c"));
+        started.get("b").trackLoaded(track("b"));
+        Assertions.assertEquals(Collections.emptyList(), queued, "held back by a");
+        Assertions.assertTrue(loader.isLoading());
+
+        started.get("a").trackLoaded(track("a"));
+        Assertions.assertEquals(Arrays.asList("a", "b", "c"), queued);
+        Assertions.assertFalse(loader.isLoading());
+    }
+
+    @Test
+    void failedLoadsDoNotHoldBackOthers() {
+        load("a", "b");
+        started.get("b").trackLoaded(track("b"));
+        started.get("a").noMatches();
+
+        Assertions.assertEquals(Collections.singletonList("b"), queued);
+        Assertions.assertFalse(loader.isLoading());
+    }
+
+    @Test
+    void parallelLoadsAreBounded() {
+        load("a", "b", "c", "d", "e", "f");
+        Assertions.assertEquals(4, started.size());
+
+        //a result that has to wait for the head does not free up its place
+        started.get("b").trackLoaded(track("b"));
+        Assertions.assertEquals(4, started.size());
+
+        started.get("a").trackLoaded(track("a"));
+        Assertions.assertEquals(6, started.size());
+        Assertions.assertTrue(started.containsKey("e"));
+        Assertions.assertTrue(started.containsKey("f"));
+    }
+
+    @Test
+    void streamingHeadHoldsBackLaterLoads() {
+        load("list", "b");
+        StreamingAudioPlaylist playlist = new StreamingAudioPlaylist("list", false, 2);
+        int first = playlist.reserve();
+        int second = playlist.reserve();
+        playlist.close();
+
+        started.get("list").playlistLoaded(playlist);
+        started.get("b").trackLoaded(track("b"));
+        Assertions.assertEquals(Collections.emptyList(), queued);
+        Assertions.assertTrue(loader.isLoading());
+
+        playlist.resolve(second, track("list-2"));
+        Assertions.assertEquals(Collections.emptyList(), queued, "held back by the first item of the playlist");
+
+        playlist.resolve(first, track("list-1"));
+        Assertions.assertEquals(Arrays.asList("list-1", "list-2", "b"), queued);
+        Assertions.assertFalse(loader.isLoading());
+    }
+
+    @Test
+    void streamingCommitCountsAsLoading() {
+        load("list");
+        StreamingAudioPlaylist playlist = new StreamingAudioPlaylist("list", false, 2);
+        int first = playlist.reserve();
+
+        //the load has left the reorder buffer, but the playlist is still adding tracks to the queue
+        started.get("list").playlistLoaded(playlist);
+        playlist.resolve(first, track("list-1"));
+        Assertions.assertEquals(Collections.singletonList("list-1"), queued);
+        Assertions.assertTrue(loader.isLoading());
+
+        playlist.close();
+        Assertions.assertFalse(loader.isLoading());
+    }
+
+    private void load(String... identifiers) {
+        for (String identifier : identifiers) {
+            loader.loadAsync(new TestContext(identifier));
+        }
+    }
+
+    private static AudioTrack track(String identifier) {
+        AudioTrack track = Mockito.mock(AudioTrack.class);
+        Mockito.when(track.getIdentifier()).thenReturn(identifier);
+        Mockito.when(track.getInfo()).thenReturn(new AudioTrackInfo(identifier, "", 1000, identifier, false, ""));
+        return track;
+    }
+
+    private class TestContext extends IdentifierContext {
+
+        private TestContext(String identifier) {
+            super(jdaEntityProvider, identifier, textChannel, member);
+        }
+
+        @Override
+        public Member getMember() {
+            return member;
+        }
+
+        @Override
+        public MessageFuture reply(String message) {
+            return null;
+        }
+
+        @Override
+        public MessageFuture reply(String message, Consumer<Message> onSuccess, Consumer<Throwable> onFail) {
+            return null;
+        }
+
+        @Override
+        public MessageFuture replyWithName(String message) {
+            return null;
+        }
+
+        @Override
+        public String i18n(String key) {
+            return key;
+        }
+
+        @Override
+        public String i18nFormat(String key, Object... params) {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.audio.source;
+
+import fredboat.audio.source.AudioSource;
+import fredboat.audio.source.CircuitBreaker;
+import fredboat.audio.source.CircuitBreaker.State;
+import fredboat.test.BaseTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class CircuitBreakerTest extends BaseTest {
+
+    private static final long SLOW = 1000;
+    private static final long BASE_OPEN = TimeUnit.SECONDS.toMillis(30);
+
+    private long now;
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        now = TimeUnit.DAYS.toMillis(1);
+        breaker = new CircuitBreaker(AudioSource.YOUTUBE, SLOW, () -> now);
+    }
+
+    @Test
+    void fewFailuresDoNotOpen() {
+        fail(9);
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+        fail(1);
+        Assertions.assertEquals(State.OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void opensAtFailureRate() {
+        succeed(10);
+        fail(9);
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+        fail(1);
+        Assertions.assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void opensAtSlowRate() {
+        succeed(2);
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertTrue(breaker.tryAcquire());
+            breaker.onSuccess(SLOW);
+        }
+        Assertions.assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void windowSlides() {
+        succeed(26);
+        fail(24);
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+        //pushes the oldest success out of the window of 50 calls, making it 25 failures out of 50
+        fail(1);
+        Assertions.assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void untimedSuccessesAreNeverSlow() {
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertTrue(breaker.tryAcquire());
+            breaker.onSuccess(-1);
+        }
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void cancellationsAreNotRecorded() {
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertTrue(breaker.tryAcquire());
+            breaker.onCancelled();
+        }
+        fail(9);
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void singleProbeWhenHalfOpen() {
+        breaker.trip("test");
+        Assertions.assertFalse(breaker.tryAcquire());
+
+        now += BASE_OPEN - 1;
+        Assertions.assertFalse(breaker.tryAcquire());
+        now += 1;
+        Assertions.assertTrue(breaker.tryAcquire());
+        Assertions.assertEquals(State.HALF_OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.tryAcquire(), "only one probe at a time");
+
+        breaker.onSuccess(1);
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+        Assertions.assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void lostProbeIsReplaced() {
+        breaker.trip("test");
+        now += BASE_OPEN;
+        Assertions.assertTrue(breaker.tryAcquire());
+
+        now += TimeUnit.MINUTES.toMillis(1) - 1;
+        Assertions.assertFalse(breaker.tryAcquire());
+        now += 1;
+        Assertions.assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void cancelledProbeIsReplacedRightAway() {
+        breaker.trip("test");
+        now += BASE_OPEN;
+        Assertions.assertTrue(breaker.tryAcquire());
+        breaker.onCancelled();
+
+        Assertions.assertEquals(State.HALF_OPEN, breaker.getState());
+        Assertions.assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void backoffDoublesWithEachFailedProbe() {
+        long openFor = BASE_OPEN;
+        breaker.trip("test");
+        for (int i = 0; i < 4; i++) {
+            now += openFor - 1;
+            Assertions.assertFalse(breaker.tryAcquire(), "still open after " + (openFor - 1) + "ms");
+            now += 1;
+            Assertions.assertTrue(breaker.tryAcquire(), "probing after " + openFor + "ms");
+            breaker.onFailure();
+            Assertions.assertEquals(State.OPEN, breaker.getState());
+            openFor *= 2;
+        }
+    }
+
+    @Test
+    void slowProbeReopens() {
+        breaker.trip("test");
+        now += BASE_OPEN;
+        Assertions.assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(SLOW);
+        Assertions.assertEquals(State.OPEN, breaker.getState());
+
+        now += 2 * BASE_OPEN - 1;
+        Assertions.assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void backoffIsCapped() {
+        long max = TimeUnit.MINUTES.toMillis(10);
+        breaker.trip("test");
+        for (int i = 0; i < 10; i++) {
+            breaker.trip("test");
+        }
+        now += max - 1;
+        Assertions.assertFalse(breaker.tryAcquire());
+        now += 1;
+        Assertions.assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void closingResetsBackoffAndWindow() {
+        breaker.trip("test");
+        breaker.trip("test"); //open for twice the base
+        now += 2 * BASE_OPEN;
+        Assertions.assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(1);
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+
+        //a fresh window, so it takes the minimum amount of calls again
+        fail(9);
+        Assertions.assertEquals(State.CLOSED, breaker.getState());
+        fail(1);
+        Assertions.assertEquals(State.OPEN, breaker.getState());
+        now += BASE_OPEN;
+        Assertions.assertTrue(breaker.tryAcquire());
+    }
+
+    private void succeed(int times) {
+        for (int i = 0; i < times; i++) {
+            Assertions.assertTrue(breaker.tryAcquire());
+            breaker.onSuccess(1);
+        }
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            Assertions.assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+    }
+}
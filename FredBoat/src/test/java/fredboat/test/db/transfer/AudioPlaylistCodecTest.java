@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.db.transfer;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import fredboat.db.transfer.AudioPlaylistCodec;
+import fredboat.test.BaseTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class AudioPlaylistCodecTest extends BaseTest {
+
+    private static AudioPlayerManager playerManager;
+    private static YoutubeAudioSourceManager youtube;
+
+    @BeforeAll
+    static void setUp() {
+        playerManager = new DefaultAudioPlayerManager();
+        youtube = new YoutubeAudioSourceManager();
+        playerManager.registerSourceManager(youtube);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        playerManager.shutdown();
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        List<AudioTrack> tracks = tracks(5);
+        String name = "Search result for: \u00fcn\u00efc\u00f6d\u00e9";
+        AudioPlaylist playlist = new BasicAudioPlaylist(name, tracks, tracks.get(2), true);
+
+        AudioPlaylist decoded = AudioPlaylistCodec.decode(AudioPlaylistCodec.encode(playerManager, playlist))
+                .decode(playerManager);
+
+        assertSamePlaylist(playlist, decoded);
+    }
+
+    @Test
+    void roundTripWithoutNameAndSelectedTrack() throws IOException {
+        AudioPlaylist playlist = new BasicAudioPlaylist(null, tracks(3), null, false);
+
+        AudioPlaylist decoded = AudioPlaylistCodec.decode(AudioPlaylistCodec.encode(playerManager, playlist))
+                .decode(playerManager);
+
+        assertSamePlaylist(playlist, decoded);
+    }
+
+    @Test
+    void roundTripOfEmptyPlaylist() throws IOException {
+        AudioPlaylist playlist = new BasicAudioPlaylist("No matches", Collections.emptyList(), null, true);
+
+        AudioPlaylistCodec.EncodedAudioPlaylist encoded =
+                AudioPlaylistCodec.decode(AudioPlaylistCodec.encode(playerManager, playlist));
+
+        Assertions.assertEquals(0, encoded.getTrackCount());
+        assertSamePlaylist(playlist, encoded.decode(playerManager));
+    }
+
+    @Test
+    void decodeOnlyTheFirstTracks() throws IOException {
+        List<AudioTrack> tracks = tracks(20);
+        AudioPlaylist playlist = new BasicAudioPlaylist("Search result for: query", tracks, null, true);
+
+        AudioPlaylistCodec.EncodedAudioPlaylist encoded =
+                AudioPlaylistCodec.decode(AudioPlaylistCodec.encode(playerManager, playlist));
+
+        Assertions.assertEquals(20, encoded.getTrackCount());
+        AudioPlaylist decoded = encoded.decode(playerManager, 5);
+        assertSamePlaylist(new BasicAudioPlaylist(playlist.getName(), tracks.subList(0, 5), null, true), decoded);
+        assertSameTrack(tracks.get(13), encoded.decodeTrack(playerManager, 13));
+    }
+
+    @Test
+    void decodeLegacy() throws IOException {
+        List<AudioTrack> tracks = tracks(5);
+        AudioPlaylist playlist = new BasicAudioPlaylist("Search result for: query", tracks, tracks.get(0), true);
+
+        byte[] legacy = AudioPlaylistCodec.encodeLegacy(playerManager, playlist);
+        Assertions.assertEquals((byte) 0xAC, legacy[0]);
+        Assertions.assertEquals((byte) 0xED, legacy[1]);
+
+        assertSamePlaylist(playlist, AudioPlaylistCodec.decode(legacy).decode(playerManager));
+    }
+
+    @Test
+    void rejectUnknownVersion() {
+        byte[] data = AudioPlaylistCodec.encode(playerManager, new BasicAudioPlaylist("query", tracks(1), null, true));
+        data[4] = AudioPlaylistCodec.VERSION + 1;
+
+        Assertions.assertThrows(IOException.class, () -> AudioPlaylistCodec.decode(data));
+    }
+
+    @Test
+    void rejectUnknownMagic() {
+        byte[] data = AudioPlaylistCodec.encode(playerManager, new BasicAudioPlaylist("query", tracks(1), null, true));
+        data[0] = 'X';
+
+        Assertions.assertThrows(IOException.class, () -> AudioPlaylistCodec.decode(data));
+    }
+
+    @Test
+    void rejectTruncated() {
+        List<AudioTrack> tracks = tracks(3);
+        byte[] data = AudioPlaylistCodec.encode(playerManager,
+                new BasicAudioPlaylist("query", tracks, tracks.get(1), true));
+
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            Assertions.assertThrows(IOException.class, () -> AudioPlaylistCodec.decode(truncated),
+                    "truncated to " + length + " of " + data.length + " bytes");
+        }
+    }
+
+    private static List<AudioTrack> tracks(int count) {
+        List<AudioTrack> tracks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = String.format("dQw4w9WgX%02d", i);
+            tracks.add(new YoutubeAudioTrack(new AudioTrackInfo("Some title of a music video " + i,
+                    "Some channel name", 212000 + i, id, false, "https://www.youtube.com/watch?v=" + id), youtube));
+        }
+        return tracks;
+    }
+
+    private static void assertSamePlaylist(AudioPlaylist expected, AudioPlaylist actual) {
+        Assertions.assertEquals(expected.getName(), actual.getName());
+        Assertions.assertEquals(expected.isSearchResult(), actual.isSearchResult());
+        Assertions.assertEquals(expected.getTracks().size(), actual.getTracks().size());
+        for (int i = 0; i < expected.getTracks().size(); i++) {
+            assertSameTrack(expected.getTracks().get(i), actual.getTracks().get(i));
+        }
+        if (expected.getSelectedTrack() == null) {
+            Assertions.assertNull(actual.getSelectedTrack());
+        } else {
+            assertSameTrack(expected.getSelectedTrack(), actual.getSelectedTrack());
+        }
+    }
+
+    private static void assertSameTrack(AudioTrack expected, AudioTrack actual) {
+        Assertions.assertNotNull(actual);
+        Assertions.assertEquals(expected.getClass(), actual.getClass());
+        Assertions.assertEquals(expected.getInfo().identifier, actual.getInfo().identifier);
+        Assertions.assertEquals(expected.getInfo().title, actual.getInfo().title);
+        Assertions.assertEquals(expected.getInfo().author, actual.getInfo().author);
+        Assertions.assertEquals(expected.getInfo().length, actual.getInfo().length);
+        Assertions.assertEquals(expected.getInfo().uri, actual.getInfo().uri);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2017-2018 Frederik Ar. Mikkelsen
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package fredboat.test.util;
+
+import fredboat.test.BaseTest;
+import fredboat.util.MemberSearchIndex;
+import io.prometheus.client.guava.cache.CacheMetricsCollector;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberLeaveEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberNickChangeEvent;
+import net.dv8tion.jda.core.events.user.UserNameUpdateEvent;
+import net.dv8tion.jda.core.events.user.update.UserUpdateDiscriminatorEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+
+class MemberSearchIndexTest extends BaseTest {
+
+    private final Map<Long, Member> members = new LinkedHashMap<>(); //the guild lists them in the order they joined
+    private long nextId = 100000000000000000L;
+    private Guild guild;
+    private MemberSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        guild = Mockito.mock(Guild.class);
+        Mockito.when(guild.getIdLong()).thenReturn(1L);
+        Mockito.when(guild.getMembers()).thenAnswer(invocation -> new ArrayList<>(members.values()));
+        Mockito.when(guild.getMemberById(anyLong()))
+                .thenAnswer(invocation -> members.get((Long) invocation.getArgument(0)));
+        index = new MemberSearchIndex(new CacheMetricsCollector());
+    }
+
+    @Test
+    void exactMatchesFirstThenPrefixesThenContains() {
+        member("jimbob", null);
+        member("bobby", null);
+        member("alice", null);
+        member("bob", null);
+
+        Assertions.assertEquals(Arrays.asList("bob", "bobby", "jimbob"), search("bob"));
+    }
+
+    @Test
+    void shorterNamesFirstWithinARank() {
+        member("bobcat", null);
+        member("bobby", null);
+        member("bobbie_the_third", null);
+
+        Assertions.assertEquals(Arrays.asList("bobby", "bobcat", "bobbie_the_third"), search("bob"));
+    }
+
+    @Test
+    void nicknamesAndTagsMatch() {
+        member("rob", "Captain");
+        member("someone", "robin");
+
+        Assertions.assertEquals(Collections.singletonList("Captain"), search("rob#0001"));
+        Assertions.assertEquals(Collections.singletonList("Captain"), search("captain"));
+        //the user name of a member with a nickname still matches through the tag
+        Assertions.assertEquals(Arrays.asList("Captain", "robin"), search("rob"));
+    }
+
+    @Test
+    void shortTermsLookAtAllMembers() {
+        member("xa", null);
+        member("ax", null);
+        member("b", null);
+
+        Assertions.assertEquals(Arrays.asList("xa", "ax"), search("x"));
+        Assertions.assertEquals(Collections.singletonList("b"), search("b"));
+    }
+
+    @Test
+    void mentionsAndIdsMatchFirst() {
+        Member bob = member("bob", null);
+        member("bob2", null);
+        long id = bob.getUser().getIdLong();
+
+        Assertions.assertEquals(Collections.singletonList("bob"), search("<@" + id + ">"));
+        Assertions.assertEquals(Collections.singletonList("bob"), search("<@!" + id + ">"));
+        Assertions.assertEquals(Collections.singletonList("bob"), search(Long.toString(id)));
+    }
+
+    @Test
+    void digitsThatAreNoIdAreIgnored() {
+        Member bob = member("bob", null);
+
+        Assertions.assertEquals(Collections.emptyList(), search("9999999999999999999")); //beyond a long
+        Assertions.assertEquals(Collections.emptyList(), search("99999999999999999999")); //too long
+
+        //the id of bob in arabic-indic digits, which are no discord id
+        StringBuilder arabicIndic = new StringBuilder();
+        for (char c : Long.toString(bob.getUser().getIdLong()).toCharArray()) {
+            arabicIndic.append((char) ('\u0660' + c - '0'));
+        }
+        Assertions.assertEquals(Collections.emptyList(), search(arabicIndic.toString()));
+    }
+
+    @Test
+    void botsOnlyWhenAskedFor() {
+        member("robot", null);
+        Member bot = member("robert", null);
+        Mockito.when(bot.getUser().isBot()).thenReturn(true);
+
+        Assertions.assertEquals(Collections.singletonList("robot"), search("rob"));
+        Assertions.assertEquals(Arrays.asList("robot", "robert"), names(index.search(guild, "rob", true, 10)));
+    }
+
+    @Test
+    void limitKeepsTheBest() {
+        String name = "bob";
+        for (int i = 0; i < 50; i++) {
+            member(name, null);
+            name += "o";
+        }
+        Assertions.assertEquals(Arrays.asList("bob", "bobo", "boboo"), names(index.search(guild, "bob", false, 3)));
+    }
+
+    @Test
+    void joinsAndLeavesUpdateTheIndex() {
+        member("alice", null);
+        Assertions.assertEquals(Collections.emptyList(), search("bob"));
+
+        Member bob = member("bob", null);
+        GuildMemberJoinEvent join = Mockito.mock(GuildMemberJoinEvent.class);
+        Mockito.when(join.getGuild()).thenReturn(guild);
+        Mockito.when(join.getMember()).thenReturn(bob);
+        index.onGuildMemberJoin(join);
+        Assertions.assertEquals(Collections.singletonList("bob"), search("bob"));
+
+        GuildMemberLeaveEvent leave = Mockito.mock(GuildMemberLeaveEvent.class);
+        Mockito.when(leave.getGuild()).thenReturn(guild);
+        Mockito.when(leave.getUser()).thenReturn(bob.getUser());
+        index.onGuildMemberLeave(leave);
+        //still known to the guild, but not to the index anymore
+        Assertions.assertEquals(Collections.emptyList(), search("bob"));
+
+        //built once, kept up to date by the events afterwards
+        Mockito.verify(guild, Mockito.times(1)).getMembers();
+    }
+
+    @Test
+    void renamesUpdateTheIndex() {
+        Member member = member("alice", null);
+        Assertions.assertEquals(Collections.singletonList("alice"), search("alice"));
+
+        Mockito.when(member.getNickname()).thenReturn("carol");
+        Mockito.when(member.getEffectiveName()).thenReturn("carol");
+        GuildMemberNickChangeEvent nickChange = Mockito.mock(GuildMemberNickChangeEvent.class);
+        Mockito.when(nickChange.getGuild()).thenReturn(guild);
+        Mockito.when(nickChange.getMember()).thenReturn(member);
+        index.onGuildMemberNickChange(nickChange);
+        Assertions.assertEquals(Collections.singletonList("carol"), search("carol"));
+
+        User user = member.getUser();
+        Mockito.when(user.getName()).thenReturn("dave");
+        Mockito.when(user.getMutualGuilds()).thenReturn(Collections.singletonList(guild));
+        Mockito.when(guild.getMember(user)).thenReturn(member);
+        UserNameUpdateEvent nameUpdate = Mockito.mock(UserNameUpdateEvent.class);
+        Mockito.when(nameUpdate.getUser()).thenReturn(user);
+        index.onUserNameUpdate(nameUpdate);
+        Assertions.assertEquals(Collections.singletonList("carol"), search("dave"));
+        Assertions.assertEquals(Collections.emptyList(), search("alice"));
+    }
+
+    @Test
+    void discriminatorChangesUpdateTheIndex() {
+        Member member = member("alice", null);
+        Assertions.assertEquals(Collections.singletonList("alice"), search("alice#0001"));
+
+        User user = member.getUser();
+        Mockito.when(user.getDiscriminator()).thenReturn("4242");
+        Mockito.when(user.getMutualGuilds()).thenReturn(Collections.singletonList(guild));
+        Mockito.when(guild.getMember(user)).thenReturn(member);
+        UserUpdateDiscriminatorEvent discriminatorUpdate = Mockito.mock(UserUpdateDiscriminatorEvent.class);
+        Mockito.when(discriminatorUpdate.getUser()).thenReturn(user);
+        index.onUserUpdateDiscriminator(discriminatorUpdate);
+        Assertions.assertEquals(Collections.singletonList("alice"), search("alice#4242"));
+        Assertions.assertEquals(Collections.emptyList(), search("alice#0001"));
+    }
+
+    @Test
+    void manyLeavesCompactTheIndex() {
+        List<Member> leaving = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Member member = member("member" + i, null);
+            if (i % 3 != 0) {
+                leaving.add(member);
+            }
+        }
+        Assertions.assertEquals(Collections.singletonList("member2999"), search("member2999"));
+
+        for (Member member : leaving) {
+            GuildMemberLeaveEvent leave = Mockito.mock(GuildMemberLeaveEvent.class);
+            Mockito.when(leave.getGuild()).thenReturn(guild);
+            Mockito.when(leave.getUser()).thenReturn(member.getUser());
+            index.onGuildMemberLeave(leave);
+        }
+
+        Assertions.assertEquals(Collections.singletonList("member2997"), search("member2997"));
+        Assertions.assertEquals(Collections.emptyList(), search("member2998"));
+        Assertions.assertEquals(Arrays.asList("member0", "member3", "member6"),
+                names(index.search(guild, "member", false, 3)));
+    }
+
+    private List<String> search(String term) {
+        return names(index.search(guild, term, false, 10));
+    }
+
+    private static List<String> names(List<Member> found) {
+        return found.stream().map(Member::getEffectiveName).collect(Collectors.toList());
+    }
+
+    private Member member(String name, String nickname) {
+        long id = nextId++;
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getIdLong()).thenReturn(id);
+        Mockito.when(user.getName()).thenReturn(name);
+        Mockito.when(user.getDiscriminator()).thenReturn("0001");
+
+        Member member = Mockito.mock(Member.class);
+        Mockito.when(member.getUser()).thenReturn(user);
+        Mockito.when(member.getNickname()).thenReturn(nickname);
+        Mockito.when(member.getEffectiveName()).thenReturn(nickname != null ? nickname : name);
+        members.put(id, member);
+        return member;
+    }
+}
@@ -84,6 +84,34 @@ class TextUtilsTest extends BaseTest {
         );
     }
 
+    @TestFactory
+    Stream<DynamicTest> escapeAndDefuse() {
+        String zwsp = String.valueOf(TextUtils.ZERO_WIDTH_CHAR);
+        String[][] testCases = {
+                {"**bold** _italic_ ~~strike~~ `code`", "\\*\\*bold\\*\\* \\_italic\\_ \\~\\~strike\\~\\~ \\`code\\`"},
+                {"hey @everyone and @here", "hey @" + zwsp + "everyone and @" + zwsp + "here"},
+                {"https://fredboat.com", "https:" + zwsp + "//fredboat.com"},
+                {"@_here :`//", "@\\_here :\\`//"},
+                {"", ""},
+        };
+
+        return DynamicTest.stream(Arrays.asList(testCases).iterator(),
+                testCase -> String.format("escape and defuse `%s`", testCase[0]),
+                testCase -> {
+                    Assertions.assertEquals(testCase[1], TextUtils.escapeAndDefuse(testCase[0]));
+                    Assertions.assertEquals("> " + testCase[1],
+                            TextUtils.escapeAndDefuse(testCase[0], new StringBuilder("> ")).toString());
+                }
+        );
+    }
+
+    @Test
+    void nothingToEscapeIsNotCopied() {
+        String title = "Rick Astley - Never Gonna Give You Up (Official Music Video) @ 1:00";
+        Assertions.assertSame(title, TextUtils.escapeAndDefuse(title));
+        Assertions.assertSame(title, TextUtils.escapeMarkdown(title));
+    }
+
     private void assertSplitSelect(Collection<Integer> expected, String testCase) {
         Assertions.assertTrue(
                 TextUtils.isSplitSelect(testCase),